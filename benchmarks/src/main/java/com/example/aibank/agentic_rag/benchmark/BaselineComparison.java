@@ -0,0 +1,121 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a JMH JSON result file with a baseline and fails if any benchmark got slower, or allocates
+ * more per operation, by more than a tolerance. The baseline must be the output of a {@code -prof gc}
+ * run on the reference machine; a baseline entry without a score is rejected, and the
+ * JVM of both runs is printed so that results from different JDKs are not compared unnoticed.
+ * Usage: {@code java -cp benchmarks.jar com.example.aibank.agentic_rag.benchmark.BaselineComparison baseline.json results.json [tolerance]}
+ */
+public final class BaselineComparison {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <results.json> [tolerance, default 0.10]");
+            System.exit(2);
+        }
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = byKey(objectMapper.readTree(new File(args[0])));
+        Map<String, JsonNode> results = byKey(objectMapper.readTree(new File(args[1])));
+        for (Map.Entry<String, JsonNode> entry : baseline.entrySet()) {
+            if (Double.isNaN(score(entry.getValue()))) {
+                System.err.println("Baseline " + args[0] + " has no score for " + entry.getKey() + ", record it with a JMH run");
+                System.exit(2);
+            }
+        }
+        System.out.println("Baseline JVM: " + jvm(baseline));
+        System.out.println("Results JVM:  " + jvm(results));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> result : results.entrySet()) {
+            JsonNode before = baseline.get(result.getKey());
+            if (before == null) {
+                System.out.println("NEW         " + result.getKey());
+                continue;
+            }
+            boolean slower = regressed(score(before), score(result.getValue()), tolerance);
+            boolean allocates = regressed(allocation(before), allocation(result.getValue()), tolerance);
+            if (slower || allocates) {
+                regressions++;
+            }
+            System.out.println(String.format(Locale.ROOT, "%-11s %s: %s -> %s %s, %s -> %s B/op",
+                    slower || allocates ? "REGRESSION" : "OK", result.getKey(),
+                    format(score(before)), format(score(result.getValue())),
+                    result.getValue().path("primaryMetric").path("scoreUnit").asText(),
+                    format(allocation(before)), format(allocation(result.getValue()))));
+        }
+        System.out.println(regressions + " regression(s) beyond " + Math.round(tolerance * 100) + "%");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Index results by benchmark method and parameter values, which identify a result across runs
+     */
+    private static Map<String, JsonNode> byKey(JsonNode results) {
+        Map<String, JsonNode> byKey = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(key.indexOf("(") < 0 ? "(" : ", ").append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            if (key.indexOf("(") >= 0) {
+                key.append(')');
+            }
+            byKey.put(key.toString(), result);
+        }
+        return byKey;
+    }
+
+    private static String jvm(Map<String, JsonNode> results) {
+        if (results.isEmpty()) {
+            return "n/a";
+        }
+        JsonNode result = results.values().iterator().next();
+        return result.path("vmName").asText() + " " + result.path("jdkVersion").asText() + " " + result.path("jvmArgs");
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble(Double.NaN);
+    }
+
+    /**
+     * Bytes allocated per operation, present when the run used {@code -prof gc}
+     */
+    private static double allocation(JsonNode result) {
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            // Older JMH versions prefix secondary metric names with a middle dot
+            if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+                return metric.getValue().path("score").asDouble(Double.NaN);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static boolean regressed(double before, double after, double tolerance) {
+        return !Double.isNaN(before) && !Double.isNaN(after) && after > before * (1.0 + tolerance);
+    }
+
+    private static String format(double value) {
+        return Double.isNaN(value) ? "n/a" : String.format(Locale.ROOT, "%.1f", value);
+    }
+}
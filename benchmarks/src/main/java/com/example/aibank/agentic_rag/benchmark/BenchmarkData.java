@@ -0,0 +1,129 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.advisor.PromptContextAssembler;
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic transactions, features and vector stores shared by the benchmarks
+ */
+public final class BenchmarkData {
+
+    public static final int EMBEDDING_DIMENSIONS = 256;
+
+    private static final String[] MERCHANTS = {"Grocery Mart", "Fuel Stop", "Online Books", "Crypto Exchange", "Coffee House"};
+    private static final String[] CATEGORIES = {"GROCERIES", "FUEL", "SHOPPING", "CRYPTO", "RESTAURANTS"};
+    private static final String[] TYPES = {"DEBIT", "CREDIT", "TRANSFER"};
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 9, 0);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @return An object mapper configured like the application's
+     */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    /**
+     * @return A prompt context assembler with the application's default settings
+     */
+    public static PromptContextAssembler promptContextAssembler() {
+        return new PromptContextAssembler(objectMapper(), new SimpleMeterRegistry(), 600, 0.9,
+                List.of("behavioralData", "preferences", "metadata", "createdAt", "updatedAt"));
+    }
+
+    /**
+     * @param index The transaction number
+     * @return A fully populated transaction of one of ten customers
+     */
+    public static Transaction transaction(int index) {
+        return Transaction.builder()
+                .id(String.format("tx-%08d", index))
+                .accountId("account-" + (index % 20))
+                .customerId("customer-" + (index % 10))
+                .amount(new BigDecimal(25 + (index * 37) % 2000).add(new BigDecimal("0.99")))
+                .currency("USD")
+                .type(TYPES[index % TYPES.length])
+                .merchantName(MERCHANTS[index % MERCHANTS.length])
+                .merchantCategory(CATEGORIES[index % CATEGORIES.length])
+                .description("Card payment " + index)
+                .location("New York, NY")
+                .timestamp(START.plusMinutes(index * 17L))
+                .ipAddress("10.0." + (index % 8) + "." + (index % 250))
+                .deviceId("device-" + (index % 15))
+                .build();
+    }
+
+    /**
+     * @param count The number of transactions
+     * @return Transactions 0 to count - 1
+     */
+    public static List<Transaction> transactions(int count) {
+        List<Transaction> transactions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            transactions.add(transaction(i));
+        }
+        return transactions;
+    }
+
+    /**
+     * @return Features of a customer with some history and moderate velocity
+     */
+    public static FraudFeatures features() {
+        return FraudFeatures.builder()
+                .historyCount(42)
+                .meanAmount(180.0)
+                .stdDevAmount(95.0)
+                .transactionsLastHour(2)
+                .knownDevice(true)
+                .knownIpAddress(false)
+                .knownMerchant(true)
+                .distinctDevices(2)
+                .distinctMerchants(9)
+                .ipTransactionsLastHour(3)
+                .deviceTransactionsLastHour(2)
+                .accountTransactionsLastHour(2)
+                .ringSize(3)
+                .ringRisk(0.2)
+                .build();
+    }
+
+    /**
+     * @param embeddingModel The embedding model
+     * @param documents The documents to store
+     * @return An in-memory vector store holding the documents
+     */
+    public static VectorStore vectorStore(EmbeddingModel embeddingModel, List<Document> documents) {
+        SimpleVectorStore vectorStore = SimpleVectorStore.builder(embeddingModel).build();
+        vectorStore.add(documents);
+        return vectorStore;
+    }
+
+    /**
+     * @param embeddingModel The embedding model
+     * @param count The number of historical transactions
+     * @return A vector store of transaction documents, as indexed by the application
+     */
+    public static VectorStore transactionVectorStore(EmbeddingModel embeddingModel, int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (Transaction transaction : transactions(count)) {
+            documents.add(TransactionDocument.toDocument(transaction));
+        }
+        return vectorStore(embeddingModel, documents);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.advisor.FinancialAdviceAdvisor;
+import com.example.aibank.agentic_rag.config.HybridDocumentRetriever;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a financial advice prompt, including the stub query rewrite and hybrid retrieval
+ * from an in-memory knowledge base with stub embeddings. The lexical search returns a fixed list,
+ * so only the fusion and re-ranking around it are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FinancialAdvicePromptBenchmark {
+
+    private static final String[] TOPICS = {"retirement savings", "emergency fund", "index funds", "mortgage refinancing",
+            "credit card debt", "college savings", "tax-advantaged accounts", "bond ladders"};
+
+    private static final String QUERY = "How much should I put into retirement savings versus paying down my mortgage?";
+    private static final String PROFILE = "{\"customerId\":\"customer-3\",\"age\":41,\"income\":95000,"
+            + "\"riskTolerance\":\"MODERATE\",\"goals\":[\"retirement savings\",\"college savings\"]}";
+
+    @Param({"500"})
+    public int knowledgeDocuments;
+
+    private FinancialAdviceAdvisor advisor;
+
+    @Setup
+    public void setUp() {
+        List<Document> documents = new ArrayList<>(knowledgeDocuments);
+        for (int i = 0; i < knowledgeDocuments; i++) {
+            String topic = TOPICS[i % TOPICS.length];
+            documents.add(new Document("Guidance on " + topic + " for customers with a moderate risk tolerance, note " + i
+                    + ": compare the expected return of " + topic + " with the interest rate on existing debt.",
+                    Map.of("topic", topic)));
+        }
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(BenchmarkData.EMBEDDING_DIMENSIONS);
+        List<Document> lexicalMatches = documents.stream()
+                .filter(document -> document.getText().contains("retirement savings"))
+                .toList();
+        HybridDocumentRetriever retriever = new HybridDocumentRetriever(
+                BenchmarkData.vectorStore(embeddingModel, documents),
+                (query, limit) -> lexicalMatches.subList(0, Math.min(limit, lexicalMatches.size())),
+                4, 20, 0.7, 60, 0.3);
+        advisor = new FinancialAdviceAdvisor(
+                retriever,
+                new StubChatModel("Retirement savings versus mortgage paydown for a moderate risk tolerance"),
+                BenchmarkData.promptContextAssembler(),
+                3000);
+    }
+
+    @Benchmark
+    public Prompt createFinancialAdvicePrompt() {
+        return advisor.createFinancialAdvicePrompt(QUERY, PROFILE);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.advisor.TransactionFraudAdvisor;
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building fraud analysis prompts, including retrieval from an in-memory vector store
+ * of historical transactions with stub embeddings and a stub query rewrite
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudPromptBenchmark {
+
+    @Param({"METADATA", "REWRITE"})
+    public TransactionFraudAdvisor.RetrievalMode retrievalMode;
+
+    @Param({"1000"})
+    public int history;
+
+    @Param({"20"})
+    public int batchSize;
+
+    private TransactionFraudAdvisor advisor;
+    private Transaction transaction;
+    private String transactionJson;
+    private FraudFeatures features;
+    private List<Transaction> batch;
+    private List<String> batchJson;
+    private List<FraudFeatures> batchFeatures;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(BenchmarkData.EMBEDDING_DIMENSIONS);
+        advisor = new TransactionFraudAdvisor(
+                BenchmarkData.transactionVectorStore(embeddingModel, history),
+                new StubChatModel("Card payment at Crypto Exchange by customer-3"),
+                retrievalMode,
+                TransactionFraudAdvisor.RetrievalScope.CUSTOMER,
+                90,
+                true,
+                BenchmarkData.promptContextAssembler(),
+                3000,
+                8000);
+
+        // Scored transactions come after the history
+        transaction = BenchmarkData.transaction(history + 3);
+        transactionJson = BenchmarkData.objectMapper().writeValueAsString(transaction);
+        features = BenchmarkData.features();
+
+        batch = new ArrayList<>();
+        batchJson = new ArrayList<>();
+        batchFeatures = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            Transaction batched = BenchmarkData.transaction(history + i);
+            batch.add(batched);
+            batchJson.add(BenchmarkData.objectMapper().writeValueAsString(batched));
+            batchFeatures.add(features);
+        }
+    }
+
+    @Benchmark
+    public Prompt createFraudAnalysisPrompt() {
+        return advisor.createFraudAnalysisPrompt(transaction, transactionJson, features);
+    }
+
+    @Benchmark
+    public Prompt createBatchFraudAnalysisPrompt() {
+        return advisor.createBatchFraudAnalysisPrompt(batch, batchJson, batchFeatures);
+    }
+}
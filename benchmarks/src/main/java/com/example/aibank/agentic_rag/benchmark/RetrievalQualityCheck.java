@@ -0,0 +1,160 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.config.HybridDocumentRetriever;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Measures precision and recall at top-k of the financial knowledge retrieval on a labelled knowledge
+ * base, and fails if the hybrid retriever falls below a floor. Each topic has several relevant
+ * documents among others written in the same generic wording, and each question names its topic, so
+ * a similarity threshold or lexical match that is too loose shows as lost precision and one that is
+ * too strict as lost recall. The vector search uses the stub embeddings and the lexical search an
+ * in-memory stand-in with the semantics of {@code FullTextSearch}: documents containing every query
+ * term first, then documents containing some of them above a minimum share of the terms.
+ * Usage: {@code java -cp benchmarks.jar com.example.aibank.agentic_rag.benchmark.RetrievalQualityCheck [similarityThreshold] [minPrecision] [minRecall]}
+ */
+public final class RetrievalQualityCheck {
+
+    private static final int TOP_K = 4;
+    private static final int CANDIDATES = 20;
+    private static final int RRF_K = 60;
+    private static final double RERANK_WEIGHT = 0.3;
+    private static final int DOCUMENTS_PER_TOPIC = 6;
+    // Stand-in for aibank.knowledge.retrieval.min-lexical-rank: share of the query terms a partial match needs
+    private static final double MIN_LEXICAL_COVERAGE = 0.5;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "the", "and", "or", "for", "of", "on", "to", "in", "is", "are", "my", "i", "me", "should",
+            "how", "what", "when", "do", "does", "with", "much", "into", "put", "can", "about", "it");
+
+    private static final Map<String, String> TOPICS = Map.of(
+            "retirement savings", "pension contributions employer match annuity drawdown",
+            "emergency fund", "three to six months of expenses in an instant access account",
+            "index funds", "low cost tracker funds diversified across the whole market",
+            "mortgage overpayment", "early repayment charges remaining term interest saved",
+            "credit card debt", "balance transfer avalanche method minimum payments",
+            "college savings", "junior ISA tuition fees education plan",
+            "ISA-2024 allowance", "tax-free annual subscription limit stocks and shares",
+            "bond ladders", "gilts maturing in successive years reinvestment risk");
+
+    private RetrievalQualityCheck() {
+    }
+
+    public static void main(String[] args) {
+        double similarityThreshold = args.length > 0 ? Double.parseDouble(args[0]) : 0.7;
+        double minPrecision = args.length > 1 ? Double.parseDouble(args[1]) : 0.75;
+        double minRecall = args.length > 2 ? Double.parseDouble(args[2]) : 0.75;
+
+        List<Document> documents = new ArrayList<>();
+        for (Map.Entry<String, String> topic : TOPICS.entrySet()) {
+            for (int i = 0; i < DOCUMENTS_PER_TOPIC; i++) {
+                documents.add(new Document("Guidance on " + topic.getKey() + ", note " + i + ": " + topic.getValue()
+                        + ". Compare it with the interest rate on existing debt for customers with a moderate risk tolerance.",
+                        Map.of("topic", topic.getKey())));
+            }
+        }
+        StubEmbeddingModel embeddingModel = new StubEmbeddingModel(BenchmarkData.EMBEDDING_DIMENSIONS);
+        VectorStore vectorStore = BenchmarkData.vectorStore(embeddingModel, documents);
+        HybridDocumentRetriever.LexicalSearch lexicalSearch = (query, limit) -> lexicalSearch(documents, query, limit);
+        HybridDocumentRetriever hybrid = new HybridDocumentRetriever(vectorStore, lexicalSearch,
+                TOP_K, CANDIDATES, similarityThreshold, RRF_K, RERANK_WEIGHT);
+
+        Quality vector = measure(query -> vectorStore.similaritySearch(SearchRequest.builder()
+                .query(query).topK(TOP_K).similarityThreshold(similarityThreshold).build()));
+        Quality lexical = measure(query -> lexicalSearch.search(query, TOP_K));
+        Quality combined = measure(query -> hybrid.retrieve(new Query(query)));
+        System.out.println(String.format(Locale.ROOT, "Similarity threshold %.2f, top %d", similarityThreshold, TOP_K));
+        System.out.println("vector  " + vector);
+        System.out.println("lexical " + lexical);
+        System.out.println("hybrid  " + combined);
+
+        boolean passed = combined.precision >= minPrecision && combined.recall >= minRecall;
+        System.out.println(String.format(Locale.ROOT, "%s: hybrid precision and recall must reach %.2f and %.2f",
+                passed ? "OK" : "FAILED", minPrecision, minRecall));
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Mean precision and recall over one question per topic, asked the way a customer would
+     */
+    private static Quality measure(Function<String, List<Document>> retriever) {
+        double precision = 0.0;
+        double recall = 0.0;
+        for (String topic : TOPICS.keySet()) {
+            // "this year" is in no document, so only the partial lexical matches can answer it
+            List<Document> results = retriever.apply("How much should I put into " + topic + " this year?");
+            long relevant = results.stream().filter(document -> topic.equals(document.getMetadata().get("topic"))).count();
+            precision += results.isEmpty() ? 0.0 : (double) relevant / results.size();
+            recall += (double) relevant / Math.min(TOP_K, DOCUMENTS_PER_TOPIC);
+        }
+        return new Quality(precision / TOPICS.size(), recall / TOPICS.size());
+    }
+
+    private static List<Document> lexicalSearch(List<Document> documents, String query, int limit) {
+        Set<String> queryTerms = terms(query);
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+        List<Document> all = new ArrayList<>();
+        List<Document> some = new ArrayList<>();
+        Map<Document, Double> coverage = new IdentityHashMap<>();
+        for (Document document : documents) {
+            Set<String> documentTerms = terms(document.getText());
+            long matched = queryTerms.stream().filter(documentTerms::contains).count();
+            double share = (double) matched / queryTerms.size();
+            coverage.put(document, share);
+            if (matched == queryTerms.size()) {
+                all.add(document);
+            } else if (share >= MIN_LEXICAL_COVERAGE) {
+                some.add(document);
+            }
+        }
+        some.sort(Comparator.comparingDouble(coverage::get).reversed());
+        List<Document> results = new ArrayList<>(all.subList(0, Math.min(limit, all.size())));
+        for (Document document : some) {
+            if (results.size() >= limit) {
+                break;
+            }
+            results.add(document);
+        }
+        return results;
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static final class Quality {
+        private final double precision;
+        private final double recall;
+
+        private Quality(double precision, double recall) {
+            this.precision = precision;
+            this.recall = recall;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "precision@k %.3f, recall@k %.3f", precision, recall);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.List;
+
+/**
+ * Chat model that answers every prompt with a fixed reply instead of calling OpenAI, e.g. for the
+ * query rewrite made while building a prompt
+ */
+public class StubChatModel implements ChatModel {
+
+    private final String reply;
+
+    public StubChatModel(String reply) {
+        this.reply = reply;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(reply))));
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.document.Document;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a transaction into its vector store document and its similarity search text
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionDocumentBenchmark {
+
+    private Transaction transaction;
+
+    @Setup
+    public void setUp() {
+        transaction = BenchmarkData.transaction(7);
+    }
+
+    @Benchmark
+    public Document toDocument() {
+        return TransactionDocument.toDocument(transaction);
+    }
+
+    @Benchmark
+    public String toQueryText() {
+        return TransactionDocument.toQueryText(transaction);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.aibank.agentic_rag.benchmark;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the Jackson round trip of a transaction: the prompt embeds it as JSON and every request body is read into one
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private Transaction transaction;
+    private String transactionJson;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = BenchmarkData.objectMapper();
+        transaction = BenchmarkData.transaction(7);
+        transactionJson = objectMapper.writeValueAsString(transaction);
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(transaction);
+    }
+
+    @Benchmark
+    public Transaction deserialize() throws JsonProcessingException {
+        return objectMapper.readValue(transactionJson, Transaction.class);
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.aibank;
+
+import com.example.aibank.agentic_rag.config.KnowledgeIngestionRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Entry point of the financial knowledge base refresh: starts the application without its web server,
+ * ingests the directory given with {@code --ingest-knowledge=<directory>} and exits with a non-zero
+ * code on failure.
+ */
+public class KnowledgeIngestionApplication {
+
+    public static void main(String[] args) {
+        System.exit(SpringApplication.exit(new SpringApplicationBuilder(AiBankApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(KnowledgeIngestionRunner.PROFILE)
+                .run(args)));
+    }
+}
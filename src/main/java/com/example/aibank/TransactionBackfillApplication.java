@@ -0,0 +1,20 @@
+package com.example.aibank;
+
+import com.example.aibank.agentic_rag.config.TransactionBackfillRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Entry point of the bulk transaction backfill: starts the application without its web server,
+ * loads the files given with {@code --backfill=<file>} and exits with a non-zero code on failure.
+ */
+public class TransactionBackfillApplication {
+
+    public static void main(String[] args) {
+        System.exit(SpringApplication.exit(new SpringApplicationBuilder(AiBankApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles(TransactionBackfillRunner.PROFILE)
+                .run(args)));
+    }
+}
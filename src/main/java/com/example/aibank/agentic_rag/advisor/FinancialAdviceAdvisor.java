@@ -13,8 +13,8 @@ import org.springframework.ai.rag.generation.augmentation.ContextualQueryAugment
 import org.springframework.ai.rag.generation.augmentation.QueryAugmenter;
 import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
-import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
@@ -25,9 +25,10 @@ import java.util.Map;
 @Component
 public class FinancialAdviceAdvisor {
 
-    private final VectorStore financialKnowledgeVectorStore;
     private final ChatModel chatModel;
     private final RetrievalAugmentationAdvisor retrievalAugmentationAdvisor;
+    private final PromptContextAssembler promptContextAssembler;
+    private final int maxPromptTokens;
     
     private static final String SYSTEM_PROMPT = """
             You are an AI financial advisor for a bank. Your task is to provide personalized financial advice to customers.
@@ -52,26 +53,38 @@ public class FinancialAdviceAdvisor {
             3. Any next steps the customer should consider
             """;
 
-    public FinancialAdviceAdvisor(VectorStore financialKnowledgeVectorStore,
-                                  ChatModel chatModel) {
-        this.financialKnowledgeVectorStore = financialKnowledgeVectorStore;
+    /**
+     * @param financialKnowledgeRetriever Retriever of financial knowledge, hybrid lexical and vector search in production
+     * @param chatModel The chat model, used to rewrite queries for retrieval
+     * @param promptContextAssembler Fits the profile and the retrieved knowledge into the token budget
+     * @param maxPromptTokens Token budget of a financial advice prompt
+     */
+    public FinancialAdviceAdvisor(DocumentRetriever financialKnowledgeRetriever,
+                                  ChatModel chatModel,
+                                  PromptContextAssembler promptContextAssembler,
+                                  @Value("${aibank.prompt.advice.max-tokens:3000}") int maxPromptTokens) {
         this.chatModel = chatModel;
+        this.promptContextAssembler = promptContextAssembler;
+        this.maxPromptTokens = maxPromptTokens;
         this.retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
                 .queryTransformers(createQueryTransformers())
-                .documentRetriever(createDocumentRetriever())
+                .documentRetriever(financialKnowledgeRetriever)
                 .queryAugmenter(createQueryAugmenter())
                 .build();
     }
 
     /**
-     * Create a financial advice prompt based on customer query and profile
+     * Create a financial advice prompt based on customer query and profile.
+     * The profile and the relevant knowledge are trimmed to fit the prompt's token budget.
      * 
      * @param customerQuery The customer's financial question
      * @param customerProfile JSON string containing customer profile information
      * @return A prompt with the customer query and relevant financial knowledge
      */
     public Prompt createFinancialAdvicePrompt(String customerQuery, String customerProfile) {
-        String combinedQuery = customerQuery + "\n\nCustomer Profile: " + customerProfile;
+        PromptContextAssembler.Assembly context = promptContextAssembler.start("advice", maxPromptTokens, SYSTEM_PROMPT, customerQuery);
+        // The trimmed profile also keeps the query rewrite short
+        String combinedQuery = customerQuery + "\n\nCustomer Profile: " + context.profile(customerProfile);
 
         AdvisedRequest request = AdvisedRequest.builder()
                 .chatModel(chatModel)
@@ -91,9 +104,10 @@ public class FinancialAdviceAdvisor {
         }
 
         StringBuilder relevantKnowledgeText = new StringBuilder();
-        for (Document doc : relevantKnowledge) {
-            relevantKnowledgeText.append("- ").append(doc.getFormattedContent()).append("\n");
+        for (String knowledge : context.documents(relevantKnowledge, doc -> "- " + doc.getFormattedContent() + "\n")) {
+            relevantKnowledgeText.append(knowledge);
         }
+        context.finish();
 
         Map<String, Object> model = new HashMap<>();
         model.put("relevantFinancialKnowledge", relevantKnowledgeText.toString());
@@ -111,14 +125,6 @@ public class FinancialAdviceAdvisor {
                 .build();
     }
 
-    private VectorStoreDocumentRetriever createDocumentRetriever() {
-        return VectorStoreDocumentRetriever.builder()
-                .vectorStore(financialKnowledgeVectorStore)
-                .similarityThreshold(0.7)
-                .topK(5)
-                .build();
-    }
-
     private QueryAugmenter createQueryAugmenter() {
         return ContextualQueryAugmenter.builder()
                 .allowEmptyContext(false)
@@ -0,0 +1,318 @@
+package com.example.aibank.agentic_rag.advisor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Fits the variable parts of an advisor prompt, the customer profile and the retrieved documents,
+ * into a token budget. Tokens are counted locally with the cl100k tokenizer of the OpenAI models.
+ * The profile is trimmed first, down to a cap, by dropping empty fields, then the configured
+ * low-value fields (identity and contact details first), then the largest remaining fields other than
+ * the essential ones, and finally the largest fields inside its {@code preferences} and
+ * {@code financialData} sections other than the essential financial facts, so the facts advice depends
+ * on are kept longest. Documents are then taken in score order while they fit, skipping near-duplicates
+ * of documents already taken.
+ */
+@Component
+@Slf4j
+public class PromptContextAssembler {
+
+    // Sections of a stored customer profile holding its financial facts, as objects or jsonb text
+    private static final List<String> PROFILE_SECTIONS = List.of("preferences", "financialData");
+
+    // Never trimmed from a section, or from a profile sent flat: advice is meaningless without them
+    private static final Set<String> ESSENTIAL_FACTS = Set.of(
+            "age", "income", "annualIncome", "riskTolerance", "goals", "financialGoals");
+
+    // Never dropped from a profile; the sections are only trimmed inside
+    private static final Set<String> ESSENTIAL_PROFILE_FIELDS = Set.of(
+            "customerId", "preferences", "financialData",
+            "age", "income", "annualIncome", "riskTolerance", "goals", "financialGoals");
+
+    // Word n-gram length used to compare documents for near-duplicates
+    private static final int SHINGLE_WORDS = 3;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int profileMaxTokens;
+    private final double duplicateSimilarity;
+    private final List<String> lowValueProfileFields;
+
+    public PromptContextAssembler(ObjectMapper objectMapper,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${aibank.prompt.profile-max-tokens:600}") int profileMaxTokens,
+                                  @Value("${aibank.prompt.duplicate-similarity:0.9}") double duplicateSimilarity,
+                                  @Value("${aibank.prompt.low-value-profile-fields:email,phoneNumber,firstName,lastName,id,embedding,retentionUntil,createdAt,updatedAt,metadata,behavioralData}") List<String> lowValueProfileFields) {
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.profileMaxTokens = profileMaxTokens;
+        this.duplicateSimilarity = duplicateSimilarity;
+        this.lowValueProfileFields = lowValueProfileFields;
+    }
+
+    /**
+     * Start assembling the context of one prompt
+     *
+     * @param prompt Name of the prompt, tagging its metrics
+     * @param maxTokens Token budget of the whole prompt
+     * @param fixedTexts The parts of the prompt that are always sent, e.g. the system template and the question
+     * @return The assembly, to be completed with {@link Assembly#finish()}
+     */
+    public Assembly start(String prompt, int maxTokens, String... fixedTexts) {
+        int fixedTokens = 0;
+        for (String text : fixedTexts) {
+            fixedTokens += countTokens(text);
+        }
+        return new Assembly(prompt, maxTokens, fixedTokens);
+    }
+
+    /**
+     * @param text The text
+     * @return Its token count
+     */
+    public int countTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    /**
+     * Context of one prompt being fitted into its budget
+     */
+    public class Assembly {
+        private final String prompt;
+        private final int maxTokens;
+        private int usedTokens;
+        private int savedTokens;
+        private int droppedProfileFields;
+        private int droppedDocuments;
+
+        private Assembly(String prompt, int maxTokens, int fixedTokens) {
+            this.prompt = prompt;
+            this.maxTokens = maxTokens;
+            this.usedTokens = fixedTokens;
+        }
+
+        /**
+         * Trim a customer profile to its cap and the remaining budget
+         *
+         * @param profileJson The profile as a JSON object
+         * @return The trimmed profile JSON; text that is not a JSON object is returned unchanged
+         */
+        public String profile(String profileJson) {
+            int originalTokens = countTokens(profileJson);
+            int limit = Math.min(profileMaxTokens, remainingTokens());
+            JsonNode parsed;
+            try {
+                parsed = objectMapper.readTree(profileJson);
+            } catch (JsonProcessingException e) {
+                parsed = null;
+            }
+            if (originalTokens <= limit || !(parsed instanceof ObjectNode profile)) {
+                usedTokens += originalTokens;
+                return profileJson;
+            }
+
+            removeEmptyFields(profile);
+            parseSections(profile);
+            String trimmed = profile.toString();
+            Iterator<String> lowValueFields = lowValueProfileFields.iterator();
+            while (countTokens(trimmed) > limit && lowValueFields.hasNext()) {
+                if (profile.remove(lowValueFields.next().trim()) != null) {
+                    droppedProfileFields++;
+                    trimmed = profile.toString();
+                }
+            }
+            while (countTokens(trimmed) > limit) {
+                String largest = largestTrimmableField(profile, ESSENTIAL_PROFILE_FIELDS);
+                if (largest == null) {
+                    break;
+                }
+                profile.remove(largest);
+                droppedProfileFields++;
+                trimmed = profile.toString();
+            }
+            while (countTokens(trimmed) > limit) {
+                ObjectNode section = null;
+                String largest = null;
+                for (String name : PROFILE_SECTIONS) {
+                    if (profile.get(name) instanceof ObjectNode candidate) {
+                        String field = largestTrimmableField(candidate, ESSENTIAL_FACTS);
+                        if (field != null && (largest == null
+                                || candidate.get(field).toString().length() > section.get(largest).toString().length())) {
+                            section = candidate;
+                            largest = field;
+                        }
+                    }
+                }
+                if (largest == null) {
+                    break;
+                }
+                section.remove(largest);
+                droppedProfileFields++;
+                trimmed = profile.toString();
+            }
+
+            int trimmedTokens = countTokens(trimmed);
+            usedTokens += trimmedTokens;
+            savedTokens += originalTokens - trimmedTokens;
+            return trimmed;
+        }
+
+        /**
+         * Select the documents that fit the remaining budget, highest score first, skipping near-duplicates
+         *
+         * @param documents The retrieved documents
+         * @param formatter How a document is written into the prompt
+         * @return The formatted documents to send, highest score first
+         */
+        public List<String> documents(List<Document> documents, Function<Document, String> formatter) {
+            List<Document> ranked = new ArrayList<>(documents);
+            // Stable, so documents without a score keep their retrieval order after the scored ones
+            ranked.sort(Comparator.comparingDouble(
+                    (Document document) -> document.getScore() != null ? document.getScore() : Double.NEGATIVE_INFINITY).reversed());
+
+            List<String> selected = new ArrayList<>();
+            List<Set<String>> selectedShingles = new ArrayList<>();
+            for (Document document : ranked) {
+                String formatted = formatter.apply(document);
+                int tokens = countTokens(formatted);
+                Set<String> shingles = shingles(document.getText());
+                if (tokens > remainingTokens() || isNearDuplicate(shingles, selectedShingles)) {
+                    savedTokens += tokens;
+                    droppedDocuments++;
+                    continue;
+                }
+                selected.add(formatted);
+                selectedShingles.add(shingles);
+                usedTokens += tokens;
+            }
+            return selected;
+        }
+
+        /**
+         * Record the prompt's size and the tokens trimmed from it
+         *
+         * @return Tokens trimmed from the prompt
+         */
+        public int finish() {
+            DistributionSummary.builder("aibank.prompt.tokens")
+                    .description("Estimated tokens of assembled advisor prompts")
+                    .baseUnit("tokens")
+                    .tag("prompt", prompt)
+                    .register(meterRegistry)
+                    .record(usedTokens);
+            DistributionSummary.builder("aibank.prompt.tokens.saved")
+                    .description("Estimated tokens of profile fields and documents left out of advisor prompts")
+                    .baseUnit("tokens")
+                    .tag("prompt", prompt)
+                    .register(meterRegistry)
+                    .record(savedTokens);
+            log.debug("Assembled {} prompt: {} of {} tokens, {} saved by dropping {} profile fields and {} documents",
+                    prompt, usedTokens, maxTokens, savedTokens, droppedProfileFields, droppedDocuments);
+            return savedTokens;
+        }
+
+        private int remainingTokens() {
+            return Math.max(maxTokens - usedTokens, 0);
+        }
+
+        private boolean isNearDuplicate(Set<String> shingles, List<Set<String>> selectedShingles) {
+            for (Set<String> other : selectedShingles) {
+                if (jaccard(shingles, other) >= duplicateSimilarity) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static void removeEmptyFields(ObjectNode profile) {
+        profile.properties().removeIf(field -> field.getValue().isNull()
+                || (field.getValue().isTextual() && field.getValue().asText().isBlank())
+                || (field.getValue().isContainerNode() && field.getValue().isEmpty()));
+    }
+
+    /**
+     * Replace sections stored as JSON text with their objects, so they can be trimmed field by field
+     */
+    private void parseSections(ObjectNode profile) {
+        for (String name : PROFILE_SECTIONS) {
+            JsonNode section = profile.get(name);
+            if (section != null && section.isTextual()) {
+                try {
+                    JsonNode parsed = objectMapper.readTree(section.asText());
+                    if (parsed instanceof ObjectNode) {
+                        profile.set(name, parsed);
+                    }
+                } catch (JsonProcessingException e) {
+                    // Left as text, and kept whole
+                }
+            }
+        }
+    }
+
+    private static String largestTrimmableField(ObjectNode node, Set<String> essentialFields) {
+        String largest = null;
+        int largestLength = 0;
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            if (essentialFields.contains(field.getKey())) {
+                continue;
+            }
+            int length = field.getValue().toString().length();
+            if (length > largestLength) {
+                largest = field.getKey();
+                largestLength = length;
+            }
+        }
+        return largest;
+    }
+
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        if (text == null) {
+            return shingles;
+        }
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        if (words.length < SHINGLE_WORDS) {
+            shingles.add(String.join(" ", words));
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_WORDS <= words.length; i++) {
+            shingles.add(String.join(" ", List.of(words).subList(i, i + SHINGLE_WORDS)));
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        int intersection = 0;
+        for (String shingle : a) {
+            if (b.contains(shingle)) {
+                intersection++;
+            }
+        }
+        return intersection / (double) (a.size() + b.size() - intersection);
+    }
+}
@@ -1,5 +1,8 @@
 package com.example.aibank.agentic_rag.advisor;
 
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.chat.client.advisor.api.AdvisedRequest;
@@ -14,13 +17,22 @@ import org.springframework.ai.rag.generation.augmentation.QueryAugmenter;
 import org.springframework.ai.rag.preretrieval.query.transformation.QueryTransformer;
 import org.springframework.ai.rag.preretrieval.query.transformation.RewriteQueryTransformer;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class TransactionFraudAdvisor {
@@ -28,7 +40,13 @@ public class TransactionFraudAdvisor {
     private final VectorStore transactionVectorStore;
     private final RetrievalAugmentationAdvisor retrievalAugmentationAdvisor;
     private final ChatModel chatModel;
-
+    private final RetrievalMode retrievalMode;
+    private final RetrievalScope retrievalScope;
+    private final int windowDays;
+    private final boolean matchMerchantCategory;
+    private final PromptContextAssembler promptContextAssembler;
+    private final int maxPromptTokens;
+    private final int maxBatchPromptTokens;
     
     private static final String SYSTEM_PROMPT = """
             You are an AI fraud detection expert for a bank. Your task is to analyze a transaction and determine if it might be fraudulent.
@@ -37,6 +55,10 @@ public class TransactionFraudAdvisor {
             
             {relevantTransactions}
             
+            Velocity signals computed for the transaction over the last hour, and the ring of customers it is linked to:
+            
+            {velocitySignals}
+            
             Consider the following factors when analyzing the transaction:
             1. Transaction amount compared to customer's usual spending
             2. Transaction location compared to customer's usual locations
@@ -53,18 +75,71 @@ public class TransactionFraudAdvisor {
             
             Also provide a brief explanation for your score and any recommended actions.
             
-            Format your response as JSON:
+            Format your response as raw JSON with the fields in exactly this order, fraudScore first,
+            because the score is acted on as soon as it is received:
             {
                 "fraudScore": <score>,
-                "explanation": "<explanation>",
-                "recommendedAction": "<action>"
+                "recommendedAction": "<action>",
+                "explanation": "<explanation>"
             }
             """;
 
+    private static final String BATCH_SYSTEM_PROMPT = """
+            You are an AI fraud detection expert for a bank. Your task is to analyze a batch of transactions and determine which of them might be fraudulent.
+            
+            Use the following transaction patterns from the bank's database to inform your analysis. Each pattern is labelled
+            with the batch indices of the transactions it was retrieved for; compare a transaction only with its own patterns:
+            
+            {relevantTransactions}
+            
+            Velocity signals computed for each transaction over the last hour, and the ring of customers it is linked to, by batch index:
+            
+            {velocitySignals}
+            
+            Consider the following factors when analyzing each transaction:
+            1. Transaction amount compared to customer's usual spending
+            2. Transaction location compared to customer's usual locations
+            3. Transaction time and frequency
+            4. Merchant category and previous interactions
+            5. Device and IP address used
+            
+            Analyze every transaction independently. Each transaction is prefixed with its index in the batch.
+            Provide a fraud score between 0.0 and 1.0 for each, where:
+            - 0.0-0.2: Very likely legitimate
+            - 0.2-0.4: Probably legitimate
+            - 0.4-0.6: Uncertain
+            - 0.6-0.8: Suspicious
+            - 0.8-1.0: Very likely fraudulent
+            
+            Format your response as a JSON array with exactly one element per transaction:
+            [
+                {
+                    "index": <index>,
+                    "fraudScore": <score>,
+                    "explanation": "<explanation>",
+                    "recommendedAction": "<action>"
+                }
+            ]
+            """;
+
     public TransactionFraudAdvisor(VectorStore transactionVectorStore,
-                                   ChatModel chatModel) {
+                                   ChatModel chatModel,
+                                   @Value("${aibank.fraud.retrieval.mode:METADATA}") RetrievalMode retrievalMode,
+                                   @Value("${aibank.fraud.retrieval.scope:CUSTOMER}") RetrievalScope retrievalScope,
+                                   @Value("${aibank.fraud.retrieval.window-days:90}") int windowDays,
+                                   @Value("${aibank.fraud.retrieval.match-merchant-category:true}") boolean matchMerchantCategory,
+                                   PromptContextAssembler promptContextAssembler,
+                                   @Value("${aibank.prompt.fraud.max-tokens:3000}") int maxPromptTokens,
+                                   @Value("${aibank.prompt.fraud.batch-max-tokens:8000}") int maxBatchPromptTokens) {
         this.transactionVectorStore = transactionVectorStore;
         this.chatModel = chatModel;
+        this.retrievalMode = retrievalMode;
+        this.retrievalScope = retrievalScope;
+        this.windowDays = windowDays;
+        this.matchMerchantCategory = matchMerchantCategory;
+        this.promptContextAssembler = promptContextAssembler;
+        this.maxPromptTokens = maxPromptTokens;
+        this.maxBatchPromptTokens = maxBatchPromptTokens;
         this.retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
                 .queryTransformers(createQueryTransformers())
                 .documentRetriever(createDocumentRetriever())
@@ -73,16 +148,74 @@ public class TransactionFraudAdvisor {
     }
 
     /**
-     * Analyze a transaction for potential fraud
+     * Analyze a transaction for potential fraud.
+     * The relevant historical transactions are trimmed to fit the prompt's token budget.
      * 
-     * @param transaction The transaction to analyze as a JSON string
+     * @param transaction The transaction to analyze
+     * @param transactionJson The transaction to analyze as a JSON string
+     * @param features The transaction's history and velocity features
      * @return A prompt with the transaction and relevant historical transactions
      */
-    public Prompt createFraudAnalysisPrompt(String transaction) {
+    public Prompt createFraudAnalysisPrompt(Transaction transaction, String transactionJson, FraudFeatures features) {
+        List<Document> relevantTransactions = retrieve(transaction, transactionJson);
+        return createPrompt("fraud", maxPromptTokens, SYSTEM_PROMPT, transactionJson, relevantTransactions,
+                "- " + formatVelocity(features) + "\n", doc -> "- " + doc.getText() + "\n");
+    }
+
+    /**
+     * Analyze several transactions for potential fraud in a single prompt.
+     * Historical transactions are retrieved for each transaction separately and labelled with the
+     * batch indices they belong to, so one customer's history is not read as another's.
+     *
+     * @param transactions The transactions to analyze, in batch order
+     * @param transactionsJson The transactions to analyze as JSON strings, in batch order
+     * @param features The history and velocity features of each transaction, in batch order
+     * @return A prompt asking for one fraud verdict per transaction, keyed by batch index
+     */
+    public Prompt createBatchFraudAnalysisPrompt(List<Transaction> transactions, List<String> transactionsJson,
+                                                 List<FraudFeatures> features) {
+        StringBuilder batchText = new StringBuilder();
+        StringBuilder velocityText = new StringBuilder();
+        Map<String, Document> relevantTransactions = new LinkedHashMap<>();
+        Map<String, List<Integer>> retrievedFor = new HashMap<>();
+        for (int i = 0; i < transactionsJson.size(); i++) {
+            batchText.append("Transaction ").append(i).append(": ").append(transactionsJson.get(i)).append("\n");
+            velocityText.append("- Transaction ").append(i).append(": ").append(formatVelocity(features.get(i))).append("\n");
+            
+            for (Document document : retrieve(transactions.get(i), transactionsJson.get(i))) {
+                relevantTransactions.putIfAbsent(document.getId(), document);
+                retrievedFor.computeIfAbsent(document.getId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+        return createPrompt("fraud_batch", maxBatchPromptTokens, BATCH_SYSTEM_PROMPT, batchText.toString(),
+                new ArrayList<>(relevantTransactions.values()), velocityText.toString(),
+                doc -> "- Transactions " + retrievedFor.get(doc.getId()).stream().map(String::valueOf).collect(Collectors.joining(", "))
+                        + ": " + doc.getText() + "\n");
+    }
+
+    private List<Document> retrieve(Transaction transaction, String transactionJson) {
+        return retrievalMode == RetrievalMode.REWRITE
+                ? retrieveWithRewrite(transactionJson, transaction)
+                : retrieveWithMetadata(transaction);
+    }
 
+    /**
+     * Retrieve similar transactions by rewriting the raw input with the AI model before the vector search
+     *
+     * @param userText The transaction text to rewrite and search with
+     * @param transaction The transaction whose customer scopes the search
+     * @return The relevant historical transactions
+     */
+    private List<Document> retrieveWithRewrite(String userText, Transaction transaction) {
+        Map<String, Object> context = new HashMap<>();
+        if (retrievalScope == RetrievalScope.CUSTOMER) {
+            context.put(VectorStoreDocumentRetriever.FILTER_EXPRESSION,
+                    new FilterExpressionBuilder().eq("customerId", transaction.getCustomerId()).build());
+        }
         AdvisedRequest request = AdvisedRequest.builder()
                 .chatModel(chatModel)
-                .userText(transaction)
+                .userText(userText)
+                .adviseContext(context)
                 .build();
 
         AdvisedRequest advisedRequest = retrievalAugmentationAdvisor.before(request);
@@ -96,19 +229,67 @@ public class TransactionFraudAdvisor {
                 }
             }
         }
-        
-        // Format the relevant transactions for the prompt
+        return relevantTransactions;
+    }
+
+    /**
+     * Retrieve similar transactions with a query and metadata filter built directly from the transaction fields.
+     * The filter is pushed down into the vector store, where the customer condition lets it search
+     * only that customer's transactions.
+     *
+     * @param transaction The transaction to find patterns for
+     * @return The relevant historical transactions
+     */
+    private List<Document> retrieveWithMetadata(Transaction transaction) {
+        SearchRequest searchRequest = SearchRequest.builder()
+                .query(TransactionDocument.toQueryText(transaction))
+                .filterExpression(createFilterExpression(transaction))
+                .similarityThreshold(0.7)
+                .topK(5)
+                .build();
+        return transactionVectorStore.similaritySearch(searchRequest);
+    }
+
+    private Filter.Expression createFilterExpression(Transaction transaction) {
+        LocalDateTime reference = transaction.getTimestamp() != null ? transaction.getTimestamp() : LocalDateTime.now();
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op filter = b.gte("timestamp", reference.minusDays(windowDays).toString());
+        if (retrievalScope == RetrievalScope.CUSTOMER) {
+            filter = b.and(b.eq("customerId", transaction.getCustomerId()), filter);
+        }
+        if (matchMerchantCategory && transaction.getMerchantCategory() != null) {
+            filter = b.and(filter, b.eq("merchantCategory", transaction.getMerchantCategory()));
+        }
+        return filter.build();
+    }
+
+    private static String formatVelocity(FraudFeatures features) {
+        return "customer transactions: " + features.getTransactionsLastHour()
+                + ", same IP address: " + features.getIpTransactionsLastHour()
+                + ", same device: " + features.getDeviceTransactionsLastHour()
+                + ", same account: " + features.getAccountTransactionsLastHour()
+                + "; customers sharing devices, IP addresses or merchants: " + features.getRingSize()
+                + String.format(Locale.ROOT, ", ring risk: %.2f", features.getRingRisk());
+    }
+
+    private Prompt createPrompt(String promptName, int maxTokens, String systemPrompt, String userText,
+                                List<Document> relevantTransactions, String velocitySignals,
+                                Function<Document, String> formatter) {
+        // Format the relevant transactions that fit the token budget, most similar first
+        PromptContextAssembler.Assembly context = promptContextAssembler.start(promptName, maxTokens, systemPrompt, userText, velocitySignals);
         StringBuilder relevantTransactionsText = new StringBuilder();
-        for (Document doc : relevantTransactions) {
-            relevantTransactionsText.append("- ").append(doc.getText()).append("\n");
+        for (String relevantTransaction : context.documents(relevantTransactions, formatter)) {
+            relevantTransactionsText.append(relevantTransaction);
         }
+        context.finish();
         
         // Create the system message with the relevant transactions
         Map<String, Object> model = new HashMap<>();
         model.put("relevantTransactions", relevantTransactionsText.toString());
+        model.put("velocitySignals", velocitySignals);
         
-        Message systemMessage = new SystemPromptTemplate(SYSTEM_PROMPT).createMessage(model);
-        Message userMessage = new UserMessage(transaction);
+        Message systemMessage = new SystemPromptTemplate(systemPrompt).createMessage(model);
+        Message userMessage = new UserMessage(userText);
         
         List<Message> messages = new ArrayList<>();
         messages.add(systemMessage);
@@ -138,4 +319,23 @@ public class TransactionFraudAdvisor {
                 .build();
     }
 
+    /**
+     * How similar historical transactions are retrieved for the fraud prompt
+     */
+    public enum RetrievalMode {
+        // Query and filter built from the transaction fields, no AI model call
+        METADATA,
+        // Raw transaction rewritten by the AI model before the vector search
+        REWRITE
+    }
+
+    /**
+     * Whose historical transactions are searched for patterns
+     */
+    public enum RetrievalScope {
+        // Only the transacting customer's own history
+        CUSTOMER,
+        // Transactions of all customers, for bank-wide fraud patterns
+        GLOBAL
+    }
 }
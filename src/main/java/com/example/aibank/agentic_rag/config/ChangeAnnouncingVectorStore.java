@@ -0,0 +1,70 @@
+package com.example.aibank.agentic_rag.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+/**
+ * Vector store that announces its writes and deletes on a Redis channel, so that every node can
+ * drop what it derived from the old contents, e.g. cached answers. Searches go to the wrapped store unchanged.
+ */
+@Slf4j
+public class ChangeAnnouncingVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+
+    public ChangeAnnouncingVectorStore(VectorStore delegate, StringRedisTemplate redisTemplate, String tableName) {
+        this.delegate = delegate;
+        this.redisTemplate = redisTemplate;
+        this.channel = channel(tableName);
+    }
+
+    /**
+     * Redis channel on which changes to a vector table are announced
+     *
+     * @param tableName The vector table
+     * @return The channel name
+     */
+    public static String channel(String tableName) {
+        return "vector-changes:" + tableName;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        announce("add " + documents.size());
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        announce("delete " + idList.size());
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        announce("delete filter");
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return delegate.similaritySearch(request);
+    }
+
+    private void announce(String change) {
+        try {
+            redisTemplate.convertAndSend(channel, change);
+        } catch (RuntimeException e) {
+            // The change is stored; listeners fall back on their own expiry
+            log.warn("Failed to announce change on {}: {}", channel, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.aibank.agentic_rag.config;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a vector store filter expression against a document's metadata in memory.
+ * Numbers are compared numerically and everything else as strings, which matches how the
+ * pgvector store compares the ISO timestamps and identifiers stored in transaction metadata.
+ */
+public final class FilterExpressionEvaluator {
+
+    private FilterExpressionEvaluator() {
+    }
+
+    /**
+     * @param expression The filter expression
+     * @param metadata The document metadata
+     * @return True if the metadata satisfies the expression
+     * @throws IllegalArgumentException If the expression uses an unsupported operator
+     */
+    public static boolean matches(Filter.Expression expression, Map<String, Object> metadata) {
+        return switch (expression.type()) {
+            case AND -> matchesOperand(expression.left(), metadata) && matchesOperand(expression.right(), metadata);
+            case OR -> matchesOperand(expression.left(), metadata) || matchesOperand(expression.right(), metadata);
+            case NOT -> !matchesOperand(expression.left(), metadata);
+            case EQ, NE, GT, GTE, LT, LTE -> compare(expression, metadata);
+            case IN -> contains(expression, metadata);
+            case NIN -> !contains(expression, metadata);
+            default -> throw new IllegalArgumentException("Unsupported filter operator: " + expression.type());
+        };
+    }
+
+    /**
+     * Find the values a key is restricted to by an equality or IN condition that every match must satisfy,
+     * i.e. one that is not nested under OR or NOT
+     *
+     * @param expression The filter expression
+     * @param key The metadata key
+     * @return The allowed values, or null if the expression does not restrict the key to a fixed set
+     */
+    public static List<String> requiredValues(Filter.Expression expression, String key) {
+        return switch (expression.type()) {
+            case AND -> {
+                List<String> left = requiredValues(unwrap(expression.left()), key);
+                yield left != null ? left : requiredValues(unwrap(expression.right()), key);
+            }
+            case EQ, IN -> {
+                if (!(expression.left() instanceof Filter.Key filterKey) || !filterKey.key().equals(key)) {
+                    yield null;
+                }
+                Object value = ((Filter.Value) expression.right()).value();
+                List<String> values = new ArrayList<>();
+                for (Object item : value instanceof List<?> list ? list : List.of(value)) {
+                    values.add(item.toString());
+                }
+                yield values;
+            }
+            default -> null;
+        };
+    }
+
+    private static Filter.Expression unwrap(Filter.Operand operand) {
+        return operand instanceof Filter.Group group ? group.content() : (Filter.Expression) operand;
+    }
+
+    private static boolean matchesOperand(Filter.Operand operand, Map<String, Object> metadata) {
+        return matches(unwrap(operand), metadata);
+    }
+
+    /**
+     * Compare a metadata value with the expression's value; a missing key never matches
+     */
+    private static boolean compare(Filter.Expression expression, Map<String, Object> metadata) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        Object expected = ((Filter.Value) expression.right()).value();
+        if (actual == null || expected == null) {
+            return false;
+        }
+        int comparison = actual instanceof Number actualNumber && expected instanceof Number expectedNumber
+                ? Double.compare(actualNumber.doubleValue(), expectedNumber.doubleValue())
+                : actual.toString().compareTo(expected.toString());
+        return switch (expression.type()) {
+            case EQ -> comparison == 0;
+            case NE -> comparison != 0;
+            case GT -> comparison > 0;
+            case GTE -> comparison >= 0;
+            case LT -> comparison < 0;
+            case LTE -> comparison <= 0;
+            default -> throw new IllegalArgumentException("Not a comparison: " + expression.type());
+        };
+    }
+
+    private static boolean contains(Filter.Expression expression, Map<String, Object> metadata) {
+        Object actual = metadata.get(((Filter.Key) expression.left()).key());
+        if (actual == null) {
+            return false;
+        }
+        Object expected = ((Filter.Value) expression.right()).value();
+        List<?> values = expected instanceof List<?> list ? list : List.of(expected);
+        for (Object value : values) {
+            if (value instanceof Number number && actual instanceof Number actualNumber
+                    ? Double.compare(number.doubleValue(), actualNumber.doubleValue()) == 0
+                    : value.toString().equals(actual.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
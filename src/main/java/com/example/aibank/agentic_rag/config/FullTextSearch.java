@@ -0,0 +1,127 @@
+package com.example.aibank.agentic_rag.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Postgres full-text search over the content of a pgvector table, through a GIN index on a stored
+ * generated {@code tsvector} column, so neither matching nor ranking parses the content at query time.
+ * Documents containing every query term are returned first, ranked by {@code ts_rank_cd}, which
+ * rewards the terms close together. Only if there are too few of them is the result filled up with
+ * documents containing some of the terms, and only those ranked at least {@code minRank}, as a
+ * document sharing one common word with the question is rarely relevant.
+ */
+public class FullTextSearch implements HybridDocumentRetriever.LexicalSearch {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    // Longer questions add little but make the query slower
+    private static final int MAX_TERMS = 32;
+
+    private static final String TSVECTOR_COLUMN = "content_tsv";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+    private final String textSearchConfig;
+    private final double minRank;
+
+    /**
+     * @param jdbcTemplate The JDBC template
+     * @param objectMapper Reads the documents' metadata
+     * @param tableName The pgvector table
+     * @param textSearchConfig The Postgres text search configuration, e.g. {@code english}
+     * @param minRank Minimum {@code ts_rank_cd} of documents containing only some of the query terms,
+     *                normalized to between 0 and 1
+     */
+    public FullTextSearch(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, String tableName,
+                          String textSearchConfig, double minRank) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = tableName;
+        this.textSearchConfig = textSearchConfig;
+        this.minRank = minRank;
+    }
+
+    /**
+     * Add the stored {@code tsvector} column and its full-text index if they do not exist.
+     * Adding the column rewrites the table once
+     */
+    public void createIndex() {
+        jdbcTemplate.execute("ALTER TABLE " + tableName + " ADD COLUMN IF NOT EXISTS " + TSVECTOR_COLUMN
+                + " tsvector GENERATED ALWAYS AS (to_tsvector('" + textSearchConfig + "', coalesce(content, ''))) STORED");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + tableName + "_content_tsv_idx ON " + tableName
+                + " USING gin (" + TSVECTOR_COLUMN + ")");
+        // The expression index used before the column existed
+        jdbcTemplate.execute("DROP INDEX IF EXISTS " + tableName + "_content_fts_idx");
+    }
+
+    @Override
+    public List<Document> search(String query, int limit) {
+        // Words only, so the text cannot break the tsquery syntax; the configuration drops stop words
+        Set<String> words = new LinkedHashSet<>();
+        Matcher word = WORD.matcher(query.toLowerCase(Locale.ROOT));
+        while (word.find() && words.size() < MAX_TERMS) {
+            words.add(word.group());
+        }
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        List<Document> documents = new ArrayList<>(search(String.join(" & ", words), 0.0, limit));
+        if (documents.size() < limit && words.size() > 1) {
+            Set<String> found = new HashSet<>();
+            documents.forEach(document -> found.add(document.getId()));
+            for (Document document : search(String.join(" | ", words), minRank, limit)) {
+                if (documents.size() < limit && found.add(document.getId())) {
+                    documents.add(document);
+                }
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Documents matching a tsquery, best first; normalization 32 maps the rank to rank / (rank + 1)
+     */
+    private List<Document> search(String tsquery, double rankAtLeast, int limit) {
+        String sql = "SELECT id::text AS id, content, metadata::text AS metadata, rank FROM ("
+                + "SELECT id, content, metadata, ts_rank_cd(" + TSVECTOR_COLUMN + ", query, 32) AS rank"
+                + " FROM " + tableName + ", to_tsquery('" + textSearchConfig + "', ?) query"
+                + " WHERE " + TSVECTOR_COLUMN + " @@ query) matches"
+                + " WHERE rank >= ? ORDER BY rank DESC LIMIT ?";
+        return jdbcTemplate.query(sql, (resultSet, rowNum) -> toDocument(resultSet), tsquery, rankAtLeast, limit);
+    }
+
+    private Document toDocument(ResultSet resultSet) throws SQLException {
+        try {
+            Map<String, Object> metadata = objectMapper.readValue(resultSet.getString("metadata"), METADATA_TYPE);
+            return Document.builder()
+                    .id(resultSet.getString("id"))
+                    .text(resultSet.getString("content"))
+                    .metadata(metadata)
+                    .score(resultSet.getDouble("rank"))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata in " + tableName, e);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package com.example.aibank.agentic_rag.config;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * In-memory HNSW (hierarchical navigable small world) graph for approximate nearest-neighbour
+ * search by cosine similarity. Vectors are normalized on insert so distance is one minus the dot product.
+ * Searches share a read lock and inserts take the write lock; removed entries are tombstoned and
+ * skipped in results but stay in the graph to keep it connected, until {@link #compact()} rebuilds
+ * the graph from the live entries.
+ * Entries can also be grouped into partitions, e.g. by customer, which are searched exactly
+ * without walking the graph.
+ *
+ * @param <T> The payload stored with each vector
+ */
+public class HnswIndex<T> {
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Function<T, String> partitionKey;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Replaced as a whole when the graph is compacted
+    private List<Node<T>> nodes = new ArrayList<>();
+    private Map<String, Integer> nodeIds = new HashMap<>();
+    private Map<String, List<Integer>> partitions = new HashMap<>();
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int liveCount;
+
+    // Entries put (or removed, mapped to null) while a compaction rebuilds the graph, replayed onto the rebuilt graph
+    private Map<String, Node<T>> changedWhileCompacting;
+
+    /**
+     * @param m Links per node on the upper layers (twice as many on layer 0)
+     * @param efConstruction Candidate list size used while inserting
+     */
+    public HnswIndex(int m, int efConstruction) {
+        this(m, efConstruction, null);
+    }
+
+    /**
+     * @param m Links per node on the upper layers (twice as many on layer 0)
+     * @param efConstruction Candidate list size used while inserting
+     * @param partitionKey Partition of a payload, or null for no partitioning; payloads without one are in none
+     */
+    public HnswIndex(int m, int efConstruction, Function<T, String> partitionKey) {
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1.0 / Math.log(m);
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Insert or replace a vector
+     *
+     * @param id The document ID
+     * @param vector The embedding
+     * @param payload The value returned with search hits
+     */
+    public void put(String id, float[] vector, T payload) {
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+
+            int level = (int) (-Math.log(1.0 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+            Node<T> node = new Node<>(id, normalized, payload, level, m, maxM0);
+            int nodeId = nodes.size();
+            nodes.add(node);
+            nodeIds.put(id, nodeId);
+            liveCount++;
+            String partition = partitionKey != null ? partitionKey.apply(payload) : null;
+            if (partition != null) {
+                partitions.computeIfAbsent(partition, key -> new ArrayList<>()).add(nodeId);
+            }
+            if (changedWhileCompacting != null) {
+                changedWhileCompacting.put(id, node);
+            }
+
+            if (entryPoint < 0) {
+                entryPoint = nodeId;
+                maxLevel = level;
+                return;
+            }
+
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > level; layer--) {
+                current = greedyClosest(normalized, current, layer);
+            }
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Candidate> neighbours = sortedAscending(
+                        searchLayer(normalized, current, efConstruction, layer, null, Integer.MAX_VALUE, new boolean[1]));
+                int maxLinks = layer == 0 ? maxM0 : m;
+                for (int i = 0; i < Math.min(m, neighbours.size()); i++) {
+                    int neighbour = neighbours.get(i).node;
+                    node.addLink(layer, neighbour);
+                    connect(neighbour, nodeId, layer, maxLinks);
+                }
+                current = neighbours.get(0).node;
+            }
+
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = nodeId;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a vector from search results
+     *
+     * @param id The document ID
+     */
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every vector whose payload matches a predicate
+     *
+     * @param predicate The payloads to remove
+     * @return The number of vectors removed
+     */
+    public int removeIf(Predicate<T> predicate) {
+        lock.writeLock().lock();
+        try {
+            List<String> matching = new ArrayList<>();
+            for (Node<T> node : nodes) {
+                if (!node.deleted && predicate.test(node.payload)) {
+                    matching.add(node.id);
+                }
+            }
+            matching.forEach(this::removeLocked);
+            return matching.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the graph from its live entries, releasing the memory of removed ones. The rebuild runs
+     * without holding the lock, so searches and writes continue meanwhile; writes made during the
+     * rebuild are replayed onto the new graph before it replaces the current one.
+     *
+     * @return The number of removed entries released, 0 if another compaction is already running
+     */
+    public int compact() {
+        List<Node<T>> live = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            if (changedWhileCompacting != null) {
+                return 0;
+            }
+            for (Node<T> node : nodes) {
+                if (!node.deleted) {
+                    live.add(node);
+                }
+            }
+            changedWhileCompacting = new LinkedHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        HnswIndex<T> rebuilt = new HnswIndex<>(m, efConstruction, partitionKey);
+        try {
+            for (Node<T> node : live) {
+                rebuilt.put(node.id, node.vector, node.payload);
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changedWhileCompacting = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            changedWhileCompacting.forEach((id, node) -> {
+                if (node == null || node.deleted) {
+                    rebuilt.remove(id);
+                } else {
+                    rebuilt.put(id, node.vector, node.payload);
+                }
+            });
+            changedWhileCompacting = null;
+            int released = nodes.size() - liveCount;
+            nodes = rebuilt.nodes;
+            nodeIds = rebuilt.nodeIds;
+            partitions = rebuilt.partitions;
+            entryPoint = rebuilt.entryPoint;
+            maxLevel = rebuilt.maxLevel;
+            liveCount = rebuilt.liveCount;
+            return released;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the nearest neighbours of a query vector
+     *
+     * @param query The query embedding
+     * @param k The number of neighbours to return
+     * @param ef Candidate list size, at least k; larger values trade speed for recall
+     * @param filter Payload predicate results must satisfy, or null for none
+     * @param maxVisits Stop exploring the graph after this many nodes, which bounds filtered searches
+     * @return Up to k hits, most similar first, and whether the search stopped at maxVisits
+     */
+    public SearchResult<T> search(float[] query, int k, int ef, Predicate<T> filter, int maxVisits) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return new SearchResult<>(List.of(), false);
+            }
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--) {
+                current = greedyClosest(normalized, current, layer);
+            }
+            Predicate<Node<T>> accept = node -> !node.deleted && (filter == null || filter.test(node.payload));
+            boolean[] truncated = new boolean[1];
+            List<Candidate> found = sortedAscending(
+                    searchLayer(normalized, current, Math.max(ef, k), 0, accept, maxVisits, truncated));
+
+            List<Hit<T>> hits = new ArrayList<>(Math.min(k, found.size()));
+            for (int i = 0; i < Math.min(k, found.size()); i++) {
+                Candidate candidate = found.get(i);
+                hits.add(new Hit<>(nodes.get(candidate.node).payload, 1.0 - candidate.distance));
+            }
+            return new SearchResult<>(hits, truncated[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the nearest neighbours of a query vector within some partitions by comparing it with
+     * every vector in them, which is exact and costs the size of the partitions, not of the index
+     *
+     * @param partitionValues The partitions to search
+     * @param query The query embedding
+     * @param k The number of neighbours to return
+     * @param filter Payload predicate results must satisfy, or null for none
+     * @return Up to k hits, most similar first
+     */
+    public List<Hit<T>> searchPartitions(List<String> partitionValues, float[] query, int k, Predicate<T> filter) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            PriorityQueue<Candidate> results = new PriorityQueue<>(
+                    Comparator.comparingDouble(Candidate::distance).reversed());
+            for (String partitionValue : partitionValues) {
+                for (int nodeId : partitions.getOrDefault(partitionValue, List.of())) {
+                    Node<T> node = nodes.get(nodeId);
+                    if (filter != null && !filter.test(node.payload)) {
+                        continue;
+                    }
+                    results.add(new Candidate(nodeId, distance(normalized, nodeId)));
+                    if (results.size() > k) {
+                        results.poll();
+                    }
+                }
+            }
+            List<Hit<T>> hits = new ArrayList<>(results.size());
+            for (Candidate candidate : sortedAscending(results)) {
+                hits.add(new Hit<>(nodes.get(candidate.node).payload, 1.0 - candidate.distance));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of vectors that can be returned by a search
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of removed vectors still held in the graph
+     */
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return nodes.size() - liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeLocked(String id) {
+        Integer existing = nodeIds.remove(id);
+        if (changedWhileCompacting != null) {
+            changedWhileCompacting.put(id, null);
+        }
+        if (existing != null) {
+            Node<T> node = nodes.get(existing);
+            node.deleted = true;
+            liveCount--;
+            String partition = partitionKey != null ? partitionKey.apply(node.payload) : null;
+            List<Integer> members = partition != null ? partitions.get(partition) : null;
+            if (members != null) {
+                members.remove(existing);
+                if (members.isEmpty()) {
+                    partitions.remove(partition);
+                }
+            }
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int layer) {
+        int current = start;
+        double currentDistance = distance(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node<T> node = nodes.get(current);
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = node.links[layer][i];
+                double neighbourDistance = distance(query, neighbour);
+                if (neighbourDistance < currentDistance) {
+                    current = neighbour;
+                    currentDistance = neighbourDistance;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer. Only accepted nodes enter the result set, but every node is
+     * traversed, so a selective filter widens the search until ef matches or maxVisits is reached.
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int start, int ef, int layer,
+                                                 Predicate<Node<T>> accept, int maxVisits, boolean[] truncated) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(Comparator.comparingDouble(Candidate::distance));
+        PriorityQueue<Candidate> results = new PriorityQueue<>(
+                Comparator.comparingDouble(Candidate::distance).reversed());
+
+        Candidate first = new Candidate(start, distance(query, start));
+        visited.set(start);
+        candidates.add(first);
+        if (accept == null || accept.test(nodes.get(start))) {
+            results.add(first);
+        }
+
+        int visits = 1;
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.distance > results.peek().distance) {
+                break;
+            }
+            Node<T> node = nodes.get(candidate.node);
+            for (int i = 0; i < node.linkCounts[layer]; i++) {
+                int neighbour = node.links[layer][i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                if (++visits > maxVisits) {
+                    truncated[0] = true;
+                    return results;
+                }
+                double neighbourDistance = distance(query, neighbour);
+                if (results.size() < ef || neighbourDistance < results.peek().distance) {
+                    Candidate next = new Candidate(neighbour, neighbourDistance);
+                    candidates.add(next);
+                    if (accept == null || accept.test(nodes.get(neighbour))) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Link a node back to a new neighbour, keeping only its closest links when it has too many
+     */
+    private void connect(int nodeId, int newNeighbour, int layer, int maxLinks) {
+        Node<T> node = nodes.get(nodeId);
+        if (node.linkCounts[layer] < maxLinks) {
+            node.addLink(layer, newNeighbour);
+            return;
+        }
+        List<Candidate> links = new ArrayList<>(maxLinks + 1);
+        for (int i = 0; i < node.linkCounts[layer]; i++) {
+            int link = node.links[layer][i];
+            links.add(new Candidate(link, distance(node.vector, link)));
+        }
+        links.add(new Candidate(newNeighbour, distance(node.vector, newNeighbour)));
+        links.sort(Comparator.comparingDouble(Candidate::distance));
+        for (int i = 0; i < maxLinks; i++) {
+            node.links[layer][i] = links.get(i).node;
+        }
+    }
+
+    private double distance(float[] query, int nodeId) {
+        float[] vector = nodes.get(nodeId).vector;
+        double dot = 0.0;
+        for (int i = 0; i < vector.length; i++) {
+            dot += query[i] * vector[i];
+        }
+        return 1.0 - dot;
+    }
+
+    private static List<Candidate> sortedAscending(PriorityQueue<Candidate> queue) {
+        List<Candidate> sorted = new ArrayList<>(queue);
+        sorted.sort(Comparator.comparingDouble(Candidate::distance));
+        return sorted;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = norm > 0 ? (float) (vector[i] / norm) : 0f;
+        }
+        return normalized;
+    }
+
+    /**
+     * Hits of a search and whether it was cut short by the visit limit
+     */
+    @Getter
+    public static class SearchResult<T> {
+        private final List<Hit<T>> hits;
+        private final boolean truncated;
+
+        public SearchResult(List<Hit<T>> hits, boolean truncated) {
+            this.hits = hits;
+            this.truncated = truncated;
+        }
+    }
+
+    /**
+     * A search result with its cosine similarity to the query
+     */
+    @Getter
+    public static class Hit<T> {
+        private final T payload;
+        private final double similarity;
+
+        public Hit(T payload, double similarity) {
+            this.payload = payload;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final class Candidate {
+        private final int node;
+        private final double distance;
+
+        private Candidate(int node, double distance) {
+            this.node = node;
+            this.distance = distance;
+        }
+
+        private double distance() {
+            return distance;
+        }
+    }
+
+    private static final class Node<T> {
+        private final String id;
+        private final float[] vector;
+        private final T payload;
+        private final int[][] links;
+        private final int[] linkCounts;
+        private boolean deleted;
+
+        private Node(String id, float[] vector, T payload, int level, int m, int maxM0) {
+            this.id = id;
+            this.vector = vector;
+            this.payload = payload;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                links[layer] = new int[layer == 0 ? maxM0 : m];
+            }
+        }
+
+        private void addLink(int layer, int neighbour) {
+            links[layer][linkCounts[layer]++] = neighbour;
+        }
+    }
+}
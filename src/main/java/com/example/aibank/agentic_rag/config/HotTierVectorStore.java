@@ -0,0 +1,406 @@
+package com.example.aibank.agentic_rag.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * Vector store with an in-process HNSW hot tier in front of a pgvector store.
+ * The hot tier is warmed from the vector table at startup and updated on every write and delete, both
+ * from this node and, through Redis channels, from documents other nodes index or delete. Postgres stays the
+ * source of truth: writes go to it first, and searches fall back to it while the hot tier is
+ * warming, disabled, or cannot find enough matches for a filter.
+ * Documents are also partitioned by a metadata key such as the customer ID; searches whose filter
+ * pins that key scan only the matching partitions instead of walking the whole graph.
+ * The hot tier holds at most {@code maxEntries} documents; beyond that it stops serving searches
+ * rather than grow the heap without bound.
+ */
+@Slf4j
+public class HotTierVectorStore implements VectorStore {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    /**
+     * Approximate heap used by one document: its float32 embedding plus graph links, text and metadata
+     */
+    public static final long ESTIMATED_ENTRY_BYTES = VectorStoreConfig.DIMENSIONS * Float.BYTES + 2048L;
+
+    // Removed documents are released once they exceed this fraction of the live ones
+    private static final double MAX_TOMBSTONE_FRACTION = 0.2;
+
+    private final VectorStore delegate;
+    private final EmbeddingModel embeddingModel;
+    private final DataSource dataSource;
+    private final String tableName;
+    private final ObjectMapper objectMapper;
+    private final StringRedisTemplate redisTemplate;
+    private final String channel;
+    private final String deleteChannel;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final int efSearch;
+    private final int maxVisits;
+    private final int maxEntries;
+    private final String partitionKey;
+
+    private final HnswIndex<Document> index;
+    private volatile boolean ready;
+
+    private final Counter hotSearches;
+    private final Counter partitionSearches;
+    private final Counter fallbackSearches;
+
+    public HotTierVectorStore(VectorStore delegate,
+                              EmbeddingModel embeddingModel,
+                              DataSource dataSource,
+                              String tableName,
+                              ObjectMapper objectMapper,
+                              StringRedisTemplate redisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry,
+                              int m,
+                              int efConstruction,
+                              int efSearch,
+                              int maxVisits,
+                              int maxEntries,
+                              String partitionKey) {
+        this.delegate = delegate;
+        this.embeddingModel = embeddingModel;
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.objectMapper = objectMapper;
+        this.redisTemplate = redisTemplate;
+        this.channel = channel(tableName);
+        this.deleteChannel = deleteChannel(tableName);
+        this.efSearch = efSearch;
+        this.maxVisits = maxVisits;
+        this.maxEntries = maxEntries;
+        this.partitionKey = partitionKey;
+        this.index = new HnswIndex<>(m, efConstruction, document -> {
+            Object value = document.getMetadata().get(partitionKey);
+            return value != null ? value.toString() : null;
+        });
+
+        listenerContainer.addMessageListener(this::onRemoteAdd, new ChannelTopic(channel));
+        listenerContainer.addMessageListener(this::onRemoteDelete, new ChannelTopic(deleteChannel));
+
+        Gauge.builder("aibank.vector_hot_tier.size", index, HnswIndex::size)
+                .description("Documents held in the in-process HNSW index")
+                .tag("table", tableName)
+                .register(meterRegistry);
+        this.hotSearches = searchCounter(meterRegistry, tableName, "hot");
+        this.partitionSearches = searchCounter(meterRegistry, tableName, "partition");
+        this.fallbackSearches = searchCounter(meterRegistry, tableName, "fallback");
+    }
+
+    /**
+     * Load the vector table into the hot tier in the background; searches use Postgres until it is done
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Thread.ofPlatform().name("vector-hot-tier-warmup").daemon(true).start(() -> {
+            try {
+                long rows = countRows();
+                if (rows > maxEntries) {
+                    log.warn("{} has {} rows, more than the hot tier limit of {}; serving searches from Postgres",
+                            tableName, rows, maxEntries);
+                    return;
+                }
+                long started = System.currentTimeMillis();
+                loadRows("SELECT id::text, content, metadata::text, embedding::text FROM " + tableName, null);
+                ready = true;
+                log.info("Vector hot tier for {} warmed with {} documents in {} ms",
+                        tableName, index.size(), System.currentTimeMillis() - started);
+            } catch (SQLException | RuntimeException e) {
+                log.error("Failed to warm vector hot tier for {}, serving searches from Postgres", tableName, e);
+            }
+        });
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+        if (!hasRoomFor(documents.size())) {
+            return;
+        }
+        try {
+            // The delegate has just embedded the same texts, so this is served by the embedding cache
+            List<float[]> embeddings = embeddingModel.embed(
+                    documents, EmbeddingOptionsBuilder.builder().build(), new TokenCountBatchingStrategy());
+            for (int i = 0; i < documents.size(); i++) {
+                index.put(documents.get(i).getId(), embeddings.get(i), documents.get(i));
+            }
+            redisTemplate.convertAndSend(channel, message(nodeId, documents.stream().map(Document::getId).toList()));
+        } catch (RuntimeException e) {
+            // A hot tier missing documents would serve wrong results; use Postgres until restart
+            log.error("Failed to update vector hot tier for {}, disabling it", tableName, e);
+            ready = false;
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        idList.forEach(index::remove);
+        announceDelete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+        // Other nodes hold the same documents, so they are told the IDs this node removed
+        List<String> removed = new ArrayList<>();
+        index.removeIf(document -> {
+            boolean matches = FilterExpressionEvaluator.matches(filterExpression, document.getMetadata());
+            if (matches) {
+                removed.add(document.getId());
+            }
+            return matches;
+        });
+        announceDelete(removed);
+    }
+
+    /**
+     * Release the memory of deleted documents once they make up a large part of the index
+     */
+    @Scheduled(fixedDelay = 600000) // Check every 10 minutes
+    public void compactIndex() {
+        int tombstones = index.tombstones();
+        if (tombstones == 0 || tombstones < index.size() * MAX_TOMBSTONE_FRACTION) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int released = index.compact();
+        log.info("Compacted vector hot tier for {}: released {} deleted documents in {} ms",
+                tableName, released, System.currentTimeMillis() - started);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        if (!ready) {
+            fallbackSearches.increment();
+            return delegate.similaritySearch(request);
+        }
+
+        try {
+            Predicate<Document> filter = request.hasFilterExpression()
+                    ? document -> FilterExpressionEvaluator.matches(request.getFilterExpression(), document.getMetadata())
+                    : null;
+            List<String> partitions = request.hasFilterExpression()
+                    ? FilterExpressionEvaluator.requiredValues(request.getFilterExpression(), partitionKey)
+                    : null;
+            float[] query = embeddingModel.embed(request.getQuery());
+            List<HnswIndex.Hit<Document>> hits;
+            if (partitions != null) {
+                hits = index.searchPartitions(partitions, query, request.getTopK(), filter);
+                partitionSearches.increment();
+            } else {
+                HnswIndex.SearchResult<Document> result = index.search(query, request.getTopK(), efSearch, filter, maxVisits);
+                hits = result.getHits();
+                if (result.isTruncated() && hits.size() < request.getTopK()) {
+                    // The filter may match documents the bounded graph walk did not reach
+                    fallbackSearches.increment();
+                    return delegate.similaritySearch(request);
+                }
+                hotSearches.increment();
+            }
+
+            List<Document> results = new ArrayList<>(hits.size());
+            for (HnswIndex.Hit<Document> hit : hits) {
+                if (hit.getSimilarity() < request.getSimilarityThreshold()) {
+                    continue;
+                }
+                Document document = hit.getPayload();
+                Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                metadata.put("distance", 1.0 - hit.getSimilarity());
+                results.add(Document.builder()
+                        .id(document.getId())
+                        .text(document.getText())
+                        .metadata(metadata)
+                        .score(hit.getSimilarity())
+                        .build());
+            }
+            return results;
+        } catch (IllegalArgumentException e) {
+            log.debug("Hot tier cannot evaluate search for {}: {}", tableName, e.getMessage());
+            fallbackSearches.increment();
+            return delegate.similaritySearch(request);
+        }
+    }
+
+    /**
+     * Redis channel on which IDs of documents written to a vector table are announced
+     *
+     * @param tableName The vector table
+     * @return The channel name
+     */
+    public static String channel(String tableName) {
+        return "vector-hot-tier:" + tableName;
+    }
+
+    /**
+     * Redis channel on which IDs of documents deleted from a vector table are announced
+     *
+     * @param tableName The vector table
+     * @return The channel name
+     */
+    public static String deleteChannel(String tableName) {
+        return "vector-hot-tier-deletes:" + tableName;
+    }
+
+    /**
+     * Announcement of documents written to a vector table outside this store, e.g. by a bulk load
+     *
+     * @param sender Identifies the writer; hot tiers ignore their own announcements
+     * @param ids The IDs of the written documents
+     * @return The message to publish on {@link #channel(String)}
+     */
+    public static String message(String sender, List<String> ids) {
+        return sender + "|" + String.join(",", ids);
+    }
+
+    private void onRemoteAdd(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        List<String> ids = List.of(body.substring(separator + 1).split(","));
+        if (!hasRoomFor(ids.size())) {
+            return;
+        }
+        try {
+            String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+            loadRows("SELECT id::text, content, metadata::text, embedding::text FROM " + tableName
+                    + " WHERE id::text IN (" + placeholders + ")", ids);
+        } catch (SQLException | RuntimeException e) {
+            log.error("Failed to load {} documents indexed by another node, disabling vector hot tier for {}",
+                    ids.size(), tableName, e);
+            ready = false;
+        }
+    }
+
+    private void onRemoteDelete(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf('|');
+        if (separator < 0 || body.substring(0, separator).equals(nodeId) || separator + 1 == body.length()) {
+            return;
+        }
+        for (String id : body.substring(separator + 1).split(",")) {
+            index.remove(id);
+        }
+    }
+
+    private void announceDelete(List<String> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(deleteChannel, message(nodeId, ids));
+        } catch (RuntimeException e) {
+            // Other nodes would keep serving the deleted documents; Postgres no longer has them
+            log.error("Failed to announce {} deleted documents of {}", ids.size(), tableName, e);
+        }
+    }
+
+    /**
+     * Check that documents about to be written still fit the hot tier, disabling it otherwise
+     */
+    private boolean hasRoomFor(int documents) {
+        if (index.size() + documents <= maxEntries) {
+            return true;
+        }
+        if (ready) {
+            log.warn("Vector hot tier for {} would exceed its limit of {} documents; serving searches from Postgres",
+                    tableName, maxEntries);
+            ready = false;
+        }
+        return false;
+    }
+
+    private long countRows() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM " + tableName)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void loadRows(String sql, List<String> parameters) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            // A cursor-backed result set needs a transaction in the Postgres driver
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setFetchSize(1000);
+                if (parameters != null) {
+                    for (int i = 0; i < parameters.size(); i++) {
+                        statement.setString(i + 1, parameters.get(i));
+                    }
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        Map<String, Object> metadata = objectMapper.readValue(resultSet.getString(3), METADATA_TYPE);
+                        Document document = new Document(resultSet.getString(1), resultSet.getString(2), metadata);
+                        index.put(document.getId(), parseVector(resultSet.getString(4)), document);
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Invalid metadata in " + tableName, e);
+            } finally {
+                connection.rollback();
+            }
+        }
+    }
+
+    private static float[] parseVector(String text) {
+        // pgvector text format: [0.1,0.2,...]
+        String[] values = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            vector[i] = Float.parseFloat(values[i]);
+        }
+        return vector;
+    }
+
+    private static Counter searchCounter(MeterRegistry meterRegistry, String tableName, String tier) {
+        return Counter.builder("aibank.vector_hot_tier.searches")
+                .description("Similarity searches by the tier that answered them")
+                .tag("table", tableName)
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+}
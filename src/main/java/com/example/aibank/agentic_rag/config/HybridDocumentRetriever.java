@@ -0,0 +1,180 @@
+package com.example.aibank.agentic_rag.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Document retriever combining vector and lexical search.
+ * Each search returns a ranked list of candidates, merged by reciprocal-rank fusion: a document scores
+ * {@code 1 / (rrfK + rank)} per list it appears in, so documents found by both searches rise to the
+ * top and neither search's raw scores need calibrating against the other. The fused candidates are then
+ * re-ranked by how much of the query they contain, weighting terms that look like product names or
+ * regulatory codes (containing digits, hyphens or capitals) double, since those are what the vector
+ * search misses.
+ */
+@Slf4j
+public class HybridDocumentRetriever implements DocumentRetriever {
+
+    private static final Pattern TERM = Pattern.compile("[\\p{L}\\p{N}]+(?:[-./][\\p{L}\\p{N}]+)*");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "are", "but", "not", "you", "your", "with", "what", "how", "can", "should",
+            "about", "from", "this", "that", "have", "has", "was", "were", "will", "would", "could", "into",
+            "than", "then", "them", "they", "our", "out", "which", "who", "why", "when", "does", "did", "any");
+
+    /**
+     * Lexical search over the same documents as the vector store
+     */
+    @FunctionalInterface
+    public interface LexicalSearch {
+
+        /**
+         * @param query The query text
+         * @param limit The maximum number of documents
+         * @return The matching documents, best match first
+         */
+        List<Document> search(String query, int limit);
+    }
+
+    private final VectorStore vectorStore;
+    private final LexicalSearch lexicalSearch;
+    private final int topK;
+    private final int candidates;
+    private final double similarityThreshold;
+    private final int rrfK;
+    private final double rerankWeight;
+
+    /**
+     * @param vectorStore The vector store
+     * @param lexicalSearch Lexical search over the vector store's documents
+     * @param topK The number of documents to return
+     * @param candidates The number of candidates taken from each search
+     * @param similarityThreshold Minimum cosine similarity of vector candidates
+     * @param rrfK Rank offset of reciprocal-rank fusion; larger values flatten the weight of top ranks
+     * @param rerankWeight Share of the final score given to query term coverage, between 0 and 1
+     */
+    public HybridDocumentRetriever(VectorStore vectorStore, LexicalSearch lexicalSearch, int topK, int candidates,
+                                   double similarityThreshold, int rrfK, double rerankWeight) {
+        this.vectorStore = vectorStore;
+        this.lexicalSearch = lexicalSearch;
+        this.topK = topK;
+        this.candidates = Math.max(candidates, topK);
+        this.similarityThreshold = similarityThreshold;
+        this.rrfK = rrfK;
+        this.rerankWeight = rerankWeight;
+    }
+
+    @Override
+    public List<Document> retrieve(Query query) {
+        String text = query.text();
+        List<Document> vectorResults = vectorStore.similaritySearch(SearchRequest.builder()
+                .query(text)
+                .topK(candidates)
+                .similarityThreshold(similarityThreshold)
+                .build());
+        List<Document> lexicalResults;
+        try {
+            lexicalResults = lexicalSearch.search(text, candidates);
+        } catch (RuntimeException e) {
+            // The vector results alone are still a usable answer
+            log.warn("Lexical search failed, using vector results only: {}", e.getMessage());
+            lexicalResults = List.of();
+        }
+
+        Map<String, Document> documents = new LinkedHashMap<>();
+        Map<String, Double> fusedScores = new HashMap<>();
+        fuse(vectorResults, documents, fusedScores);
+        fuse(lexicalResults, documents, fusedScores);
+        if (documents.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Integer> queryTerms = queryTerms(text);
+        int queryWeight = queryTerms.values().stream().mapToInt(Integer::intValue).sum();
+        // Normalized by the score of a document ranked first by both searches
+        double maxFusedScore = 2.0 / (rrfK + 1);
+
+        List<Document> ranked = new ArrayList<>(documents.size());
+        for (Document document : documents.values()) {
+            double fused = fusedScores.get(document.getId()) / maxFusedScore;
+            double coverage = queryWeight == 0 ? 0.0 : coverage(queryTerms, document.getText()) / (double) queryWeight;
+            double score = (1.0 - rerankWeight) * fused + rerankWeight * coverage;
+            ranked.add(Document.builder()
+                    .id(document.getId())
+                    .text(document.getText())
+                    .metadata(document.getMetadata())
+                    .score(score)
+                    .build());
+        }
+        ranked.sort(Comparator.comparingDouble(Document::getScore).reversed());
+        return ranked.subList(0, Math.min(topK, ranked.size()));
+    }
+
+    /**
+     * Add a ranked result list to the fused scores
+     */
+    private void fuse(List<Document> results, Map<String, Document> documents, Map<String, Double> fusedScores) {
+        for (int rank = 0; rank < results.size(); rank++) {
+            Document document = results.get(rank);
+            documents.putIfAbsent(document.getId(), document);
+            fusedScores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+        }
+    }
+
+    /**
+     * Weighted sum of the query terms found in a document
+     */
+    private static int coverage(Map<String, Integer> queryTerms, String text) {
+        if (text == null) {
+            return 0;
+        }
+        Set<String> documentTerms = new HashSet<>();
+        Matcher term = TERM.matcher(text.toLowerCase(Locale.ROOT));
+        while (term.find()) {
+            documentTerms.add(term.group());
+        }
+        int covered = 0;
+        for (Map.Entry<String, Integer> queryTerm : queryTerms.entrySet()) {
+            if (documentTerms.contains(queryTerm.getKey())) {
+                covered += queryTerm.getValue();
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Distinct query terms with their weights: 2 for terms that look like names or codes, 1 otherwise
+     */
+    static Map<String, Integer> queryTerms(String text) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        Matcher term = TERM.matcher(text);
+        while (term.find()) {
+            String original = term.group();
+            String lowerCase = original.toLowerCase(Locale.ROOT);
+            boolean code = original.chars().anyMatch(Character::isDigit)
+                    || original.indexOf('-') >= 0
+                    || original.chars().skip(1).anyMatch(Character::isUpperCase);
+            if (!code && (lowerCase.length() < 3 || STOP_WORDS.contains(lowerCase))) {
+                continue;
+            }
+            terms.merge(lowerCase, code ? 2 : 1, Math::max);
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.aibank.agentic_rag.config;
+
+import com.example.aibank.agentic_rag.service.KnowledgeIngestionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Refreshes the financial knowledge base from the directory of published documents given with
+ * {@code --ingest-knowledge=<directory>}. Documents no longer in the directory are deleted from the
+ * knowledge base. Only active in the {@code ingest-knowledge} profile set by
+ * {@link com.example.aibank.KnowledgeIngestionApplication}, which exits with this runner's code.
+ */
+@Component
+@Profile(KnowledgeIngestionRunner.PROFILE)
+@RequiredArgsConstructor
+@Slf4j
+public class KnowledgeIngestionRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    public static final String PROFILE = "ingest-knowledge";
+
+    private final KnowledgeIngestionService knowledgeIngestionService;
+
+    private int exitCode;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        // The directory is the complete publication, so several directories would prune each other
+        List<String> directories = args.containsOption("ingest-knowledge") ? args.getOptionValues("ingest-knowledge") : List.of();
+        if (directories.size() != 1) {
+            log.error("Expected one --ingest-knowledge=<directory>, got {}", directories.size());
+            exitCode = 2;
+            return;
+        }
+
+        try {
+            knowledgeIngestionService.ingestDirectory(Path.of(directories.get(0)));
+        } catch (Exception e) {
+            // Rerunning the same command embeds only what this run did not store
+            log.error("Knowledge ingestion of {} failed", directories.get(0), e);
+            exitCode = 1;
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.aibank.agentic_rag.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Two-stage similarity search over a pgvector table.
+ * Candidates are found through an HNSW expression index over {@code halfvec} (16-bit) or
+ * binary-quantized ({@code bit}) embeddings, a half or a thirty-second of the size of a float32
+ * index, then re-ranked by exact cosine distance on the full vectors of those candidates only.
+ */
+public class QuantizedVectorSearch {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final String tableName;
+    private final int dimensions;
+
+    public QuantizedVectorSearch(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, String tableName, int dimensions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.tableName = tableName;
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * Create the HNSW index backing a mode if it does not exist.
+     * Built concurrently, outside any transaction, so inserts into the table continue during the build;
+     * a build that fails leaves an invalid index, which {@link #hasIndex(Mode)} does not count and which
+     * must be dropped before the next attempt.
+     *
+     * @param mode NONE, HALFVEC or BINARY; outside benchmarks the full-precision index is managed by the pgvector store
+     */
+    public void createIndex(Mode mode) {
+        jdbcTemplate.execute(switch (mode) {
+            case NONE -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName(mode) + " ON " + tableName
+                    + " USING hnsw (embedding vector_cosine_ops)";
+            case HALFVEC -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName(mode) + " ON " + tableName
+                    + " USING hnsw ((embedding::halfvec(" + dimensions + ")) halfvec_cosine_ops)";
+            case BINARY -> "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + indexName(mode) + " ON " + tableName
+                    + " USING hnsw ((binary_quantize(embedding)::bit(" + dimensions + ")) bit_hamming_ops)";
+            default -> throw new IllegalArgumentException("No index for " + mode);
+        });
+    }
+
+    /**
+     * Check whether a valid HNSW index of a mode exists
+     *
+     * @param mode NONE, HALFVEC or BINARY
+     * @return True if the index exists and its build completed
+     */
+    public boolean hasIndex(Mode mode) {
+        String validIndexes = "SELECT count(*) FROM pg_indexes i JOIN pg_index x ON x.indexrelid = quote_ident(i.indexname)::regclass "
+                + "WHERE i.tablename = ? AND x.indisvalid AND ";
+        if (mode == Mode.NONE) {
+            // The pgvector store creates it under its own name
+            Integer count = jdbcTemplate.queryForObject(
+                    validIndexes + "i.indexdef LIKE '%USING hnsw (embedding vector_cosine_ops)%'",
+                    Integer.class, tableName);
+            return count != null && count > 0;
+        }
+        Integer count = jdbcTemplate.queryForObject(validIndexes + "i.indexname = ?",
+                Integer.class, tableName, indexName(mode));
+        return count != null && count > 0;
+    }
+
+    /**
+     * Find the documents closest to a query vector
+     *
+     * @param query The query embedding
+     * @param topK The number of documents to return
+     * @param similarityThreshold Minimum cosine similarity of returned documents
+     * @param jsonPathFilter pgvector jsonpath filter on metadata, or null for none
+     * @param mode The candidate search to use
+     * @param oversample Candidates fetched per returned document in the quantized modes
+     * @return Up to topK documents, most similar first
+     */
+    public List<Document> search(float[] query, int topK, double similarityThreshold, String jsonPathFilter,
+                                 Mode mode, int oversample) {
+        int candidates = mode == Mode.HALFVEC || mode == Mode.BINARY ? topK * oversample : topK;
+        String sql = searchSql(mode, jsonPathFilter);
+        String vector = toVectorLiteral(query);
+
+        return jdbcTemplate.execute((ConnectionCallback<List<Document>>) connection -> {
+            // SET LOCAL needs a transaction; join the caller's if there is one
+            boolean ownTransaction = connection.getAutoCommit();
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            }
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    if (mode == Mode.EXACT) {
+                        statement.execute("SET LOCAL enable_indexscan = off");
+                    } else {
+                        // The HNSW scan returns at most ef_search rows, so it must cover every candidate
+                        statement.execute("SET LOCAL hnsw.ef_search = " + Math.max(40, candidates));
+                    }
+                }
+                List<Document> documents = new ArrayList<>(topK);
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setString(1, vector);
+                    statement.setString(2, vector);
+                    statement.setInt(3, candidates);
+                    statement.setDouble(4, 1.0 - similarityThreshold);
+                    statement.setInt(5, topK);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            documents.add(toDocument(resultSet));
+                        }
+                    }
+                }
+                if (ownTransaction) {
+                    connection.commit();
+                }
+                return documents;
+            } catch (SQLException | RuntimeException e) {
+                if (ownTransaction) {
+                    connection.rollback();
+                }
+                throw e;
+            } finally {
+                if (ownTransaction) {
+                    connection.setAutoCommit(true);
+                }
+            }
+        });
+    }
+
+    private Document toDocument(ResultSet resultSet) throws SQLException {
+        try {
+            Map<String, Object> metadata = objectMapper.readValue(resultSet.getString("metadata"), METADATA_TYPE);
+            double distance = resultSet.getDouble("distance");
+            metadata.put("distance", distance);
+            return Document.builder()
+                    .id(resultSet.getString("id"))
+                    .text(resultSet.getString("content"))
+                    .metadata(metadata)
+                    .score(1.0 - distance)
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Invalid metadata in " + tableName, e);
+        }
+    }
+
+    private String indexName(Mode mode) {
+        return tableName + "_" + mode.name().toLowerCase(Locale.ROOT) + "_idx";
+    }
+
+    /**
+     * Candidate search followed by an exact re-rank. Parameters: query vector (re-rank), query vector
+     * (candidate search), candidate count, maximum cosine distance, result count.
+     */
+    private String searchSql(Mode mode, String jsonPathFilter) {
+        String candidateOrder = switch (mode) {
+            case NONE, EXACT -> "embedding <=> ?::vector";
+            case HALFVEC -> "embedding::halfvec(" + dimensions + ") <=> ?::halfvec(" + dimensions + ")";
+            case BINARY -> "binary_quantize(embedding)::bit(" + dimensions + ") <~> binary_quantize(?::vector)";
+        };
+        String where = jsonPathFilter != null
+                ? " WHERE metadata::jsonb @@ '" + jsonPathFilter.replace("'", "''") + "'::jsonpath"
+                : "";
+        return "SELECT id::text AS id, content, metadata::text AS metadata, distance FROM ("
+                + "SELECT id, content, metadata, embedding <=> ?::vector AS distance FROM ("
+                + "SELECT id, content, metadata, embedding FROM " + tableName + where
+                + " ORDER BY " + candidateOrder + " LIMIT ?"
+                + ") candidates) ranked WHERE distance <= ? ORDER BY distance LIMIT ?";
+    }
+
+    private static String toVectorLiteral(float[] vector) {
+        StringBuilder literal = new StringBuilder(vector.length * 12).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                literal.append(',');
+            }
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    /**
+     * How candidates are searched
+     */
+    public enum Mode {
+        // Full-precision float32 HNSW index, no re-ranking
+        NONE,
+        // 16-bit float HNSW index by cosine distance, re-ranked on float32
+        HALFVEC,
+        // One bit per dimension HNSW index by Hamming distance, re-ranked on float32
+        BINARY,
+        // Sequential scan of the float32 vectors, the exact ground truth
+        EXACT
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.aibank.agentic_rag.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+
+import java.util.List;
+
+/**
+ * pgvector store whose similarity search finds candidates on quantized embeddings and re-ranks
+ * them on the full vectors. Writes and deletes go to the wrapped store unchanged.
+ */
+@Slf4j
+public class QuantizedVectorStore implements VectorStore {
+
+    private final VectorStore delegate;
+    private final EmbeddingModel embeddingModel;
+    private final QuantizedVectorSearch search;
+    private final QuantizedVectorSearch.Mode mode;
+    private final int oversample;
+    private final PgVectorFilterExpressionConverter filterConverter = new PgVectorFilterExpressionConverter();
+
+    public QuantizedVectorStore(VectorStore delegate,
+                                EmbeddingModel embeddingModel,
+                                QuantizedVectorSearch search,
+                                QuantizedVectorSearch.Mode mode,
+                                int oversample) {
+        this.delegate = delegate;
+        this.embeddingModel = embeddingModel;
+        this.search = search;
+        this.mode = mode;
+        this.oversample = oversample;
+        search.createIndex(mode);
+        log.info("Serving similarity searches from the {} quantized index", mode);
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        delegate.add(documents);
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        delegate.delete(filterExpression);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        String jsonPathFilter = request.hasFilterExpression()
+                ? filterConverter.convertExpression(request.getFilterExpression())
+                : null;
+        float[] query = embeddingModel.embed(request.getQuery());
+        return search.search(query, request.getTopK(), request.getSimilarityThreshold(), jsonPathFilter, mode, oversample);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.aibank.agentic_rag.config;
+
+import com.example.aibank.agentic_rag.service.TransactionBackfillService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Runs the bulk transaction backfill of the files given with {@code --backfill=<file>}, in order.
+ * Only active in the {@code backfill} profile set by
+ * {@link com.example.aibank.TransactionBackfillApplication}, which exits with this runner's code.
+ */
+@Component
+@Profile(TransactionBackfillRunner.PROFILE)
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionBackfillRunner implements ApplicationRunner, ExitCodeGenerator {
+
+    public static final String PROFILE = "backfill";
+
+    private final TransactionBackfillService transactionBackfillService;
+
+    private int exitCode;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<String> files = args.containsOption("backfill") ? args.getOptionValues("backfill") : List.of();
+        if (files.isEmpty()) {
+            log.error("No --backfill=<file> given");
+            exitCode = 2;
+            return;
+        }
+
+        for (String file : files) {
+            try {
+                transactionBackfillService.backfill(Path.of(file));
+            } catch (Exception e) {
+                // The checkpoint is kept, so rerunning the same command resumes this file
+                log.error("Backfill of {} failed", file, e);
+                exitCode = 1;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int getExitCode() {
+        return exitCode;
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.aibank.agentic_rag.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Owns the schema of the {@code transactions} table: range-partitioned by month on {@code timestamp},
+ * with composite indexes matching the {@code TransactionRepository} queries. Runs before JPA starts,
+ * so Hibernate's schema update finds the partitioned table instead of creating a plain one, converts
+ * an existing unpartitioned table, creates partitions ahead of time and detaches partitions past the
+ * retention period, which stay in the database as standalone tables for archiving.
+ * The primary key of a partitioned table must include the partition key, so it is {@code (id, timestamp)}
+ * and does not keep an ID from being stored twice with different timestamps. A trigger therefore claims
+ * every inserted ID in the unpartitioned {@code transaction_ids} table, whose primary key rejects duplicates.
+ */
+@Component
+@Slf4j
+public class TransactionPartitionManager {
+
+    private static final String TABLE_NAME = "transactions";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    // Serializes schema changes of nodes starting at the same time
+    private static final long SCHEMA_LOCK_KEY = 0x7472616E73L;
+
+    private static final String COLUMNS = "id, accountId, customerId, amount, currency, type, "
+            + "merchantName, merchantCategory, description, location, timestamp, ipAddress, deviceId, "
+            + "flaggedForReview, fraudScore, fraudReason";
+
+    // Mirrors the Transaction entity mapping. Columns are named after the entity fields and left unquoted,
+    // so Postgres folds them to the lower-case names Hibernate uses. The primary key must include the partition key
+    private static final String CREATE_TABLE = """
+            CREATE TABLE transactions (
+                id VARCHAR(255) NOT NULL,
+                accountId VARCHAR(255) NOT NULL,
+                customerId VARCHAR(255) NOT NULL,
+                amount NUMERIC(38, 2) NOT NULL,
+                currency VARCHAR(255) NOT NULL,
+                type VARCHAR(255) NOT NULL,
+                merchantName VARCHAR(255),
+                merchantCategory VARCHAR(255),
+                description VARCHAR(255),
+                location VARCHAR(255),
+                timestamp TIMESTAMP(6) NOT NULL,
+                ipAddress VARCHAR(255),
+                deviceId VARCHAR(255),
+                flaggedForReview BOOLEAN NOT NULL,
+                fraudScore FLOAT(53),
+                fraudReason VARCHAR(255),
+                PRIMARY KEY (id, timestamp)
+            ) PARTITION BY RANGE (timestamp)
+            """;
+
+    private static final List<String> ID_UNIQUENESS = List.of(
+            "CREATE TABLE IF NOT EXISTS transaction_ids (id VARCHAR(255) PRIMARY KEY)",
+            """
+            CREATE OR REPLACE FUNCTION transactions_claim_id() RETURNS trigger AS $$
+            BEGIN
+                INSERT INTO transaction_ids (id) VALUES (NEW.id);
+                RETURN NULL;
+            END
+            $$ LANGUAGE plpgsql
+            """,
+            "DROP TRIGGER IF EXISTS transactions_unique_id ON transactions",
+            "CREATE TRIGGER transactions_unique_id AFTER INSERT ON transactions "
+                    + "FOR EACH ROW EXECUTE FUNCTION transactions_claim_id()");
+
+    private static final List<String> INDEXES = List.of(
+            // findByCustomerId, findByCustomerIdAndTimestampBetween, findLargeTransactionsByCustomer
+            "CREATE INDEX IF NOT EXISTS idx_transactions_customer_timestamp ON transactions (customerId, timestamp DESC)",
+            // findPotentialFraudulentTransactions
+            "CREATE INDEX IF NOT EXISTS idx_transactions_customer_fraud_score ON transactions (customerId, fraudScore)",
+            // findByAccountId
+            "CREATE INDEX IF NOT EXISTS idx_transactions_account_timestamp ON transactions (accountId, timestamp DESC)",
+            // findByMerchantCategory
+            "CREATE INDEX IF NOT EXISTS idx_transactions_merchant_category ON transactions (merchantCategory)",
+            // findRecentTransactionsByIpAddress
+            "CREATE INDEX IF NOT EXISTS idx_transactions_ip_timestamp ON transactions (ipAddress, timestamp)",
+            // findRecentTransactionsByDeviceId
+            "CREATE INDEX IF NOT EXISTS idx_transactions_device_timestamp ON transactions (deviceId, timestamp)",
+            // streamByTimestampAfter, within the partitions left after pruning
+            "CREATE INDEX IF NOT EXISTS idx_transactions_timestamp ON transactions (timestamp)",
+            // Keyset-paginated review queue: only flagged rows, in queue order
+            "CREATE INDEX IF NOT EXISTS idx_transactions_flagged_queue ON transactions "
+                    + "(fraudScore DESC, timestamp DESC, id DESC) WHERE flaggedForReview");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionMonths;
+    private final int premadeMonths;
+
+    public TransactionPartitionManager(DataSource dataSource,
+                                       @Value("${aibank.transactions.retention-months:24}") int retentionMonths,
+                                       @Value("${aibank.transactions.premade-partitions:3}") int premadeMonths) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // JPA is not up yet, so schema changes use a plain JDBC transaction manager
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.retentionMonths = retentionMonths;
+        this.premadeMonths = premadeMonths;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Held until commit; a node waiting here sees the schema the first one created
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + SCHEMA_LOCK_KEY + ")");
+            String kind = tableKind(TABLE_NAME);
+            if (kind == null) {
+                jdbcTemplate.execute(CREATE_TABLE);
+                log.info("Created partitioned transactions table");
+            } else if ("r".equals(kind)) {
+                convertUnpartitionedTable();
+            }
+            boolean claimExistingIds = tableKind("transaction_ids") == null;
+            ID_UNIQUENESS.forEach(jdbcTemplate::execute);
+            if (claimExistingIds) {
+                int ids = jdbcTemplate.update("INSERT INTO transaction_ids (id) SELECT DISTINCT id FROM transactions");
+                log.info("Claimed {} existing transaction IDs", ids);
+            }
+            INDEXES.forEach(jdbcTemplate::execute);
+        });
+        maintainPartitions();
+    }
+
+    /**
+     * Create the partitions for the coming months and detach those past the retention period
+     */
+    @Scheduled(cron = "0 0 1 * * ?") // Run at 1 AM every day
+    public void maintainPartitions() {
+        YearMonth current = YearMonth.now();
+        ensurePartitions(current, current.plusMonths(premadeMonths));
+        detachExpiredPartitions();
+    }
+
+    /**
+     * Create the monthly partitions covering a time range if they do not exist
+     *
+     * @param from The earliest timestamp to cover
+     * @param to The latest timestamp to cover
+     */
+    public void ensurePartitions(LocalDateTime from, LocalDateTime to) {
+        ensurePartitions(YearMonth.from(from), YearMonth.from(to));
+    }
+
+    /**
+     * Check whether a transaction falls in a partition that is kept attached
+     *
+     * @param timestamp The transaction timestamp
+     * @return False if the transaction is older than the retention period
+     */
+    public boolean isRetained(LocalDateTime timestamp) {
+        return !YearMonth.from(timestamp).isBefore(oldestRetainedMonth());
+    }
+
+    private void ensurePartitions(YearMonth from, YearMonth to) {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month)
+                    + " PARTITION OF " + TABLE_NAME
+                    + " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        }
+    }
+
+    private void detachExpiredPartitions() {
+        YearMonth oldestRetained = oldestRetainedMonth();
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'transactions'::regclass ORDER BY c.relname
+                """, String.class);
+        for (String partition : partitions) {
+            YearMonth month;
+            try {
+                month = YearMonth.parse(partition.substring(TABLE_NAME.length() + 1), PARTITION_SUFFIX);
+            } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+                log.warn("Skipping transactions partition {} not named by month", partition);
+                continue;
+            }
+            if (month.isBefore(oldestRetained)) {
+                // CONCURRENTLY only takes a share lock on the parent, so queries and inserts continue
+                jdbcTemplate.execute("ALTER TABLE " + TABLE_NAME + " DETACH PARTITION " + partition + " CONCURRENTLY");
+                // Archived rows can no longer be inserted again, so their IDs need not stay claimed
+                jdbcTemplate.update("DELETE FROM transaction_ids i USING " + partition + " p WHERE i.id = p.id");
+                log.info("Detached transactions partition {} past the {} month retention period", partition, retentionMonths);
+            }
+        }
+    }
+
+    /**
+     * Move the rows of a table created by an earlier schema into the partitioned table
+     */
+    private void convertUnpartitionedTable() {
+        log.info("Converting the transactions table to monthly partitions");
+        jdbcTemplate.execute("ALTER TABLE transactions RENAME TO transactions_unpartitioned");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS transactions_pkey RENAME TO transactions_unpartitioned_pkey");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS idx_transactions_flagged_queue");
+        jdbcTemplate.execute(CREATE_TABLE);
+
+        LocalDateTime oldest = jdbcTemplate.queryForObject(
+                "SELECT min(timestamp) FROM transactions_unpartitioned", LocalDateTime.class);
+        LocalDateTime newest = jdbcTemplate.queryForObject(
+                "SELECT max(timestamp) FROM transactions_unpartitioned", LocalDateTime.class);
+        if (oldest != null) {
+            ensurePartitions(oldest, newest);
+        }
+        int rows = jdbcTemplate.update("INSERT INTO transactions (" + COLUMNS + ") SELECT " + COLUMNS
+                + " FROM transactions_unpartitioned");
+        jdbcTemplate.execute("DROP TABLE transactions_unpartitioned");
+        log.info("Moved {} transactions into the partitioned table", rows);
+    }
+
+    private String tableKind(String tableName) {
+        List<String> kinds = jdbcTemplate.queryForList(
+                "SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace "
+                        + "WHERE n.nspname = current_schema() AND c.relname = ?",
+                String.class, tableName);
+        return kinds.isEmpty() ? null : kinds.get(0);
+    }
+
+    private YearMonth oldestRetainedMonth() {
+        return YearMonth.now().minusMonths(retentionMonths);
+    }
+
+    private static String partitionName(YearMonth month) {
+        return TABLE_NAME + "_" + month.format(PARTITION_SUFFIX);
+    }
+
+    /**
+     * Makes the JPA entity manager factory, and with it Hibernate's schema update, wait for this manager
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnTransactionPartitions extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnTransactionPartitions() {
+            super(TransactionPartitionManager.class);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.aibank.agentic_rag.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Creates the transaction vector indexes that the pgvector store does not.
+ * The transactions table and its indexes are managed by {@link TransactionPartitionManager}.
+ */
+@Configuration
+@RequiredArgsConstructor
+@Slf4j
+public class TransactionSchemaConfig {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        // Serves the jsonpath metadata filter of customer-scoped similarity searches, so Postgres can
+        // read one customer's vectors instead of filtering the results of a table-wide HNSW scan
+        jdbcTemplate.execute("""
+                CREATE INDEX IF NOT EXISTS idx_transaction_vectors_metadata
+                ON transaction_vectors USING gin ((metadata::jsonb) jsonb_path_ops)
+                """);
+        log.info("Transaction vector indexes verified");
+    }
+}
@@ -1,40 +1,189 @@
 package com.example.aibank.agentic_rag.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import javax.sql.DataSource;
+
 @Configuration
 public class VectorStoreConfig {
 
+    // Documents per vector store write, also used as the bulk backfill batch size
+    public static final int MAX_DOCUMENT_BATCH_SIZE = 10000;
+
+    public static final int DIMENSIONS = 1536;
+
+    public static final String FINANCIAL_KNOWLEDGE_TABLE = "financial_knowledge_vectors";
+
+    @Value("${aibank.vector-hot-tier.enabled:true}")
+    private boolean hotTierEnabled;
+
+    @Value("${aibank.vector-hot-tier.m:16}")
+    private int hotTierM;
+
+    @Value("${aibank.vector-hot-tier.ef-construction:200}")
+    private int hotTierEfConstruction;
+
+    @Value("${aibank.vector-hot-tier.ef-search:100}")
+    private int hotTierEfSearch;
+
+    @Value("${aibank.vector-hot-tier.max-visits:20000}")
+    private int hotTierMaxVisits;
+
+    // 0 sizes the hot tier from the heap
+    @Value("${aibank.vector-hot-tier.max-entries:0}")
+    private int hotTierMaxEntries;
+
+    @Value("${aibank.vector-hot-tier.max-heap-fraction:0.4}")
+    private double hotTierMaxHeapFraction;
+
+    @Value("${aibank.vector-quantization.mode:NONE}")
+    private QuantizedVectorSearch.Mode quantizationMode;
+
+    @Value("${aibank.vector-quantization.oversample:4}")
+    private int quantizationOversample;
+
+    @Value("${aibank.knowledge.retrieval.top-k:4}")
+    private int knowledgeTopK;
+
+    @Value("${aibank.knowledge.retrieval.candidates:20}")
+    private int knowledgeCandidates;
+
+    @Value("${aibank.knowledge.retrieval.similarity-threshold:0.7}")
+    private double knowledgeSimilarityThreshold;
+
+    @Value("${aibank.knowledge.retrieval.min-lexical-rank:0.1}")
+    private double knowledgeMinLexicalRank;
+
+    @Value("${aibank.knowledge.retrieval.rrf-k:60}")
+    private int knowledgeRrfK;
+
+    @Value("${aibank.knowledge.retrieval.rerank-weight:0.3}")
+    private double knowledgeRerankWeight;
+
     @Bean
-    public VectorStore transactionVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel) {
-        return PgVectorStore.builder(jdbcTemplate, embeddingModel)
-                .dimensions(1536)
-                .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
-                .indexType(PgVectorStore.PgIndexType.HNSW)
-                .initializeSchema(true)
-                .schemaName("public")
-                .vectorTableName("transaction_vectors")
-                .maxDocumentBatchSize(10000)
-                .removeExistingVectorStoreTable(false)
-                .build();
+    public VectorStore transactionVectorStore(JdbcTemplate jdbcTemplate,
+                                              EmbeddingModel embeddingModel,
+                                              DataSource dataSource,
+                                              ObjectMapper objectMapper,
+                                              StringRedisTemplate stringRedisTemplate,
+                                              RedisMessageListenerContainer redisMessageListenerContainer,
+                                              MeterRegistry meterRegistry) throws Exception {
+        VectorStore vectorStore = createVectorStore(jdbcTemplate, embeddingModel, objectMapper, "transaction_vectors");
+        if (!hotTierEnabled) {
+            return vectorStore;
+        }
+
+        if (vectorStore instanceof PgVectorStore pgVectorStore) {
+            // The wrapped store is not a bean, so its schema has to be initialized here
+            pgVectorStore.afterPropertiesSet();
+        }
+        return new HotTierVectorStore(
+                vectorStore,
+                embeddingModel,
+                dataSource,
+                "transaction_vectors",
+                objectMapper,
+                stringRedisTemplate,
+                redisMessageListenerContainer,
+                meterRegistry,
+                hotTierM,
+                hotTierEfConstruction,
+                hotTierEfSearch,
+                hotTierMaxVisits,
+                hotTierMaxEntries(),
+                // Set by TransactionDocument on every transaction
+                "customerId");
+    }
+
+    @Bean
+    public VectorStore financialKnowledgeVectorStore(JdbcTemplate jdbcTemplate,
+                                                     EmbeddingModel embeddingModel,
+                                                     ObjectMapper objectMapper,
+                                                     StringRedisTemplate stringRedisTemplate) throws Exception {
+        VectorStore vectorStore = createVectorStore(jdbcTemplate, embeddingModel, objectMapper, FINANCIAL_KNOWLEDGE_TABLE);
+        if (vectorStore instanceof PgVectorStore pgVectorStore) {
+            // The wrapped store is not a bean, so its schema has to be initialized here
+            pgVectorStore.afterPropertiesSet();
+        }
+        // Cached financial advice is derived from this table
+        return new ChangeAnnouncingVectorStore(vectorStore, stringRedisTemplate, FINANCIAL_KNOWLEDGE_TABLE);
     }
 
     @Bean
-    public VectorStore financialKnowledgeVectorStore(JdbcTemplate jdbcTemplate, EmbeddingModel embeddingModel) {
-        return PgVectorStore.builder(jdbcTemplate, embeddingModel)
-                .dimensions(1536)
+    public FullTextSearch financialKnowledgeFullTextSearch(JdbcTemplate jdbcTemplate,
+                                                           ObjectMapper objectMapper,
+                                                           VectorStore financialKnowledgeVectorStore) {
+        // Depends on the knowledge vector store, which creates the table indexed here
+        FullTextSearch fullTextSearch = new FullTextSearch(jdbcTemplate, objectMapper, FINANCIAL_KNOWLEDGE_TABLE, "english",
+                knowledgeMinLexicalRank);
+        fullTextSearch.createIndex();
+        return fullTextSearch;
+    }
+
+    @Bean
+    public HybridDocumentRetriever financialKnowledgeRetriever(VectorStore financialKnowledgeVectorStore,
+                                                               FullTextSearch financialKnowledgeFullTextSearch) {
+        return new HybridDocumentRetriever(
+                financialKnowledgeVectorStore,
+                financialKnowledgeFullTextSearch,
+                knowledgeTopK,
+                knowledgeCandidates,
+                knowledgeSimilarityThreshold,
+                knowledgeRrfK,
+                knowledgeRerankWeight);
+    }
+
+    /**
+     * The configured hot tier limit, or as many documents as fit the configured fraction of the maximum heap
+     */
+    private int hotTierMaxEntries() {
+        if (hotTierMaxEntries > 0) {
+            return hotTierMaxEntries;
+        }
+        long budget = (long) (Runtime.getRuntime().maxMemory() * hotTierMaxHeapFraction);
+        return (int) Math.min(Integer.MAX_VALUE, budget / HotTierVectorStore.ESTIMATED_ENTRY_BYTES);
+    }
+
+    /**
+     * Create a pgvector store, searched through a quantized index when quantization is enabled
+     */
+    private VectorStore createVectorStore(JdbcTemplate jdbcTemplate,
+                                          EmbeddingModel embeddingModel,
+                                          ObjectMapper objectMapper,
+                                          String tableName) throws Exception {
+        boolean quantized = quantizationMode == QuantizedVectorSearch.Mode.HALFVEC
+                || quantizationMode == QuantizedVectorSearch.Mode.BINARY;
+        PgVectorStore pgVectorStore = PgVectorStore.builder(jdbcTemplate, embeddingModel)
+                .dimensions(DIMENSIONS)
                 .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
-                .indexType(PgVectorStore.PgIndexType.HNSW)
+                // With quantization the float32 vectors are only read to re-rank, so skip their HNSW index
+                .indexType(quantized ? PgVectorStore.PgIndexType.NONE : PgVectorStore.PgIndexType.HNSW)
                 .initializeSchema(true)
                 .schemaName("public")
-                .vectorTableName("financial_knowledge_vectors")
-                .maxDocumentBatchSize(10000)
+                .vectorTableName(tableName)
+                .maxDocumentBatchSize(MAX_DOCUMENT_BATCH_SIZE)
                 .removeExistingVectorStoreTable(false)
                 .build();
+        if (!quantized) {
+            return pgVectorStore;
+        }
+
+        pgVectorStore.afterPropertiesSet();
+        return new QuantizedVectorStore(
+                pgVectorStore,
+                embeddingModel,
+                new QuantizedVectorSearch(jdbcTemplate, objectMapper, tableName, DIMENSIONS),
+                quantizationMode,
+                quantizationOversample);
     }
 }
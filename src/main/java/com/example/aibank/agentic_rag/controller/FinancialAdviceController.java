@@ -5,9 +5,13 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 
+import java.util.Locale;
 import java.util.Map;
 
 @RestController
@@ -40,6 +44,35 @@ public class FinancialAdviceController {
         FinancialAdviceResponse response = new FinancialAdviceResponse(advice);
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Stream personalized financial advice as server-sent events while it is generated.
+     * Events are {@code token} (a chunk of advice), then {@code done}; or {@code fallback} with generic
+     * advice replacing any tokens received, if generation fails. The data of every event is a JSON object
+     * {@code {"text": "..."}}, empty for {@code done}: tokens carry their own leading spaces and line
+     * breaks, which plain event data would lose, so clients concatenate the texts as they are.
+     *
+     * @param customerId The customer's ID
+     * @param request Request containing the query and customer profile data
+     * @return The advice events
+     */
+    @PostMapping(value = "/{customerId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Map<String, String>>>> streamFinancialAdvice(
+            @PathVariable String customerId,
+            @RequestBody FinancialAdviceRequest request) {
+
+        Flux<ServerSentEvent<Map<String, String>>> events = financialAdviceService.streamFinancialAdvice(
+                        request.getQuery(),
+                        customerId,
+                        request.getCustomerProfile())
+                .map(event -> ServerSentEvent.builder(Map.of("text", event.getText()))
+                        .event(event.getType().name().toLowerCase(Locale.ROOT))
+                        .build());
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.TEXT_EVENT_STREAM)
+                .body(events);
+    }
     
     /**
      * Request object for financial advice
@@ -1,13 +1,34 @@
 package com.example.aibank.agentic_rag.controller;
 
+import com.example.aibank.agentic_rag.model.FlaggedTransactionsPage;
+import com.example.aibank.agentic_rag.model.FraudJob;
+import com.example.aibank.agentic_rag.model.FraudModel;
 import com.example.aibank.agentic_rag.model.Transaction;
 import com.example.aibank.agentic_rag.service.FraudDetectionService;
+import com.example.aibank.agentic_rag.service.FraudIdempotencyService;
+import com.example.aibank.agentic_rag.service.FraudJobService;
+import com.example.aibank.agentic_rag.service.FraudModelService;
+import com.example.aibank.agentic_rag.service.FraudModelTrainer;
+import com.example.aibank.agentic_rag.service.FraudRingGraph;
+import com.example.aibank.agentic_rag.service.FraudRingService;
+import com.example.aibank.agentic_rag.service.TransactionJournalService;
+import com.example.aibank.agentic_rag.service.TransactionVectorIndexer;
+import com.example.aibank.agentic_rag.service.VectorSearchBenchmarkService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/fraud")
@@ -16,18 +37,108 @@ import java.util.List;
 public class FraudDetectionController {
 
     private final FraudDetectionService fraudDetectionService;
+    private final FraudIdempotencyService fraudIdempotencyService;
+    private final FraudJobService fraudJobService;
+    private final FraudModelService fraudModelService;
+    private final FraudModelTrainer fraudModelTrainer;
+    private final FraudRingService fraudRingService;
+    private final TransactionJournalService transactionJournalService;
+    private final TransactionVectorIndexer transactionVectorIndexer;
+    private final VectorSearchBenchmarkService vectorSearchBenchmarkService;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${aibank.fraud.batch.max-size:500}")
+    private int maxBatchSize;
 
     /**
      * Process a transaction and detect potential fraud
      *
      * @param transaction The transaction to process
-     * @return The processed transaction with fraud score
+     * @param idempotencyKey Optional key identifying retries of the same request (defaults to the transaction ID)
+     * @return The processed transaction with fraud score, 409 if the key was used for a different request,
+     *         or 503 if a request with the same key is still in flight.
+     *         With the transaction journal enabled, 202 with the unscored transaction and its journal offset
+     *         once it is on disk, or 503 if it could not be journaled
      */
     @PostMapping("/process")
-    public ResponseEntity<Transaction> processTransaction(@RequestBody Transaction transaction) {
+    public ResponseEntity<Transaction> processTransaction(
+            @RequestBody Transaction transaction,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("Received transaction for processing: {}", transaction.getId());
-        Transaction processedTransaction = fraudDetectionService.processTransaction(transaction);
-        return ResponseEntity.ok(processedTransaction);
+        if (transactionJournalService.isEnabled()) {
+            try {
+                long offset = transactionJournalService.append(transaction, idempotencyKey);
+                return ResponseEntity.accepted()
+                        .header("Journal-Offset", Long.toString(offset))
+                        .body(transaction);
+            } catch (RuntimeException e) {
+                log.error("Failed to journal transaction {}", transaction.getId(), e);
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+            }
+        }
+        try {
+            Transaction processedTransaction = fraudIdempotencyService.process(idempotencyKey, transaction);
+            return ResponseEntity.ok(processedTransaction);
+        } catch (FraudIdempotencyService.IdempotencyConflictException e) {
+            log.warn("Idempotency conflict for transaction {}: {}", transaction.getId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (FraudIdempotencyService.IdempotencyUnavailableException e) {
+            log.warn("Idempotency key busy for transaction {}: {}", transaction.getId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+        }
+    }
+
+    /**
+     * Submit a transaction for fraud processing without waiting for the result
+     *
+     * @param transaction The transaction to process
+     * @param idempotencyKey Optional key identifying retries of the same request (defaults to the transaction ID)
+     * @return 202 with the queued job and its status URL, or 503 if too many checks are pending
+     */
+    @PostMapping("/process-async")
+    public ResponseEntity<FraudJob> processTransactionAsync(
+            @RequestBody Transaction transaction,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        log.info("Received transaction for asynchronous processing: {}", transaction.getId());
+        try {
+            FraudJob job = fraudJobService.submit(transaction, idempotencyKey);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/fraud/jobs/" + job.getJobId()))
+                    .body(job);
+        } catch (RejectedExecutionException e) {
+            log.warn("Rejected asynchronous transaction {}: {}", transaction.getId(), e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+        }
+    }
+
+    /**
+     * Get the status of an asynchronous fraud check
+     *
+     * @param jobId The job ID returned by the asynchronous endpoint
+     * @return The job with the processed transaction once completed, or 404 if unknown or expired
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<FraudJob> getJob(@PathVariable String jobId) {
+        return fraudJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Process a batch of transactions and detect potential fraud
+     *
+     * @param transactions The transactions to process
+     * @return The processed transactions with fraud scores, or 400 if the batch is empty or too large
+     */
+    @PostMapping("/process-batch")
+    public ResponseEntity<List<Transaction>> processTransactions(@RequestBody List<Transaction> transactions) {
+        log.info("Received batch of {} transactions for processing", transactions.size());
+        if (transactions.isEmpty() || transactions.size() > maxBatchSize) {
+            log.warn("Rejected transaction batch of size {} (max {})", transactions.size(), maxBatchSize);
+            return ResponseEntity.badRequest().build();
+        }
+        List<Transaction> processedTransactions = fraudDetectionService.processTransactions(transactions);
+        return ResponseEntity.ok(processedTransactions);
     }
 
     /**
@@ -47,14 +158,158 @@ public class FraudDetectionController {
     }
 
     /**
-     * Get transactions flagged for review
+     * Get a page of transactions flagged for review, highest fraud score first
      *
-     * @return List of flagged transactions
+     * @param cursor Cursor returned with the previous page (omit for the first page)
+     * @param limit Maximum number of transactions to return (default 100)
+     * @return Page of flagged transactions with the cursor for the next page, or 400 for an invalid cursor
      */
     @GetMapping("/flagged")
-    public ResponseEntity<List<Transaction>> getFlaggedTransactions() {
+    public ResponseEntity<FlaggedTransactionsPage> getFlaggedTransactions(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "100") int limit) {
         log.info("Retrieving flagged transactions");
-        List<Transaction> flaggedTransactions = fraudDetectionService.getFlaggedTransactions();
-        return ResponseEntity.ok(flaggedTransactions);
+        if (limit < 1 || limit > 1000) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            FlaggedTransactionsPage page = fraudDetectionService.getFlaggedTransactions(cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid flagged transactions cursor: {}", cursor);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Stream all transactions flagged for review as newline-delimited JSON
+     *
+     * @return Flagged transactions, one JSON object per line, highest fraud score first
+     */
+    @GetMapping(value = "/flagged/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamFlaggedTransactions() {
+        log.info("Streaming flagged transactions");
+        StreamingResponseBody body = outputStream -> fraudDetectionService.forEachFlaggedTransaction(transaction -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(transaction));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Count transactions that could not be written to the vector store after all retries
+     *
+     * @return The number of dead-lettered vector index entries
+     */
+    @GetMapping("/vector-index/dead-letters")
+    public ResponseEntity<Long> countDeadLetters() {
+        log.info("Counting dead-lettered vector index entries");
+        return ResponseEntity.ok(transactionVectorIndexer.countDeadLetters());
+    }
+
+    /**
+     * Requeue dead-lettered transactions for vector indexing
+     *
+     * @return The number of entries requeued
+     */
+    @PostMapping("/vector-index/dead-letters/requeue")
+    public ResponseEntity<Integer> requeueDeadLetters() {
+        log.info("Requeuing dead-lettered vector index entries");
+        return ResponseEntity.ok(transactionVectorIndexer.requeueDeadLetters());
+    }
+
+    /**
+     * Compare recall and latency of the full-precision and quantized vector indexes
+     *
+     * @param queries The number of sampled transactions to use as queries (1 to 1000)
+     * @param topK The number of neighbours retrieved per query (1 to 100)
+     * @param oversample Candidates fetched per returned document in the quantized modes (1 to 100)
+     * @return Recall and latency per search mode, with modes lacking an index marked skipped, and index sizes,
+     *         or 400 if a parameter is out of range
+     */
+    @PostMapping("/vector-index/benchmark")
+    public ResponseEntity<VectorSearchBenchmarkService.BenchmarkReport> benchmarkVectorIndex(
+            @RequestParam(defaultValue = "100") int queries,
+            @RequestParam(defaultValue = "10") int topK,
+            @RequestParam(defaultValue = "4") int oversample) {
+        log.info("Benchmarking vector index with {} queries", queries);
+        if (queries < 1 || queries > 1000 || topK < 1 || topK > 100 || oversample < 1 || oversample > 100) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(vectorSearchBenchmarkService.run(queries, topK, oversample));
+    }
+
+    /**
+     * Get the transaction journal's end offset and the scoring consumer's position and lag
+     *
+     * @return The journal status
+     */
+    @GetMapping("/journal")
+    public ResponseEntity<TransactionJournalService.JournalStatus> getJournalStatus() {
+        return ResponseEntity.ok(transactionJournalService.getStatus());
+    }
+
+    /**
+     * Get the distilled fraud model in service and its agreement report
+     *
+     * @return The model, or 404 if no model is in service
+     */
+    @GetMapping("/model")
+    public ResponseEntity<FraudModel> getModel() {
+        FraudModel model = fraudModelService.getModel();
+        return model != null ? ResponseEntity.ok(model) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Train a new fraud model version from the AI model verdicts in the transactions table
+     *
+     * @return The trained model and its agreement report, which says whether it was put into service
+     */
+    @PostMapping("/model/train")
+    public ResponseEntity<FraudModel> trainModel() {
+        log.info("Training fraud model");
+        try {
+            return ResponseEntity.ok(fraudModelTrainer.train());
+        } catch (IllegalStateException e) {
+            log.warn("Fraud model not trained: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    /**
+     * Get the ring of customers linked to a customer through shared devices, IP addresses and merchants
+     *
+     * @param customerId The customer ID
+     * @param limit Maximum number of customers and identifiers to list (default 100)
+     * @return The ring size, risk and members, or 404 if the customer has no recent transactions
+     */
+    @GetMapping("/rings/{customerId}")
+    public ResponseEntity<FraudRingGraph.Ring> getRing(
+            @PathVariable String customerId,
+            @RequestParam(defaultValue = "100") int limit) {
+        FraudRingGraph.Ring ring = fraudRingService.getRing(customerId, limit);
+        return ring != null ? ResponseEntity.ok(ring) : ResponseEntity.notFound().build();
+    }
+
+    /**
+     * Get the riskiest rings of linked customers
+     *
+     * @param minSize Minimum number of customers in a ring (default 3)
+     * @param count Maximum number of rings to return (default 20)
+     * @param limit Maximum number of customers and identifiers to list per ring (default 20)
+     * @return The rings, riskiest first
+     */
+    @GetMapping("/rings")
+    public ResponseEntity<List<FraudRingGraph.Ring>> getRings(
+            @RequestParam(defaultValue = "3") int minSize,
+            @RequestParam(defaultValue = "20") int count,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(fraudRingService.getRings(minSize, count, limit));
     }
 }
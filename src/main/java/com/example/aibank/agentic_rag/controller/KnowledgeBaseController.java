@@ -0,0 +1,44 @@
+package com.example.aibank.agentic_rag.controller;
+
+import com.example.aibank.agentic_rag.model.KnowledgeDocument;
+import com.example.aibank.agentic_rag.service.KnowledgeIngestionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/knowledge")
+@RequiredArgsConstructor
+@Slf4j
+public class KnowledgeBaseController {
+
+    private final KnowledgeIngestionService knowledgeIngestionService;
+
+    /**
+     * Ingest published documents into the financial knowledge base, embedding only changed chunks
+     *
+     * @param documents The documents, each with a distinct source ID
+     * @param prune True if the documents are the complete publication, deleting all other sources
+     * @return Counts of the chunks embedded, kept and deleted, 400 if the documents are invalid or empty
+     *         when pruning, or 409 if pruning would delete too much of the knowledge base
+     */
+    @PostMapping("/documents")
+    public ResponseEntity<KnowledgeIngestionService.IngestionResult> ingestDocuments(
+            @RequestBody List<KnowledgeDocument> documents,
+            @RequestParam(defaultValue = "false") boolean prune) {
+        log.info("Ingesting {} knowledge documents (prune: {})", documents.size(), prune);
+        try {
+            return ResponseEntity.ok(knowledgeIngestionService.ingest(documents, prune));
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected knowledge documents: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (KnowledgeIngestionService.PruneRefusedException e) {
+            log.warn("Refused knowledge base prune: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of the flagged-transaction review queue, ordered by fraud score and timestamp descending
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FlaggedTransactionsPage {
+    
+    private List<Transaction> transactions;
+    
+    // Opaque keyset cursor for the next page, null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,49 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Snapshot of a customer's transaction history used to score a new transaction
+ * before it is sent to the AI model
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudFeatures {
+
+    // Number of transactions in the history window
+    private long historyCount;
+
+    private double meanAmount;
+
+    private double stdDevAmount;
+
+    // Number of transactions in the last hour
+    private long transactionsLastHour;
+
+    private boolean knownDevice;
+
+    private boolean knownIpAddress;
+
+    private boolean knownMerchant;
+
+    private int distinctDevices;
+
+    private int distinctMerchants;
+
+    // Transactions in the last hour from the same IP address, device and account, across all customers
+    private long ipTransactionsLastHour;
+
+    private long deviceTransactionsLastHour;
+
+    private long accountTransactionsLastHour;
+
+    // Customers linked to this one through shared devices, IP addresses and merchants, itself included
+    private int ringSize;
+
+    private double ringRisk;
+}
@@ -0,0 +1,41 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Status resource of a transaction submitted for asynchronous fraud processing
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudJob {
+
+    private String jobId;
+
+    private String transactionId;
+
+    private Status status;
+
+    // The processed transaction with its fraud score, set once the job has completed
+    private Transaction result;
+
+    // Failure message, set when the job has failed
+    private String error;
+
+    private LocalDateTime submittedAt;
+
+    private LocalDateTime completedAt;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+}
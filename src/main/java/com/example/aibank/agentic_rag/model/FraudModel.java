@@ -0,0 +1,40 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Logistic regression fraud model distilled from AI model verdicts, serialized as JSON.
+ * Features are standardized with the training means and scales before the weights are applied.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudModel {
+
+    // Training time as yyyyMMddHHmmss, also used in the file name
+    private String version;
+
+    private LocalDateTime trainedAt;
+
+    // Must match the features extracted at serving time, in order
+    private List<String> featureNames;
+
+    private double[] means;
+
+    private double[] scales;
+
+    private double[] weights;
+
+    private double bias;
+
+    private long trainingRows;
+
+    private FraudModelReport report;
+}
@@ -0,0 +1,45 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Agreement of a distilled fraud model with the AI model verdicts it was not trained on
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FraudModelReport {
+
+    // Most recent verdicts, held out from training
+    private long holdoutRows;
+
+    // Share of holdout rows where model and AI model agree on flagging at the fraud threshold
+    private double agreement;
+
+    private double meanAbsoluteError;
+
+    private long truePositives;
+
+    private long falsePositives;
+
+    private long trueNegatives;
+
+    private long falseNegatives;
+
+    // Share of holdout rows the model is confident enough to decide without the AI model
+    private double confidentCoverage;
+
+    // Agreement on the rows the model would decide
+    private double confidentAgreement;
+
+    private double lowConfidenceBound;
+
+    private double highConfidenceBound;
+
+    // Whether the model met the minimum confident agreement and was put into service
+    private boolean activated;
+}
@@ -0,0 +1,48 @@
+package com.example.aibank.agentic_rag.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Manifest entry for a chunk of a knowledge document stored in {@code financial_knowledge_vectors}.
+ * Compared with a fresh chunking of the document to find the chunks to embed and the stale ones to delete.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "knowledge_chunks", indexes = {
+        @Index(name = "idx_knowledge_chunks_source", columnList = "sourceId")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_knowledge_chunks_source_hash", columnNames = {"sourceId", "contentHash"})
+})
+public class KnowledgeChunk {
+
+    // ID of the chunk's document in the vector store, derived from the source and the content hash
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private String sourceId;
+
+    // SHA-256 of the chunk text
+    @Column(nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(length = 1000)
+    private String section;
+
+    @Column(nullable = false)
+    private LocalDateTime ingestedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        ingestedAt = LocalDateTime.now();
+    }
+}
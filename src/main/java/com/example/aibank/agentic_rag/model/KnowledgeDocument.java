@@ -0,0 +1,54 @@
+package com.example.aibank.agentic_rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Locale;
+
+/**
+ * A published product or policy document to load into the financial knowledge base
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KnowledgeDocument {
+
+    // Stable identifier of the document across publications, e.g. its path in the document repository
+    private String sourceId;
+
+    private String title;
+
+    private Format format;
+
+    private String content;
+
+    public enum Format {
+        MARKDOWN,
+        HTML,
+        // Plain text, including text extracted from PDFs
+        TEXT;
+
+        /**
+         * Format of a document file, by extension
+         *
+         * @param fileName The file name
+         * @return The format, or null if the file is not a supported document
+         */
+        public static Format fromFileName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".md") || name.endsWith(".markdown")) {
+                return MARKDOWN;
+            }
+            if (name.endsWith(".html") || name.endsWith(".htm")) {
+                return HTML;
+            }
+            if (name.endsWith(".txt")) {
+                return TEXT;
+            }
+            return null;
+        }
+    }
+}
@@ -14,7 +14,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions") // Partitioned by month on timestamp, see TransactionPartitionManager
 public class Transaction {
     
     @Id
@@ -84,4 +84,37 @@ public class TransactionDocument {
         
         return new Document(transaction.getId(), contentBuilder.toString(), metadata);
     }
+    
+    /**
+     * Build the similarity search text for a transaction.
+     * Uses the same wording as the stored document content, without the identifiers and date
+     * that would only add noise to the comparison. The customer is matched by the metadata filter
+     * of customer-scoped searches instead.
+     * 
+     * @param transaction The transaction to search for
+     * @return The query text for a vector search
+     */
+    public static String toQueryText(Transaction transaction) {
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("Amount: ").append(transaction.getAmount()).append(" ").append(transaction.getCurrency()).append(". ");
+        queryBuilder.append("Type: ").append(transaction.getType()).append(". ");
+        
+        if (transaction.getMerchantName() != null) {
+            queryBuilder.append("Merchant: ").append(transaction.getMerchantName()).append(". ");
+        }
+        
+        if (transaction.getMerchantCategory() != null) {
+            queryBuilder.append("Category: ").append(transaction.getMerchantCategory()).append(". ");
+        }
+        
+        if (transaction.getDescription() != null) {
+            queryBuilder.append("Description: ").append(transaction.getDescription()).append(". ");
+        }
+        
+        if (transaction.getLocation() != null) {
+            queryBuilder.append("Location: ").append(transaction.getLocation()).append(". ");
+        }
+        
+        return queryBuilder.toString().trim();
+    }
 }
@@ -0,0 +1,76 @@
+package com.example.aibank.agentic_rag.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox entry for a transaction waiting to be written to the transaction vector store.
+ * Written in the same database transaction as the transaction itself and drained by the vector indexer.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "vector_index_outbox", indexes = {
+        @Index(name = "idx_vector_index_outbox_ready", columnList = "status, nextAttemptAt")
+})
+public class VectorIndexOutbox {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private String id;
+    
+    @Column(nullable = false)
+    private String transactionId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+    
+    @Column(nullable = false)
+    private int attempts;
+    
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+    
+    @Column(length = 2000)
+    private String lastError;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        if (status == null) {
+            status = Status.PENDING;
+        }
+        if (nextAttemptAt == null) {
+            nextAttemptAt = createdAt;
+        }
+    }
+    
+    /**
+     * Create a pending outbox entry for a transaction
+     *
+     * @param transactionId The ID of the transaction to index
+     * @return A new outbox entry
+     */
+    public static VectorIndexOutbox pending(String transactionId) {
+        return VectorIndexOutbox.builder()
+                .transactionId(transactionId)
+                .status(Status.PENDING)
+                .build();
+    }
+    
+    public enum Status {
+        PENDING,
+        DEAD_LETTER
+    }
+}
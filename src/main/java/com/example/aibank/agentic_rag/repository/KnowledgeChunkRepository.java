@@ -0,0 +1,17 @@
+package com.example.aibank.agentic_rag.repository;
+
+import com.example.aibank.agentic_rag.model.KnowledgeChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface KnowledgeChunkRepository extends JpaRepository<KnowledgeChunk, String> {
+
+    List<KnowledgeChunk> findBySourceId(String sourceId);
+
+    @Query("SELECT DISTINCT c.sourceId FROM KnowledgeChunk c")
+    List<String> findSourceIds();
+}
@@ -1,13 +1,21 @@
 package com.example.aibank.agentic_rag.repository;
 
 import com.example.aibank.agentic_rag.model.Transaction;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, String> {
@@ -31,4 +39,28 @@ public interface TransactionRepository extends JpaRepository<Transaction, String
     
     @Query("SELECT t FROM Transaction t WHERE t.deviceId = ?1 AND t.timestamp > ?2")
     List<Transaction> findRecentTransactionsByDeviceId(String deviceId, LocalDateTime since);
+    
+    @Query("SELECT t FROM Transaction t WHERE t.flaggedForReview = true " +
+            "ORDER BY t.fraudScore DESC, t.timestamp DESC, t.id DESC")
+    List<Transaction> findFlaggedFirstPage(Limit limit);
+    
+    // Row-value comparison, so the position is a single range start on idx_transactions_flagged_queue
+    @Query(value = "SELECT * FROM transactions WHERE flaggedForReview " +
+            "AND (fraudScore, timestamp, id) < (:fraudScore, :timestamp, :id) " +
+            "ORDER BY fraudScore DESC, timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Transaction> findFlaggedAfter(Double fraudScore, LocalDateTime timestamp, String id, int limit);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT t FROM Transaction t WHERE t.timestamp > ?1")
+    Stream<Transaction> streamByTimestampAfter(LocalDateTime since);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT t FROM Transaction t WHERE t.timestamp > ?1 ORDER BY t.timestamp")
+    Stream<Transaction> streamByTimestampAfterOrderByTimestamp(LocalDateTime since);
+    
+    // Called after the scoring transaction has committed, so it must not join it
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query("UPDATE Transaction t SET t.fraudReason = ?2 WHERE t.id = ?1")
+    int updateFraudReason(String id, String fraudReason);
 }
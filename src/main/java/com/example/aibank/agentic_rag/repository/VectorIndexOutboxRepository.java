@@ -0,0 +1,39 @@
+package com.example.aibank.agentic_rag.repository;
+
+import com.example.aibank.agentic_rag.model.VectorIndexOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface VectorIndexOutboxRepository extends JpaRepository<VectorIndexOutbox, String> {
+    
+    // Claims ready pending entries for one node: rows being claimed by another node are skipped, and the
+    // claimed rows are leased by moving their next attempt to leaseUntil, so no node claims them again
+    // before they are indexed, rescheduled or the lease expires
+    @Transactional
+    @Query(value = """
+            UPDATE vector_index_outbox SET nextAttemptAt = :leaseUntil
+            WHERE id IN (SELECT id FROM vector_index_outbox
+                         WHERE status = 'PENDING' AND nextAttemptAt <= :now
+                         ORDER BY nextAttemptAt
+                         LIMIT :limit
+                         FOR UPDATE SKIP LOCKED)
+            RETURNING *""", nativeQuery = true)
+    List<VectorIndexOutbox> claimReady(LocalDateTime now, LocalDateTime leaseUntil, int limit);
+    
+    long countByStatus(VectorIndexOutbox.Status status);
+    
+    @Query("SELECT MIN(o.createdAt) FROM VectorIndexOutbox o WHERE o.status = ?1")
+    LocalDateTime findOldestCreatedAt(VectorIndexOutbox.Status status);
+    
+    @Modifying
+    @Transactional
+    @Query("UPDATE VectorIndexOutbox o SET o.status = ?2, o.attempts = 0, o.nextAttemptAt = ?3 WHERE o.status = ?1")
+    int updateStatus(VectorIndexOutbox.Status from, VectorIndexOutbox.Status to, LocalDateTime nextAttemptAt);
+}
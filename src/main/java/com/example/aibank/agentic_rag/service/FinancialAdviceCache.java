@@ -0,0 +1,341 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.config.ChangeAnnouncingVectorStore;
+import com.example.aibank.agentic_rag.config.VectorStoreConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Semantic cache of financial advice.
+ * Answers are generated from the customer's full profile, so they are only ever served back to the
+ * same customer: they are stored with the embedding of the question under the customer ID and a coarse
+ * profile bucket (risk tolerance and income band), and a later question in the same bucket whose
+ * embedding is similar enough is answered from the cache, skipping the query rewrite, the retrieval and
+ * the completion. A customer whose risk tolerance or income band changes starts a new bucket. Buckets
+ * are small and scanned exactly. Entries expire after a TTL and are all dropped when the financial
+ * knowledge base changes on any node; answers generated while a change is announced are not stored.
+ * The cache therefore only saves work when a customer rephrases or repeats a question within the TTL;
+ * it is never shared between customers and its hit rate is expected to stay low.
+ */
+@Component
+@Slf4j
+public class FinancialAdviceCache {
+
+    private static final TypeReference<Map<String, Object>> SECTION_TYPE = new TypeReference<>() {
+    };
+
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final Duration ttl;
+    private final int maxEntriesPerBucket;
+    private final double[] incomeBands;
+
+    private final ConcurrentHashMap<String, ArrayDeque<CachedAdvice>> buckets = new ConcurrentHashMap<>();
+    // Incremented whenever the knowledge base changes, so answers generated before the change are not stored
+    private final AtomicLong knowledgeVersion = new AtomicLong();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Timer savedTimer;
+
+    public FinancialAdviceCache(EmbeddingModel embeddingModel,
+                                ObjectMapper objectMapper,
+                                RedisMessageListenerContainer listenerContainer,
+                                MeterRegistry meterRegistry,
+                                @Value("${aibank.advice.cache.enabled:true}") boolean enabled,
+                                @Value("${aibank.advice.cache.similarity-threshold:0.95}") double similarityThreshold,
+                                @Value("${aibank.advice.cache.ttl:6h}") Duration ttl,
+                                @Value("${aibank.advice.cache.max-entries-per-bucket:50}") int maxEntriesPerBucket,
+                                @Value("${aibank.advice.cache.income-bands:30000,60000,100000,200000}") List<Double> incomeBands) {
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.ttl = ttl;
+        this.maxEntriesPerBucket = maxEntriesPerBucket;
+        this.incomeBands = incomeBands.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+
+        listenerContainer.addMessageListener((message, pattern) -> invalidate(),
+                new ChannelTopic(ChangeAnnouncingVectorStore.channel(VectorStoreConfig.FINANCIAL_KNOWLEDGE_TABLE)));
+
+        this.hitCounter = lookupCounter(meterRegistry, "hit");
+        this.missCounter = lookupCounter(meterRegistry, "miss");
+        this.savedTimer = Timer.builder("aibank.advice.cache.saved")
+                .description("Generation time of the cached answers served, i.e. the latency the cache saved")
+                .register(meterRegistry);
+        Gauge.builder("aibank.advice.cache.size", buckets, FinancialAdviceCache::countEntries)
+                .description("Financial advice answers held in the semantic cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Look up an answer to a similar question asked earlier by the same customer
+     *
+     * @param query The customer's question
+     * @param customerId The customer's ID
+     * @param customerProfile The customer's profile
+     * @return The cached answer, or a miss to pass to {@link #put} once the answer is generated
+     */
+    public Lookup lookup(String query, String customerId, Map<String, Object> customerProfile) {
+        if (!enabled) {
+            return new Lookup(null, null, null, 0);
+        }
+        String bucket = customerId + "|" + bucket(customerProfile);
+        long version = knowledgeVersion.get();
+        float[] embedding;
+        try {
+            embedding = normalize(embeddingModel.embed(query));
+        } catch (RuntimeException e) {
+            // Without an embedding there is nothing to compare; generate the answer as usual
+            log.warn("Financial advice cache lookup failed: {}", e.getMessage());
+            missCounter.increment();
+            return new Lookup(null, null, null, version);
+        }
+
+        ArrayDeque<CachedAdvice> entries = buckets.get(bucket);
+        CachedAdvice best = null;
+        if (entries != null) {
+            long now = System.nanoTime();
+            double bestSimilarity = similarityThreshold;
+            synchronized (entries) {
+                for (CachedAdvice entry : entries) {
+                    if (entry.expiresAtNanos - now <= 0) {
+                        continue;
+                    }
+                    double similarity = dot(embedding, entry.embedding);
+                    if (similarity >= bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = entry;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            missCounter.increment();
+            return new Lookup(null, bucket, embedding, version);
+        }
+        hitCounter.increment();
+        savedTimer.record(best.generationNanos, TimeUnit.NANOSECONDS);
+        return new Lookup(best.advice, bucket, embedding, version);
+    }
+
+    /**
+     * Store a generated answer for later similar questions
+     *
+     * @param miss The lookup that missed before the answer was generated
+     * @param advice The generated answer
+     * @param generationNanos How long the answer took to generate
+     */
+    public void put(Lookup miss, String advice, long generationNanos) {
+        if (miss.embedding == null || miss.isHit() || miss.version != knowledgeVersion.get()) {
+            return;
+        }
+        ArrayDeque<CachedAdvice> entries = buckets.computeIfAbsent(miss.bucket, key -> new ArrayDeque<>());
+        synchronized (entries) {
+            if (entries.size() >= maxEntriesPerBucket) {
+                entries.pollFirst();
+            }
+            entries.addLast(new CachedAdvice(miss.embedding, advice, generationNanos, System.nanoTime() + ttl.toNanos()));
+        }
+    }
+
+    /**
+     * Drop every cached answer, e.g. because the knowledge base they were generated from changed
+     */
+    public void invalidate() {
+        knowledgeVersion.incrementAndGet();
+        buckets.clear();
+        log.info("Financial advice cache invalidated after a knowledge base change");
+    }
+
+    /**
+     * Drop expired answers
+     */
+    @Scheduled(fixedRate = 60000) // Run every minute
+    public void evictExpired() {
+        long now = System.nanoTime();
+        for (ArrayDeque<CachedAdvice> entries : buckets.values()) {
+            synchronized (entries) {
+                // Entries are in insertion order and share one TTL
+                Iterator<CachedAdvice> iterator = entries.iterator();
+                while (iterator.hasNext() && iterator.next().expiresAtNanos - now <= 0) {
+                    iterator.remove();
+                }
+            }
+        }
+        buckets.values().removeIf(ArrayDeque::isEmpty);
+    }
+
+    /**
+     * Coarse profile bucket. Risk tolerance is kept in the profile's {@code preferences} and income in its
+     * {@code financialData}, each either an object or the JSON text stored in the profile's jsonb column;
+     * top-level fields are read for profiles sent flat
+     */
+    private String bucket(Map<String, Object> customerProfile) {
+        Map<String, Object> preferences = section(customerProfile, "preferences");
+        Map<String, Object> financialData = section(customerProfile, "financialData");
+        Object riskTolerance = firstPresent("riskTolerance", preferences, financialData, customerProfile);
+        Object income = firstPresent("annualIncome", financialData, customerProfile);
+        if (income == null) {
+            income = firstPresent("income", financialData, customerProfile);
+        }
+        String risk = riskTolerance != null ? riskTolerance.toString().trim().toUpperCase(Locale.ROOT) : "UNKNOWN";
+        return risk + "|" + incomeBand(income);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> section(Map<String, Object> customerProfile, String name) {
+        Object value = customerProfile != null ? customerProfile.get(name) : null;
+        if (value instanceof Map<?, ?> map) {
+            return (Map<String, Object>) map;
+        }
+        if (value instanceof String json && !json.isBlank()) {
+            try {
+                return objectMapper.readValue(json, SECTION_TYPE);
+            } catch (JsonProcessingException e) {
+                log.debug("Ignoring unreadable profile {}: {}", name, e.getMessage());
+            }
+        }
+        return Map.of();
+    }
+
+    @SafeVarargs
+    private static Object firstPresent(String field, Map<String, Object>... sources) {
+        for (Map<String, Object> source : sources) {
+            Object value = source != null ? source.get(field) : null;
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private String incomeBand(Object income) {
+        double value;
+        if (income instanceof Number number) {
+            value = number.doubleValue();
+        } else if (income != null) {
+            try {
+                value = Double.parseDouble(income.toString().trim());
+            } catch (NumberFormatException e) {
+                return "unknown";
+            }
+        } else {
+            return "unknown";
+        }
+        int band = 0;
+        while (band < incomeBands.length && value >= incomeBands[band]) {
+            band++;
+        }
+        return Integer.toString(band);
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0.0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm > 0) {
+            float scale = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                normalized[i] = vector[i] * scale;
+            }
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static double countEntries(Map<String, ArrayDeque<CachedAdvice>> buckets) {
+        int count = 0;
+        for (ArrayDeque<CachedAdvice> entries : buckets.values()) {
+            synchronized (entries) {
+                count += entries.size();
+            }
+        }
+        return count;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("aibank.advice.cache.lookups")
+                .description("Financial advice semantic cache lookups, by result")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A cached answer with the normalized embedding of its question
+     */
+    private static final class CachedAdvice {
+        private final float[] embedding;
+        private final String advice;
+        private final long generationNanos;
+        private final long expiresAtNanos;
+
+        private CachedAdvice(float[] embedding, String advice, long generationNanos, long expiresAtNanos) {
+            this.embedding = embedding;
+            this.advice = advice;
+            this.generationNanos = generationNanos;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    /**
+     * Result of a cache lookup
+     */
+    @Getter
+    public static class Lookup {
+        // The cached answer, or null on a miss
+        private final String advice;
+        private final String bucket;
+        private final float[] embedding;
+        private final long version;
+
+        public Lookup(String advice, String bucket, float[] embedding, long version) {
+            this.advice = advice;
+            this.bucket = bucket;
+            this.embedding = embedding;
+            this.version = version;
+        }
+
+        /**
+         * @return True if the answer came from the cache
+         */
+        public boolean isHit() {
+            return advice != null;
+        }
+    }
+}
@@ -3,66 +3,185 @@ package com.example.aibank.agentic_rag.service;
 import com.example.aibank.agentic_rag.advisor.FinancialAdviceAdvisor;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.retry.annotation.Retry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class FinancialAdviceService {
 
+    private static final String CIRCUIT_BREAKER = "financialAdvice";
+
     private final FinancialAdviceAdvisor financialAdviceAdvisor;
     private final ChatClient chatClient;
     private final ObjectMapper objectMapper;
+    private final FinancialAdviceCache financialAdviceCache;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final MeterRegistry meterRegistry;
+    private final Timer firstTokenTimer;
 
     public FinancialAdviceService(FinancialAdviceAdvisor financialAdviceAdvisor,
-                                  ChatClient.Builder chatClient, ObjectMapper objectMapper) {
+                                  ChatClient.Builder chatClient, ObjectMapper objectMapper,
+                                  FinancialAdviceCache financialAdviceCache,
+                                  CircuitBreakerRegistry circuitBreakerRegistry,
+                                  MeterRegistry meterRegistry) {
         this.financialAdviceAdvisor = financialAdviceAdvisor;
         this.chatClient = chatClient.build();
         this.objectMapper = objectMapper;
+        this.financialAdviceCache = financialAdviceCache;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.meterRegistry = meterRegistry;
+        this.firstTokenTimer = Timer.builder("aibank.advice.stream.first-token")
+                .description("Time from a streamed advice request to its first generated token")
+                .register(meterRegistry);
     }
 
     /**
-     * Generate personalized financial advice based on customer query and profile
+     * Generate personalized financial advice based on customer query and profile.
+     * A question similar to one the customer asked before is answered from the semantic cache.
      *
      * @param customerQuery The customer's financial question
      * @param customerId The customer's ID
      * @param customerProfile Additional customer profile information
      * @return Personalized financial advice
      */
-    @CircuitBreaker(name = "financialAdvice", fallbackMethod = "fallbackGetFinancialAdvice")
-    @Retry(name = "financialAdvice")
+    @CircuitBreaker(name = CIRCUIT_BREAKER, fallbackMethod = "fallbackGetFinancialAdvice")
+    @Retry(name = CIRCUIT_BREAKER)
     public String getFinancialAdvice(String customerQuery, String customerId, Map<String, Object> customerProfile) {
         log.info("Generating financial advice for customer: {}", customerId);
-        
+
+        FinancialAdviceCache.Lookup cached = financialAdviceCache.lookup(customerQuery, customerId, customerProfile);
+        if (cached.isHit()) {
+            log.debug("Answered financial advice for customer {} from cache", customerId);
+            return cached.getAdvice();
+        }
+
+        long started = System.nanoTime();
+        var prompt = createPrompt(customerQuery, customerId, customerProfile);
+
+        // Get advice from AI model
+        ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
+        String advice = Objects.requireNonNull(response).getResult().getOutput().getText();
+
+        // Only generated answers are cached, never the fallback
+        financialAdviceCache.put(cached, advice, System.nanoTime() - started);
+        return advice;
+    }
+
+    /**
+     * Stream personalized financial advice as it is generated.
+     * Tokens are emitted as the model produces them, followed by a {@code DONE} event. If generation fails,
+     * or the financial advice circuit breaker is open, the stream ends with a {@code FALLBACK} event carrying
+     * the generic advice instead, which replaces any tokens already sent. Failed streams are not retried,
+     * since their tokens have already reached the customer.
+     *
+     * @param customerQuery The customer's financial question
+     * @param customerId The customer's ID
+     * @param customerProfile Additional customer profile information
+     * @return The advice events
+     */
+    public Flux<AdviceEvent> streamFinancialAdvice(String customerQuery, String customerId, Map<String, Object> customerProfile) {
+        return Flux.defer(() -> {
+            log.info("Streaming financial advice for customer: {}", customerId);
+            long started = System.nanoTime();
+
+            FinancialAdviceCache.Lookup cached = financialAdviceCache.lookup(customerQuery, customerId, customerProfile);
+            if (cached.isHit()) {
+                recordDuration("cached", started);
+                return Flux.just(new AdviceEvent(AdviceEvent.Type.TOKEN, cached.getAdvice()), AdviceEvent.done());
+            }
+
+            io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker =
+                    circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER);
+            if (!circuitBreaker.tryAcquirePermission()) {
+                log.warn("Fallback for streamed financial advice: circuit breaker {} is open", CIRCUIT_BREAKER);
+                recordDuration("fallback", started);
+                return Flux.just(fallbackEvent(customerQuery));
+            }
+
+            StringBuilder advice = new StringBuilder();
+            Flux<AdviceEvent> tokens = Flux.defer(() -> chatClient.prompt(createPrompt(customerQuery, customerId, customerProfile))
+                            .stream().content())
+                    .doOnNext(token -> {
+                        if (advice.isEmpty()) {
+                            firstTokenTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                        }
+                        advice.append(token);
+                    })
+                    .map(token -> new AdviceEvent(AdviceEvent.Type.TOKEN, token));
+
+            return tokens
+                    .concatWith(Mono.fromSupplier(() -> {
+                        long elapsed = System.nanoTime() - started;
+                        circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+                        recordDuration("completed", started);
+                        // Only generated answers are cached, never the fallback
+                        financialAdviceCache.put(cached, advice.toString(), elapsed);
+                        return AdviceEvent.done();
+                    }))
+                    .onErrorResume(e -> {
+                        circuitBreaker.onError(System.nanoTime() - started, TimeUnit.NANOSECONDS, e);
+                        log.warn("Fallback for streamed financial advice: {}", e.getMessage());
+                        recordDuration("fallback", started);
+                        return Flux.just(fallbackEvent(customerQuery));
+                    })
+                    .doOnCancel(() -> {
+                        // The customer went away: the call neither succeeded nor failed
+                        circuitBreaker.releasePermission();
+                        recordDuration("cancelled", started);
+                    });
+        }).subscribeOn(Schedulers.boundedElastic()); // Query rewrite and retrieval block
+    }
+
+    /**
+     * Create the financial advice prompt for a customer's question
+     */
+    private Prompt createPrompt(String customerQuery, String customerId, Map<String, Object> customerProfile) {
         try {
             // Add customer ID to profile
             Map<String, Object> enrichedProfile = new HashMap<>(customerProfile);
             enrichedProfile.put("customerId", customerId);
-            
+
             // Convert profile to JSON
             String profileJson = objectMapper.writeValueAsString(enrichedProfile);
-            
+
             // Create financial advice prompt
-            var prompt = financialAdviceAdvisor.createFinancialAdvicePrompt(customerQuery, profileJson);
-            
-            // Get advice from AI model
-            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
-            return Objects.requireNonNull(response).getResult().getOutput().getText();
-            
+            return financialAdviceAdvisor.createFinancialAdvicePrompt(customerQuery, profileJson);
         } catch (JsonProcessingException e) {
             log.error("Error processing customer profile JSON", e);
             throw new RuntimeException("Error generating financial advice", e);
         }
     }
-    
+
+    private void recordDuration(String outcome, long started) {
+        Timer.builder("aibank.advice.stream.duration")
+                .description("Total duration of streamed advice responses, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private static AdviceEvent fallbackEvent(String customerQuery) {
+        return new AdviceEvent(AdviceEvent.Type.FALLBACK, fallbackAdvice(customerQuery));
+    }
+
     /**
      * Fallback method for financial advice generation
      *
@@ -72,12 +191,44 @@ public class FinancialAdviceService {
      * @param exception The exception that triggered the fallback
      * @return Generic financial advice
      */
-    private String fallbackGetFinancialAdvice(String customerQuery, String customerId, 
+    private String fallbackGetFinancialAdvice(String customerQuery, String customerId,
                                              Map<String, Object> customerProfile, Exception exception) {
         log.warn("Fallback for financial advice: {}", exception.getMessage());
-        
+
+        return fallbackAdvice(customerQuery);
+    }
+
+    private static String fallbackAdvice(String customerQuery) {
         return "I apologize, but I'm unable to provide personalized financial advice at the moment. " +
                "Please consider scheduling an appointment with one of our financial advisors for " +
                "assistance with your query: \"" + customerQuery + "\".";
     }
+
+    /**
+     * An event of a streamed advice response
+     */
+    @Getter
+    public static class AdviceEvent {
+
+        public enum Type {
+            // A chunk of generated advice
+            TOKEN,
+            // The advice is complete
+            DONE,
+            // Generation failed; the text is generic advice replacing any tokens sent
+            FALLBACK
+        }
+
+        private final Type type;
+        private final String text;
+
+        public AdviceEvent(Type type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+        static AdviceEvent done() {
+            return new AdviceEvent(Type.DONE, "");
+        }
+    }
 }
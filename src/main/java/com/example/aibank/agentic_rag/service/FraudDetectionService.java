@@ -1,46 +1,141 @@
 package com.example.aibank.agentic_rag.service;
 
 import com.example.aibank.agentic_rag.advisor.TransactionFraudAdvisor;
+import com.example.aibank.agentic_rag.model.FlaggedTransactionsPage;
+import com.example.aibank.agentic_rag.model.FraudFeatures;
 import com.example.aibank.agentic_rag.model.Transaction;
-import com.example.aibank.agentic_rag.model.TransactionDocument;
+import com.example.aibank.agentic_rag.model.VectorIndexOutbox;
 import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import com.example.aibank.agentic_rag.repository.VectorIndexOutboxRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import io.github.resilience4j.retry.RetryRegistry;
 import io.github.resilience4j.retry.annotation.Retry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.model.ChatResponse;
-import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import reactor.core.Disposable;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class FraudDetectionService {
 
+    private static final int FLAGGED_STREAM_PAGE_SIZE = 500;
+    private static final String PENDING_EXPLANATION = "Explanation pending.";
+    
+    public static final String MANUAL_REVIEW_REASON = "Automated fraud detection unavailable. Flagged for manual review.";
+
     private final TransactionRepository transactionRepository;
-    private final VectorStore transactionVectorStore;
+    private final VectorIndexOutboxRepository vectorIndexOutboxRepository;
     private final TransactionFraudAdvisor transactionFraudAdvisor;
     private final ChatClient chatClient;
     private final ObjectMapper objectMapper;
+    private final FraudRuleScorer fraudRuleScorer;
+    private final TransactionFeatureStore transactionFeatureStore;
+    private final VelocityCounterService velocityCounterService;
+    private final FraudModelService fraudModelService;
+    private final FraudRingService fraudRingService;
+    private final double fraudThreshold;
+    private final int batchChunkSize;
+    private final Duration scoreTimeout;
+    private final Duration explanationTimeout;
+    private final io.github.resilience4j.retry.Retry batchRetry;
+
+    private final Timer ruleScoringTimer;
+    private final Counter ruleApprovedCounter;
+    private final Counter ruleFlaggedCounter;
+    private final Counter modelScoredCounter;
+    private final Counter llmScoredCounter;
+    private final Timer timeToScoreTimer;
+    private final Timer timeToVerdictTimer;
+    
+    // Explanations are written off the stream's event loop, which must not block on JDBC
+    private final ExecutorService explanationExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     public FraudDetectionService(TransactionRepository transactionRepository,
-                                 VectorStore transactionVectorStore,
+                                 VectorIndexOutboxRepository vectorIndexOutboxRepository,
                                  TransactionFraudAdvisor transactionFraudAdvisor,
                                  ChatClient.Builder chatClient,
-                                 ObjectMapper objectMapper) {
+                                 ObjectMapper objectMapper,
+                                 FraudRuleScorer fraudRuleScorer,
+                                 TransactionFeatureStore transactionFeatureStore,
+                                 VelocityCounterService velocityCounterService,
+                                 FraudModelService fraudModelService,
+                                 FraudRingService fraudRingService,
+                                 RetryRegistry retryRegistry,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${aibank.fraud.threshold:0.7}") double fraudThreshold,
+                                 @Value("${aibank.fraud.batch.chunk-size:20}") int batchChunkSize,
+                                 @Value("${aibank.fraud.llm.score-timeout:30s}") Duration scoreTimeout,
+                                 @Value("${aibank.fraud.llm.explanation-timeout:2m}") Duration explanationTimeout) {
         this.transactionRepository = transactionRepository;
-        this.transactionVectorStore = transactionVectorStore;
+        this.vectorIndexOutboxRepository = vectorIndexOutboxRepository;
         this.transactionFraudAdvisor = transactionFraudAdvisor;
         this.chatClient = chatClient.build();
         this.objectMapper = objectMapper;
+        this.fraudRuleScorer = fraudRuleScorer;
+        this.transactionFeatureStore = transactionFeatureStore;
+        this.velocityCounterService = velocityCounterService;
+        this.fraudModelService = fraudModelService;
+        this.fraudRingService = fraudRingService;
+        this.fraudThreshold = fraudThreshold;
+        this.batchChunkSize = batchChunkSize;
+        this.scoreTimeout = scoreTimeout;
+        this.explanationTimeout = explanationTimeout;
+        this.batchRetry = retryRegistry.retry("fraudDetection");
+        this.ruleScoringTimer = Timer.builder("aibank.fraud.rule.scoring")
+                .description("Time spent in the rule-based fraud scoring tier")
+                .register(meterRegistry);
+        this.ruleApprovedCounter = decisionCounter(meterRegistry, "rules_legitimate");
+        this.ruleFlaggedCounter = decisionCounter(meterRegistry, "rules_fraudulent");
+        this.modelScoredCounter = decisionCounter(meterRegistry, "model");
+        this.llmScoredCounter = decisionCounter(meterRegistry, "llm");
+        this.timeToScoreTimer = Timer.builder("aibank.fraud.llm.latency")
+                .description("Time from sending the fraud prompt until part of the verdict was received")
+                .tag("until", "score")
+                .register(meterRegistry);
+        this.timeToVerdictTimer = Timer.builder("aibank.fraud.llm.latency")
+                .description("Time from sending the fraud prompt until part of the verdict was received")
+                .tag("until", "verdict")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether a transaction was scored by a streamed verdict whose explanation is not stored yet
+     *
+     * @param transaction The transaction
+     * @return True if its fraud reason is still the placeholder replaced once the verdict is complete
+     */
+    public static boolean isExplanationPending(Transaction transaction) {
+        return PENDING_EXPLANATION.equals(transaction.getFraudReason());
     }
 
     /**
@@ -53,43 +148,354 @@ public class FraudDetectionService {
     @CircuitBreaker(name = "fraudDetection", fallbackMethod = "fallbackProcessTransaction")
     @Retry(name = "fraudDetection")
     public Transaction processTransaction(Transaction transaction) {
+        return score(transaction);
+    }
+    
+    /**
+     * Process a new transaction like {@link #processTransaction}, but fail instead of flagging it for
+     * manual review when the AI model cannot score it, for callers that can retry it later
+     *
+     * @param transaction The transaction to process
+     * @return The processed transaction with fraud score
+     * @throws io.github.resilience4j.circuitbreaker.CallNotPermittedException If the circuit breaker is open
+     */
+    @Transactional
+    @CircuitBreaker(name = "fraudDetection")
+    @Retry(name = "fraudDetection")
+    public Transaction processTransactionWithoutFallback(Transaction transaction) {
+        return score(transaction);
+    }
+    
+    private Transaction score(Transaction transaction) {
         log.info("Processing transaction: {}", transaction.getId());
         
+        // Score clearly legitimate and clearly fraudulent transactions without the AI model
+        FraudFeatures features = loadFeatures(transaction);
+        if (scoreWithRules(transaction, features) || scoreWithModel(transaction, features)) {
+            return saveAndIndex(transaction);
+        }
+        countAfterCommit(llmScoredCounter);
+        
+        Disposable stream = null;
         try {
             // Convert transaction to JSON for the advisor
             String transactionJson = objectMapper.writeValueAsString(transaction);
             
             // Create fraud analysis prompt
-            var prompt = transactionFraudAdvisor.createFraudAnalysisPrompt(transactionJson);
+            var prompt = transactionFraudAdvisor.createFraudAnalysisPrompt(transaction, transactionJson, features);
             
-            // Get fraud analysis from AI model
-            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
-            String content = Objects.requireNonNull(response).getResult().getOutput().getText();
-            
-            // Parse the response
-            JsonNode jsonResponse = objectMapper.readTree(content);
-            double fraudScore = jsonResponse.get("fraudScore").asDouble();
-            String explanation = jsonResponse.get("explanation").asText();
+            // Stream the fraud analysis and act on the score as soon as it arrives; the prompt asks for it first
+            FraudVerdictStreamParser verdictParser = new FraudVerdictStreamParser(objectMapper);
+            CompletableFuture<Double> scoreFuture = new CompletableFuture<>();
+            CompletableFuture<JsonNode> verdictFuture = new CompletableFuture<>();
+            long started = System.nanoTime();
+            stream = chatClient.prompt(prompt).stream().content().subscribe(
+                    chunk -> {
+                        try {
+                            Double score = verdictParser.feed(chunk);
+                            if (score != null && scoreFuture.complete(score)) {
+                                timeToScoreTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    },
+                    error -> {
+                        scoreFuture.completeExceptionally(error);
+                        verdictFuture.completeExceptionally(error);
+                    },
+                    () -> {
+                        timeToVerdictTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                        scoreFuture.completeExceptionally(new IllegalStateException("No fraudScore in fraud verdict"));
+                        try {
+                            verdictFuture.complete(verdictParser.complete());
+                        } catch (JsonProcessingException e) {
+                            verdictFuture.completeExceptionally(e);
+                        }
+                    });
+            // A stalled stream fails the attempt, to be retried or sent to manual review, instead of hanging the request
+            double fraudScore = scoreFuture.orTimeout(scoreTimeout.toMillis(), TimeUnit.MILLISECONDS).join();
             
-            // Update transaction with fraud analysis
+            // Update transaction with fraud analysis; the explanation is attached when the stream finishes
             transaction.setFraudScore(fraudScore);
-            transaction.setFraudReason(explanation);
-            transaction.setFlaggedForReview(fraudScore >= 0.6); // Flag if score is suspicious or higher
-            
-            // Save the updated transaction
-            Transaction savedTransaction = transactionRepository.save(transaction);
-            
-            // Store transaction in vector store for future reference
-            Document document = TransactionDocument.toDocument(savedTransaction);
-            transactionVectorStore.add(List.of(document));
+            transaction.setFraudReason(PENDING_EXPLANATION);
+            transaction.setFlaggedForReview(fraudScore >= fraudThreshold); // Flag if score reaches the review threshold
             
+            Transaction savedTransaction = saveAndIndex(transaction);
+            attachExplanationAfterCommit(savedTransaction.getId(), verdictFuture, stream);
             return savedTransaction;
-        } catch (JsonProcessingException e) {
+        } catch (IOException e) {
             log.error("Error processing transaction JSON", e);
             throw new RuntimeException("Error processing transaction", e);
+        } catch (RuntimeException e) {
+            if (stream != null) {
+                stream.dispose();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Store the explanation of a streamed verdict once it has been generated and the transaction
+     * holding its score has been committed
+     *
+     * @param transactionId The scored transaction
+     * @param verdictFuture Completes with the full verdict when the stream finishes
+     * @param stream The verdict stream, cancelled if it does not finish in time
+     */
+    private void attachExplanationAfterCommit(String transactionId, CompletableFuture<JsonNode> verdictFuture,
+                                              Disposable stream) {
+        afterCommit(() -> verdictFuture.orTimeout(explanationTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenCompleteAsync((verdict, error) -> {
+                    String explanation = verdict != null ? verdict.path("explanation").asText(null) : null;
+                    if (explanation == null) {
+                        log.warn("No explanation received for transaction {}", transactionId, error);
+                        explanation = "Fraud score assigned by the AI model; no explanation was returned.";
+                        stream.dispose();
+                    }
+                    transactionRepository.updateFraudReason(transactionId, explanation);
+                }, explanationExecutor));
+    }
+    
+    /**
+     * Process a batch of transactions and detect potential fraud.
+     * Transactions not decided by the rule tier are scored with one prompt per chunk,
+     * then all transactions are saved and indexed together. Failed AI model calls are retried
+     * per chunk, for the transactions of the chunk that have no verdict yet.
+     *
+     * @param transactions The transactions to process
+     * @return The processed transactions with fraud scores, in request order
+     */
+    @Transactional
+    @CircuitBreaker(name = "fraudDetection", fallbackMethod = "fallbackProcessTransactions")
+    public List<Transaction> processTransactions(List<Transaction> transactions) {
+        log.info("Processing batch of {} transactions", transactions.size());
+        
+        List<Transaction> uncertain = new ArrayList<>();
+        List<FraudFeatures> uncertainFeatures = new ArrayList<>();
+        for (Transaction transaction : transactions) {
+            FraudFeatures features = loadFeatures(transaction);
+            if (!scoreWithRules(transaction, features) && !scoreWithModel(transaction, features)) {
+                countAfterCommit(llmScoredCounter);
+                uncertain.add(transaction);
+                uncertainFeatures.add(features);
+            }
+        }
+        
+        for (int start = 0; start < uncertain.size(); start += batchChunkSize) {
+            int end = Math.min(start + batchChunkSize, uncertain.size());
+            scoreBatchWithModel(uncertain.subList(start, end), uncertainFeatures.subList(start, end));
+        }
+        
+        // Save the batch and queue it for vector indexing in the same database transaction
+        List<Transaction> savedTransactions = transactionRepository.saveAll(transactions);
+        savedTransactions.forEach(this::recordAfterCommit);
+        
+        vectorIndexOutboxRepository.saveAll(savedTransactions.stream()
+                .map(saved -> VectorIndexOutbox.pending(saved.getId()))
+                .toList());
+        
+        return savedTransactions;
+    }
+    
+    /**
+     * Score a chunk of transactions with batched prompts, retrying only the transactions still
+     * without a verdict. Those left without one once the retries are used up are flagged for manual
+     * review; if the AI model call itself keeps failing, its exception is rethrown.
+     *
+     * @param chunk The transactions to score, updated in place
+     * @param features The history features of each transaction in the chunk
+     */
+    private void scoreBatchWithModel(List<Transaction> chunk, List<FraudFeatures> features) {
+        List<Transaction> pending = new ArrayList<>(chunk);
+        List<FraudFeatures> pendingFeatures = new ArrayList<>(features);
+        try {
+            batchRetry.executeRunnable(() -> {
+                scoreBatchOnce(pending, pendingFeatures);
+                if (!pending.isEmpty()) {
+                    throw new MissingVerdictsException(pending.size());
+                }
+            });
+        } catch (MissingVerdictsException e) {
+            for (Transaction transaction : pending) {
+                log.warn("No verdict returned for transaction {} in batch", transaction.getId());
+                markForManualReview(transaction);
+            }
+        }
+    }
+    
+    /**
+     * Send one batched prompt and apply its verdicts
+     *
+     * @param pending The transactions to score; scored transactions are removed
+     * @param features The history features of each pending transaction, kept aligned with it
+     */
+    private void scoreBatchOnce(List<Transaction> pending, List<FraudFeatures> features) {
+        try {
+            List<String> transactionsJson = new ArrayList<>(pending.size());
+            for (Transaction transaction : pending) {
+                transactionsJson.add(objectMapper.writeValueAsString(transaction));
+            }
+            
+            var prompt = transactionFraudAdvisor.createBatchFraudAnalysisPrompt(pending, transactionsJson, features);
+            ChatResponse response = chatClient.prompt(prompt).call().chatResponse();
+            String content = Objects.requireNonNull(response).getResult().getOutput().getText();
+            
+            // Map each verdict back to its transaction by batch index
+            JsonNode verdicts = objectMapper.readTree(content);
+            boolean[] scored = new boolean[pending.size()];
+            for (JsonNode verdict : verdicts) {
+                JsonNode index = verdict.get("index");
+                JsonNode fraudScore = verdict.get("fraudScore");
+                if (index == null || fraudScore == null || index.asInt(-1) < 0 || index.asInt() >= pending.size()) {
+                    continue;
+                }
+                Transaction transaction = pending.get(index.asInt());
+                transaction.setFraudScore(fraudScore.asDouble());
+                transaction.setFraudReason(verdict.path("explanation").asText(null));
+                transaction.setFlaggedForReview(fraudScore.asDouble() >= fraudThreshold);
+                scored[index.asInt()] = true;
+            }
+            
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                if (scored[i]) {
+                    pending.remove(i);
+                    features.remove(i);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Error processing batch transaction JSON", e);
+            throw new RuntimeException("Error processing transaction batch", e);
         }
     }
     
+    /**
+     * Apply the rule-based scoring tier to a transaction
+     *
+     * @param transaction The transaction to score
+     * @param features The transaction's history features
+     * @return True if the rules decided the transaction and it was updated, false if the AI model is needed
+     */
+    private boolean scoreWithRules(Transaction transaction, FraudFeatures features) {
+        FraudRuleScorer.RuleResult ruleResult = ruleScoringTimer.record(
+                () -> fraudRuleScorer.score(transaction, features));
+        
+        if (ruleResult.getDecision() == FraudRuleScorer.Decision.UNCERTAIN) {
+            return false;
+        }
+        
+        log.debug("Transaction {} decided by rules: {} ({})",
+                transaction.getId(), ruleResult.getDecision(), ruleResult.getScore());
+        boolean fraudulent = ruleResult.getDecision() == FraudRuleScorer.Decision.FRAUDULENT;
+        countAfterCommit(fraudulent ? ruleFlaggedCounter : ruleApprovedCounter);
+        
+        transaction.setFraudScore(ruleResult.getScore());
+        transaction.setFraudReason(ruleResult.explanation());
+        transaction.setFlaggedForReview(fraudulent);
+        return true;
+    }
+    
+    /**
+     * Apply the distilled fraud model to a transaction the rules could not decide
+     *
+     * @param transaction The transaction to score
+     * @param features The transaction's history features
+     * @return True if the model was confident and the transaction was updated, false if the AI model is needed
+     */
+    private boolean scoreWithModel(Transaction transaction, FraudFeatures features) {
+        double probability = fraudModelService.score(transaction, features);
+        if (Double.isNaN(probability) || !fraudModelService.isConfident(probability)) {
+            return false;
+        }
+        
+        countAfterCommit(modelScoredCounter);
+        transaction.setFraudScore(probability);
+        transaction.setFraudReason(String.format(Locale.ROOT, "%s fraud probability %.3f from model %s.",
+                FraudModelService.EXPLANATION_PREFIX, probability, fraudModelService.getModel().getVersion()));
+        transaction.setFlaggedForReview(probability >= fraudThreshold);
+        return true;
+    }
+    
+    /**
+     * Save a scored transaction and queue it for the vector store for future reference.
+     * The outbox entry is written in the same database transaction and indexed by {@link TransactionVectorIndexer}.
+     *
+     * @param transaction The scored transaction
+     * @return The saved transaction
+     */
+    private Transaction saveAndIndex(Transaction transaction) {
+        Transaction savedTransaction = transactionRepository.save(transaction);
+        recordAfterCommit(savedTransaction);
+        
+        vectorIndexOutboxRepository.save(VectorIndexOutbox.pending(savedTransaction.getId()));
+        
+        return savedTransaction;
+    }
+    
+    /**
+     * Build the features used to score a transaction: the customer's rolling history,
+     * the velocity of its IP address, device and account, and the ring of customers it links to
+     *
+     * @param transaction The transaction being scored
+     * @return The transaction's fraud features
+     */
+    private FraudFeatures loadFeatures(Transaction transaction) {
+        FraudFeatures features = transactionFeatureStore.features(transaction);
+        Duration lastHour = Duration.ofHours(1);
+        features.setIpTransactionsLastHour(velocityCounterService.count(
+                VelocityCounterService.Dimension.IP, transaction.getIpAddress(), lastHour));
+        features.setDeviceTransactionsLastHour(velocityCounterService.count(
+                VelocityCounterService.Dimension.DEVICE, transaction.getDeviceId(), lastHour));
+        features.setAccountTransactionsLastHour(velocityCounterService.count(
+                VelocityCounterService.Dimension.ACCOUNT, transaction.getAccountId(), lastHour));
+        fraudRingService.addFeatures(transaction, features);
+        return features;
+    }
+    
+    /**
+     * Record a saved transaction in the feature store, velocity counters and fraud rings once the
+     * surrounding database transaction commits, or immediately when there is none
+     *
+     * @param transaction The saved transaction
+     */
+    private void recordAfterCommit(Transaction transaction) {
+        afterCommit(() -> {
+            transactionFeatureStore.record(transaction);
+            velocityCounterService.record(transaction);
+            fraudRingService.record(transaction);
+        });
+    }
+    
+    /**
+     * Count a scoring decision once its transaction commits, so attempts rolled back and retried
+     * are not counted again
+     *
+     * @param decision The counter of the tier that decided the transaction
+     */
+    private void countAfterCommit(Counter decision) {
+        afterCommit(decision::increment);
+    }
+    
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    private static Counter decisionCounter(MeterRegistry meterRegistry, String path) {
+        return Counter.builder("aibank.fraud.decisions")
+                .description("Transactions scored, by the tier that decided them")
+                .tag("path", path)
+                .register(meterRegistry);
+    }
+    
     /**
      * Fallback method for transaction processing
      *
@@ -100,12 +506,39 @@ public class FraudDetectionService {
     private Transaction fallbackProcessTransaction(Transaction transaction, Exception exception) {
         log.warn("Fallback for transaction processing: {}", exception.getMessage());
         
-        // Set a conservative fraud score to flag for manual review
+        markForManualReview(transaction);
+        
+        Transaction savedTransaction = transactionRepository.save(transaction);
+        recordAfterCommit(savedTransaction);
+        return savedTransaction;
+    }
+    
+    /**
+     * Fallback method for batch transaction processing
+     *
+     * @param transactions The transactions to process
+     * @param exception The exception that triggered the fallback
+     * @return The transactions with a default fraud score
+     */
+    private List<Transaction> fallbackProcessTransactions(List<Transaction> transactions, Exception exception) {
+        log.warn("Fallback for batch transaction processing: {}", exception.getMessage());
+        
+        transactions.forEach(this::markForManualReview);
+        
+        List<Transaction> savedTransactions = transactionRepository.saveAll(transactions);
+        savedTransactions.forEach(this::recordAfterCommit);
+        return savedTransactions;
+    }
+    
+    /**
+     * Set a conservative fraud score to flag a transaction for manual review
+     *
+     * @param transaction The transaction to flag
+     */
+    private void markForManualReview(Transaction transaction) {
         transaction.setFraudScore(0.7);
-        transaction.setFraudReason("Automated fraud detection unavailable. Flagged for manual review.");
+        transaction.setFraudReason(MANUAL_REVIEW_REASON);
         transaction.setFlaggedForReview(true);
-        
-        return transactionRepository.save(transaction);
     }
     
     /**
@@ -123,14 +556,73 @@ public class FraudDetectionService {
     }
     
     /**
-     * Get transactions flagged for review
+     * Get one page of transactions flagged for review, highest fraud score first
      *
-     * @return List of flagged transactions
+     * @param cursor The cursor returned with the previous page, or null for the first page
+     * @param limit The maximum number of transactions to return
+     * @return The page of flagged transactions and the cursor for the next page
      */
     @Transactional(readOnly = true)
-    public List<Transaction> getFlaggedTransactions() {
-        return transactionRepository.findAll().stream()
-                .filter(Transaction::isFlaggedForReview)
-                .toList();
+    public FlaggedTransactionsPage getFlaggedTransactions(String cursor, int limit) {
+        List<Transaction> transactions = findFlaggedPage(cursor, limit);
+        String nextCursor = transactions.size() < limit ? null : encodeCursor(transactions.get(transactions.size() - 1));
+        return FlaggedTransactionsPage.builder()
+                .transactions(transactions)
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    /**
+     * Visit every transaction flagged for review, highest fraud score first,
+     * loading one keyset page at a time so memory use does not grow with the queue
+     *
+     * @param consumer Callback invoked for each flagged transaction
+     */
+    public void forEachFlaggedTransaction(Consumer<Transaction> consumer) {
+        String cursor = null;
+        List<Transaction> page;
+        do {
+            page = findFlaggedPage(cursor, FLAGGED_STREAM_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) {
+                cursor = encodeCursor(page.get(page.size() - 1));
+            }
+        } while (page.size() == FLAGGED_STREAM_PAGE_SIZE);
+    }
+    
+    private List<Transaction> findFlaggedPage(String cursor, int limit) {
+        if (cursor == null || cursor.isBlank()) {
+            return transactionRepository.findFlaggedFirstPage(Limit.of(limit));
+        }
+        // Every malformed cursor is an IllegalArgumentException, answered with 400
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|", 3);
+        if (parts.length != 3 || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("Invalid flagged transactions cursor");
+        }
+        double fraudScore = Double.parseDouble(parts[0]);
+        LocalDateTime timestamp;
+        try {
+            timestamp = LocalDateTime.parse(parts[1]);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid flagged transactions cursor", e);
+        }
+        if (!Double.isFinite(fraudScore)) {
+            throw new IllegalArgumentException("Invalid flagged transactions cursor");
+        }
+        return transactionRepository.findFlaggedAfter(fraudScore, timestamp, parts[2], limit);
+    }
+    
+    private static String encodeCursor(Transaction last) {
+        String position = last.getFraudScore() + "|" + last.getTimestamp() + "|" + last.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Raised when a batched verdict leaves transactions unscored, so only they are retried
+     */
+    private static final class MissingVerdictsException extends RuntimeException {
+        private MissingVerdictsException(int missing) {
+            super("No verdict returned for " + missing + " transactions in batch");
+        }
     }
 }
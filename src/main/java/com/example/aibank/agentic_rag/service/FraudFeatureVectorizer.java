@@ -0,0 +1,84 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Turns a transaction and its fraud features into the numeric vector of the distilled fraud model.
+ * Writes into a caller-provided array so that scoring does not allocate.
+ */
+@Component
+public class FraudFeatureVectorizer {
+
+    public static final List<String> FEATURE_NAMES = List.of(
+            "log_amount",
+            "amount_z_score",
+            "no_history",
+            "log_history_count",
+            "new_device",
+            "new_ip_address",
+            "new_merchant",
+            "log_customer_last_hour",
+            "log_ip_last_hour",
+            "log_device_last_hour",
+            "log_account_last_hour",
+            "high_risk_category",
+            "log_distinct_devices",
+            "night_time",
+            "transfer",
+            "log_ring_size",
+            "ring_risk");
+
+    private final FraudRuleScorer fraudRuleScorer;
+
+    public FraudFeatureVectorizer(FraudRuleScorer fraudRuleScorer) {
+        this.fraudRuleScorer = fraudRuleScorer;
+    }
+
+    /**
+     * @return The length of a feature vector
+     */
+    public int size() {
+        return FEATURE_NAMES.size();
+    }
+
+    /**
+     * Extract the feature vector of a transaction
+     *
+     * @param transaction The transaction
+     * @param features The transaction's history and velocity features
+     * @param vector Receives the features, in {@link #FEATURE_NAMES} order
+     */
+    public void extract(Transaction transaction, FraudFeatures features, double[] vector) {
+        double amount = transaction.getAmount().doubleValue();
+        boolean hasHistory = features.getHistoryCount() > 0;
+
+        // Same amount deviation as the rule tier, bounded so outliers do not dominate
+        double zScore = 0.0;
+        if (hasHistory) {
+            double stdDev = Math.max(features.getStdDevAmount(), features.getMeanAmount() * 0.1);
+            zScore = stdDev > 0 ? (amount - features.getMeanAmount()) / stdDev : 0.0;
+        }
+
+        vector[0] = Math.log1p(Math.max(amount, 0.0));
+        vector[1] = Math.max(-5.0, Math.min(zScore, 10.0));
+        vector[2] = hasHistory ? 0.0 : 1.0;
+        vector[3] = Math.log1p(features.getHistoryCount());
+        vector[4] = hasHistory && !features.isKnownDevice() && transaction.getDeviceId() != null ? 1.0 : 0.0;
+        vector[5] = hasHistory && !features.isKnownIpAddress() && transaction.getIpAddress() != null ? 1.0 : 0.0;
+        vector[6] = hasHistory && !features.isKnownMerchant() && transaction.getMerchantName() != null ? 1.0 : 0.0;
+        vector[7] = Math.log1p(features.getTransactionsLastHour());
+        vector[8] = Math.log1p(features.getIpTransactionsLastHour());
+        vector[9] = Math.log1p(features.getDeviceTransactionsLastHour());
+        vector[10] = Math.log1p(features.getAccountTransactionsLastHour());
+        vector[11] = fraudRuleScorer.isHighRiskCategory(transaction.getMerchantCategory()) ? 1.0 : 0.0;
+        vector[12] = Math.log1p(features.getDistinctDevices());
+        vector[13] = transaction.getTimestamp() != null && transaction.getTimestamp().getHour() < 6 ? 1.0 : 0.0;
+        vector[14] = "TRANSFER".equalsIgnoreCase(transaction.getType()) ? 1.0 : 0.0;
+        vector[15] = Math.log1p(features.getRingSize());
+        vector[16] = features.getRingRisk();
+    }
+}
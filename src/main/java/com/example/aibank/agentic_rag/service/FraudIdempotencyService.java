@@ -0,0 +1,348 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Idempotent front of the fraud pipeline.
+ * Requests sharing an idempotency key are scored and indexed once: concurrent duplicates on this
+ * node wait on the same in-flight call, duplicates on other nodes wait on a Redis lock, and later
+ * retries are answered from a Redis result cache until its TTL expires. Keys are scoped to the
+ * transaction's customer, and each result is stored with a hash of the request that produced it, so
+ * a key reused for a different request is rejected instead of answered with another transaction's
+ * result. A request with neither an idempotency key nor a transaction ID is always scored.
+ * A cached result whose explanation was still being generated is refreshed from the database on
+ * replay, so retries do not keep receiving the placeholder.
+ */
+@Service
+@Slf4j
+public class FraudIdempotencyService {
+
+    private static final String RESULT_PREFIX = "fraud:idempotency:result:";
+    private static final String LOCK_PREFIX = "fraud:idempotency:lock:";
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final FraudDetectionService fraudDetectionService;
+    private final TransactionRepository transactionRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration resultTtl;
+    private final Duration lockTimeout;
+
+    private final ConcurrentHashMap<String, InFlightCall> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executedCounter;
+    private final Counter coalescedCounter;
+    private final Counter replayedCounter;
+
+    public FraudIdempotencyService(FraudDetectionService fraudDetectionService,
+                                   TransactionRepository transactionRepository,
+                                   StringRedisTemplate redisTemplate,
+                                   ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${aibank.fraud.idempotency.result-ttl:24h}") Duration resultTtl,
+                                   @Value("${aibank.fraud.idempotency.lock-timeout:2m}") Duration lockTimeout) {
+        this.fraudDetectionService = fraudDetectionService;
+        this.transactionRepository = transactionRepository;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.resultTtl = resultTtl;
+        this.lockTimeout = lockTimeout;
+
+        this.executedCounter = outcomeCounter(meterRegistry, "executed");
+        this.coalescedCounter = outcomeCounter(meterRegistry, "coalesced");
+        this.replayedCounter = outcomeCounter(meterRegistry, "replayed");
+    }
+
+    /**
+     * Process a transaction at most once per idempotency key
+     *
+     * @param idempotencyKey The client's idempotency key, or null to use the transaction ID; without either
+     *                       the transaction is scored without deduplication
+     * @param transaction The transaction to process
+     * @return The processed transaction, possibly from an earlier request with the same key
+     * @throws IdempotencyConflictException If the key was already used for a different request
+     * @throws IdempotencyUnavailableException If the key's in-flight request did not finish in time; the
+     *                                         request can be retried
+     */
+    public Transaction process(String idempotencyKey, Transaction transaction) {
+        return process(idempotencyKey, transaction, true);
+    }
+
+    /**
+     * Process a transaction at most once per idempotency key
+     *
+     * @param idempotencyKey The client's idempotency key, or null to use the transaction ID; without either
+     *                       the transaction is scored without deduplication
+     * @param transaction The transaction to process
+     * @param fallback Whether a transaction the AI model cannot score is flagged for manual review; if
+     *                 not, the failure is thrown and nothing is stored, so the transaction can be retried
+     * @return The processed transaction, possibly from an earlier request with the same key
+     * @throws IdempotencyConflictException If the key was already used for a different request
+     * @throws IdempotencyUnavailableException If the key's in-flight request did not finish in time; the
+     *                                         request can be retried
+     */
+    public Transaction process(String idempotencyKey, Transaction transaction, boolean fallback) {
+        String clientKey;
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            clientKey = idempotencyKey;
+        } else if (transaction.getId() != null) {
+            clientKey = transaction.getId();
+        } else {
+            // Nothing identifies a retry: identical purchases are separate transactions
+            executedCounter.increment();
+            return score(transaction, fallback);
+        }
+        // Scoped to the customer, so one customer's key can never return another customer's transaction
+        String key = transaction.getCustomerId() + ":" + clientKey;
+        // Hashed before scoring, which fills in the transaction's ID and fraud fields
+        String requestHash = requestHash(transaction);
+
+        InFlightCall call = new InFlightCall(requestHash, new CompletableFuture<>());
+        InFlightCall existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            checkRequest(key, existing.getRequestHash(), requestHash);
+            coalescedCounter.increment();
+            return join(existing.getResult());
+        }
+        try {
+            Transaction result = processOnce(key, requestHash, transaction, fallback);
+            call.getResult().complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            call.getResult().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private Transaction processOnce(String key, String requestHash, Transaction transaction, boolean fallback) {
+        long deadline = System.currentTimeMillis() + lockTimeout.toMillis();
+        while (true) {
+            Optional<CachedResult> cached = readResult(key);
+            if (cached.isPresent()) {
+                checkRequest(key, cached.get().getRequestHash(), requestHash);
+                replayedCounter.increment();
+                return refreshExplanation(key, cached.get());
+            }
+
+            String token = UUID.randomUUID().toString();
+            Boolean locked = tryLock(key, token);
+            if (locked == null || locked) {
+                // Lock acquired, or Redis unavailable and only local coalescing applies
+                try {
+                    Transaction result = alreadyScored(transaction)
+                            .orElseGet(() -> {
+                                executedCounter.increment();
+                                return score(transaction, fallback);
+                            });
+                    writeResult(key, new CachedResult(requestHash, result));
+                    return result;
+                } finally {
+                    if (locked != null) {
+                        unlock(key, token);
+                    }
+                }
+            }
+
+            // Another node holds the key: wait for its result
+            if (System.currentTimeMillis() > deadline) {
+                throw new IdempotencyUnavailableException("Timed out waiting for in-flight request with idempotency key " + key, null);
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IdempotencyUnavailableException("Interrupted waiting for idempotency key " + key, e);
+            }
+        }
+    }
+
+    private Transaction score(Transaction transaction, boolean fallback) {
+        return fallback
+                ? fraudDetectionService.processTransaction(transaction)
+                : fraudDetectionService.processTransactionWithoutFallback(transaction);
+    }
+
+    /**
+     * Reject a request whose key was first used for a request with a different body
+     */
+    private static void checkRequest(String key, String firstRequestHash, String requestHash) {
+        if (!requestHash.equals(firstRequestHash)) {
+            throw new IdempotencyConflictException("Idempotency key " + key + " was used for a different request");
+        }
+    }
+
+    /**
+     * Guard for retries arriving after the cached result expired: a transaction already stored
+     * with a fraud score is returned as is instead of being scored and indexed again
+     */
+    private Optional<Transaction> alreadyScored(Transaction transaction) {
+        if (transaction.getId() == null) {
+            return Optional.empty();
+        }
+        return transactionRepository.findById(transaction.getId())
+                .filter(stored -> stored.getFraudScore() != null);
+    }
+
+    /**
+     * Replace a cached result stored before its streamed explanation was written with the current row
+     */
+    private Transaction refreshExplanation(String key, CachedResult cached) {
+        Transaction transaction = cached.getTransaction();
+        if (!FraudDetectionService.isExplanationPending(transaction) || transaction.getId() == null) {
+            return transaction;
+        }
+        Optional<Transaction> stored = transactionRepository.findById(transaction.getId());
+        if (stored.isEmpty()) {
+            return transaction;
+        }
+        if (!FraudDetectionService.isExplanationPending(stored.get())) {
+            writeResult(key, new CachedResult(cached.getRequestHash(), stored.get()));
+        }
+        return stored.get();
+    }
+
+    private Optional<CachedResult> readResult(String key) {
+        try {
+            String json = redisTemplate.opsForValue().get(RESULT_PREFIX + key);
+            return json == null ? Optional.empty() : Optional.of(objectMapper.readValue(json, CachedResult.class));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to read idempotent result for key {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void writeResult(String key, CachedResult result) {
+        try {
+            redisTemplate.opsForValue().set(RESULT_PREFIX + key, objectMapper.writeValueAsString(result), resultTtl);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to store idempotent result for key {}: {}", key, e.getMessage());
+        }
+    }
+
+    private Boolean tryLock(String key, String token) {
+        try {
+            return redisTemplate.opsForValue().setIfAbsent(LOCK_PREFIX + key, token, lockTimeout);
+        } catch (RuntimeException e) {
+            log.warn("Idempotency lock unavailable for key {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void unlock(String key, String token) {
+        try {
+            // Only release the lock if it has not expired and been taken by another request
+            if (token.equals(redisTemplate.opsForValue().get(LOCK_PREFIX + key))) {
+                redisTemplate.delete(LOCK_PREFIX + key);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to release idempotency lock for key {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Hash of the fields a client sends, so a retry of the same request body has the same hash
+     */
+    private static String requestHash(Transaction transaction) {
+        StringBuilder content = new StringBuilder();
+        for (Object field : new Object[] {
+                transaction.getId(), transaction.getCustomerId(), transaction.getAccountId(),
+                transaction.getAmount() != null ? transaction.getAmount().stripTrailingZeros().toPlainString() : null,
+                transaction.getCurrency(), transaction.getType(), transaction.getMerchantName(),
+                transaction.getMerchantCategory(), transaction.getDescription(), transaction.getLocation(),
+                transaction.getTimestamp(), transaction.getIpAddress(), transaction.getDeviceId()}) {
+            // Length-prefixed so that field boundaries cannot shift between requests
+            String value = field != null ? field.toString() : "";
+            content.append(value.length()).append(':').append(value).append('|');
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Transaction join(CompletableFuture<Transaction> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("aibank.fraud.idempotency.requests")
+                .description("Fraud scoring requests by idempotency outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A result cached in Redis, with the hash of the request that produced it
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CachedResult {
+        private String requestHash;
+        private Transaction transaction;
+    }
+
+    /**
+     * A request being scored on this node, which duplicates with the same request hash wait on
+     */
+    @Getter
+    @AllArgsConstructor
+    private static class InFlightCall {
+        private final String requestHash;
+        private final CompletableFuture<Transaction> result;
+    }
+
+    /**
+     * The idempotency key was already used for a different request; retrying will not change the outcome
+     */
+    public static class IdempotencyConflictException extends IllegalStateException {
+        public IdempotencyConflictException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Another request with the same idempotency key is still in flight and its result could not be
+     * awaited, because the wait timed out or was interrupted; the request can be retried
+     */
+    public static class IdempotencyUnavailableException extends RuntimeException {
+        public IdempotencyUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudJob;
+import com.example.aibank.agentic_rag.model.Transaction;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs fraud checks asynchronously on virtual threads.
+ * Each submitted transaction gets its own virtual thread, so waiting on the AI model costs no
+ * request or platform thread; a semaphore caps how many checks call the model at once, and
+ * submissions beyond the pending limit are rejected.
+ */
+@Service
+@Slf4j
+public class FraudJobService {
+
+    private final FraudIdempotencyService fraudIdempotencyService;
+    private final Semaphore concurrencyLimit;
+    private final int maxPending;
+    private final Duration resultTtl;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ConcurrentHashMap<String, FraudJob> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final Timer jobTimer;
+
+    public FraudJobService(FraudIdempotencyService fraudIdempotencyService,
+                           MeterRegistry meterRegistry,
+                           @Value("${aibank.fraud.async.max-concurrency:200}") int maxConcurrency,
+                           @Value("${aibank.fraud.async.max-pending:10000}") int maxPending,
+                           @Value("${aibank.fraud.async.result-ttl:15m}") Duration resultTtl) {
+        this.fraudIdempotencyService = fraudIdempotencyService;
+        this.concurrencyLimit = new Semaphore(maxConcurrency);
+        this.maxPending = maxPending;
+        this.resultTtl = resultTtl;
+
+        Gauge.builder("aibank.fraud.async.pending", pending, AtomicInteger::get)
+                .description("Asynchronous fraud checks submitted and not yet completed")
+                .register(meterRegistry);
+        Gauge.builder("aibank.fraud.async.running", running, AtomicInteger::get)
+                .description("Asynchronous fraud checks currently holding a concurrency permit")
+                .register(meterRegistry);
+        this.jobTimer = Timer.builder("aibank.fraud.async.duration")
+                .description("Time from submission to completion of an asynchronous fraud check")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Submit a transaction for asynchronous fraud processing
+     *
+     * @param transaction The transaction to process
+     * @param idempotencyKey The client's idempotency key, or null to use the transaction ID
+     * @return The queued job
+     * @throws RejectedExecutionException If the pending limit has been reached
+     */
+    public FraudJob submit(Transaction transaction, String idempotencyKey) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("Too many pending fraud checks (max " + maxPending + ")");
+        }
+
+        FraudJob job = FraudJob.builder()
+                .jobId(UUID.randomUUID().toString())
+                .transactionId(transaction.getId())
+                .status(FraudJob.Status.QUEUED)
+                .submittedAt(LocalDateTime.now())
+                .build();
+        jobs.put(job.getJobId(), job);
+
+        long startNanos = System.nanoTime();
+        try {
+            executor.execute(() -> run(job.getJobId(), transaction, idempotencyKey, startNanos));
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Get the status of an asynchronous fraud check
+     *
+     * @param jobId The job ID returned on submission
+     * @return The job, or empty if it is unknown or its result has expired
+     */
+    public Optional<FraudJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    /**
+     * Drop finished jobs whose result is older than the configured TTL
+     */
+    @Scheduled(fixedRate = 60000) // Run every minute
+    public void evictExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(resultTtl);
+        jobs.values().removeIf(job -> job.getCompletedAt() != null && job.getCompletedAt().isBefore(cutoff));
+    }
+
+    private void run(String jobId, Transaction transaction, String idempotencyKey, long startNanos) {
+        try {
+            concurrencyLimit.acquire();
+            running.incrementAndGet();
+            try {
+                update(jobId, job -> job.status(FraudJob.Status.RUNNING));
+                Transaction result = fraudIdempotencyService.process(idempotencyKey, transaction);
+                update(jobId, job -> job.status(FraudJob.Status.COMPLETED).result(result));
+            } finally {
+                running.decrementAndGet();
+                concurrencyLimit.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            update(jobId, job -> job.status(FraudJob.Status.FAILED).error("Interrupted"));
+        } catch (RuntimeException e) {
+            log.error("Asynchronous fraud check {} failed for transaction {}", jobId, transaction.getId(), e);
+            update(jobId, job -> job.status(FraudJob.Status.FAILED).error(e.getMessage()));
+        } finally {
+            pending.decrementAndGet();
+            jobTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void update(String jobId, UnaryOperator<FraudJob.FraudJobBuilder> change) {
+        // Replace the job rather than mutate it so readers always see a consistent snapshot
+        jobs.computeIfPresent(jobId, (id, job) -> {
+            FraudJob.FraudJobBuilder builder = change.apply(job.toBuilder());
+            FraudJob updated = builder.build();
+            if (updated.getStatus() == FraudJob.Status.COMPLETED || updated.getStatus() == FraudJob.Status.FAILED) {
+                updated.setCompletedAt(LocalDateTime.now());
+            }
+            return updated;
+        });
+    }
+}
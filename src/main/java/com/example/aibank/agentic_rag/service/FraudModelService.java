@@ -0,0 +1,208 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.FraudModel;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Serves the distilled fraud model in-process.
+ * Models are versioned JSON documents in the shared {@code fraud_models} table. Every node loads the
+ * newest one that passed its agreement check at startup, and a newly trained model that passes is
+ * announced on a Redis channel so that every node puts it into service, not only the one that
+ * trained it. Scoring reuses a per-thread feature buffer and allocates nothing.
+ */
+@Service
+@Slf4j
+public class FraudModelService {
+
+    // Starts the fraud reason of every model decision, which also keeps them out of training data
+    public static final String EXPLANATION_PREFIX = "Model scoring:";
+
+    private static final String ACTIVATION_CHANNEL = "fraud-model:activated";
+
+    private final FraudFeatureVectorizer vectorizer;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final boolean enabled;
+    @Getter
+    private final double lowConfidenceBound;
+    @Getter
+    private final double highConfidenceBound;
+    private final ThreadLocal<double[]> buffers;
+
+    private volatile FraudModel model;
+
+    public FraudModelService(FraudFeatureVectorizer vectorizer,
+                             ObjectMapper objectMapper,
+                             JdbcTemplate jdbcTemplate,
+                             StringRedisTemplate redisTemplate,
+                             RedisMessageListenerContainer listenerContainer,
+                             @Value("${aibank.fraud.model.enabled:true}") boolean enabled,
+                             @Value("${aibank.fraud.model.low-confidence-bound:0.1}") double lowConfidenceBound,
+                             @Value("${aibank.fraud.model.high-confidence-bound:0.9}") double highConfidenceBound) {
+        this.vectorizer = vectorizer;
+        this.objectMapper = objectMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.redisTemplate = redisTemplate;
+        this.enabled = enabled;
+        this.lowConfidenceBound = lowConfidenceBound;
+        this.highConfidenceBound = highConfidenceBound;
+        this.buffers = ThreadLocal.withInitial(() -> new double[vectorizer.size()]);
+
+        listenerContainer.addMessageListener(this::onActivation, new ChannelTopic(ACTIVATION_CHANNEL));
+    }
+
+    /**
+     * Load the newest saved model that was put into service when it was trained
+     */
+    @PostConstruct
+    public void loadLatest() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS fraud_models (
+                    version TEXT PRIMARY KEY,
+                    trained_at TIMESTAMP NOT NULL,
+                    activated BOOLEAN NOT NULL,
+                    model JSONB NOT NULL
+                )
+                """);
+        List<String> versions = jdbcTemplate.queryForList(
+                "SELECT version FROM fraud_models WHERE activated ORDER BY version DESC LIMIT 1", String.class);
+        if (versions.isEmpty()) {
+            log.info("No fraud model in service yet, every uncertain transaction goes to the AI model");
+            return;
+        }
+        try {
+            activate(load(versions.get(0)));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            log.error("Failed to load fraud model {}", versions.get(0), e);
+        }
+    }
+
+    /**
+     * Score a transaction with the current model
+     *
+     * @param transaction The transaction
+     * @param features The transaction's history and velocity features
+     * @return The fraud probability, or NaN if no model is in service
+     */
+    public double score(Transaction transaction, FraudFeatures features) {
+        FraudModel current = model;
+        if (!enabled || current == null) {
+            return Double.NaN;
+        }
+        double[] vector = buffers.get();
+        vectorizer.extract(transaction, features, vector);
+
+        double[] means = current.getMeans();
+        double[] scales = current.getScales();
+        double[] weights = current.getWeights();
+        double logit = current.getBias();
+        for (int i = 0; i < vector.length; i++) {
+            logit += weights[i] * (vector[i] - means[i]) / scales[i];
+        }
+        return 1.0 / (1.0 + Math.exp(-logit));
+    }
+
+    /**
+     * Whether a model score is far enough from the decision boundary to skip the AI model
+     *
+     * @param probability A score returned by {@link #score}
+     * @return True if the model can decide the transaction on its own
+     */
+    public boolean isConfident(double probability) {
+        return probability <= lowConfidenceBound || probability >= highConfidenceBound;
+    }
+
+    /**
+     * @return The model in service, or null if there is none
+     */
+    public FraudModel getModel() {
+        return model;
+    }
+
+    /**
+     * Store a model version in the shared model table
+     *
+     * @param trained The model to save
+     */
+    public void save(FraudModel trained) {
+        try {
+            jdbcTemplate.update("INSERT INTO fraud_models (version, trained_at, activated, model) VALUES (?, ?, ?, ?::jsonb)",
+                    trained.getVersion(), trained.getTrainedAt(),
+                    trained.getReport() != null && trained.getReport().isActivated(),
+                    objectMapper.writeValueAsString(trained));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize fraud model " + trained.getVersion(), e);
+        }
+    }
+
+    /**
+     * Put a saved model into service on this node and announce it to the others
+     *
+     * @param trained The model, already saved as activated
+     */
+    public void publish(FraudModel trained) {
+        activate(trained);
+        try {
+            redisTemplate.convertAndSend(ACTIVATION_CHANNEL, trained.getVersion());
+        } catch (RuntimeException e) {
+            // The model is saved as activated, so the other nodes load it when they restart
+            log.warn("Failed to announce fraud model {}: {}", trained.getVersion(), e.getMessage());
+        }
+    }
+
+    /**
+     * Put a model into service for subsequent scoring
+     *
+     * @param trained The model
+     * @throws IllegalArgumentException If the model was trained on different features
+     */
+    public void activate(FraudModel trained) {
+        if (!FraudFeatureVectorizer.FEATURE_NAMES.equals(trained.getFeatureNames())) {
+            throw new IllegalArgumentException("Fraud model " + trained.getVersion()
+                    + " was trained on features " + trained.getFeatureNames());
+        }
+        model = trained;
+        log.info("Fraud model {} in service", trained.getVersion());
+    }
+
+    private void onActivation(Message message, byte[] pattern) {
+        String version = new String(message.getBody(), StandardCharsets.UTF_8);
+        FraudModel current = model;
+        // Versions are timestamps; skip the model already in service and any older one announced late
+        if (current != null && current.getVersion().compareTo(version) >= 0) {
+            return;
+        }
+        try {
+            activate(load(version));
+        } catch (RuntimeException e) {
+            log.error("Failed to load announced fraud model {}", version, e);
+        }
+    }
+
+    private FraudModel load(String version) {
+        String json = jdbcTemplate.queryForObject("SELECT model::text FROM fraud_models WHERE version = ?",
+                String.class, version);
+        try {
+            return objectMapper.readValue(json, FraudModel.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Invalid fraud model " + version, e);
+        }
+    }
+}
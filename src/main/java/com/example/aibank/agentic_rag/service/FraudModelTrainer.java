@@ -0,0 +1,365 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.FraudModel;
+import com.example.aibank.agentic_rag.model.FraudModelReport;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Offline job distilling the AI model's fraud verdicts into a logistic regression model.
+ * Replays the transactions table in time order to rebuild the features each transaction had when it
+ * was scored, trains on the AI model's fraud scores as soft labels, and reports agreement on the most
+ * recent verdicts, which are held out. The model is saved as a new version and put into service on
+ * every node only if the holdout is large enough and its confident decisions agree with the AI model
+ * often enough over enough of them.
+ */
+@Service
+@Slf4j
+public class FraudModelTrainer {
+
+    private static final DateTimeFormatter VERSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    // History replayed before the training window so that its first transactions have full features
+    private static final int WARM_UP_DAYS = 30;
+
+    private final TransactionRepository transactionRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final FraudFeatureVectorizer vectorizer;
+    private final FraudModelService fraudModelService;
+    private final FraudRingService fraudRingService;
+    private final double fraudThreshold;
+    private final int trainingDays;
+    private final int maxTrainingRows;
+    private final double holdoutFraction;
+    private final int epochs;
+    private final double learningRate;
+    private final double l2;
+    private final double minConfidentAgreement;
+    private final int minHoldoutRows;
+    private final int minConfidentRows;
+
+    public FraudModelTrainer(TransactionRepository transactionRepository,
+                             EntityManager entityManager,
+                             PlatformTransactionManager transactionManager,
+                             FraudFeatureVectorizer vectorizer,
+                             FraudModelService fraudModelService,
+                             FraudRingService fraudRingService,
+                             @Value("${aibank.fraud.threshold:0.7}") double fraudThreshold,
+                             @Value("${aibank.fraud.model.training-days:90}") int trainingDays,
+                             @Value("${aibank.fraud.model.max-training-rows:1000000}") int maxTrainingRows,
+                             @Value("${aibank.fraud.model.holdout-fraction:0.2}") double holdoutFraction,
+                             @Value("${aibank.fraud.model.epochs:20}") int epochs,
+                             @Value("${aibank.fraud.model.learning-rate:0.05}") double learningRate,
+                             @Value("${aibank.fraud.model.l2:0.0001}") double l2,
+                             @Value("${aibank.fraud.model.min-confident-agreement:0.95}") double minConfidentAgreement,
+                             @Value("${aibank.fraud.model.min-holdout-rows:1000}") int minHoldoutRows,
+                             @Value("${aibank.fraud.model.min-confident-rows:500}") int minConfidentRows) {
+        this.transactionRepository = transactionRepository;
+        this.entityManager = entityManager;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.vectorizer = vectorizer;
+        this.fraudModelService = fraudModelService;
+        this.fraudRingService = fraudRingService;
+        this.fraudThreshold = fraudThreshold;
+        this.trainingDays = trainingDays;
+        this.maxTrainingRows = maxTrainingRows;
+        this.holdoutFraction = holdoutFraction;
+        this.epochs = epochs;
+        this.learningRate = learningRate;
+        this.l2 = l2;
+        this.minConfidentAgreement = minConfidentAgreement;
+        this.minHoldoutRows = minHoldoutRows;
+        this.minConfidentRows = minConfidentRows;
+    }
+
+    /**
+     * Retrain on a schedule; disabled unless {@code aibank.fraud.model.training-cron} is set
+     */
+    @Scheduled(cron = "${aibank.fraud.model.training-cron:-}")
+    public void scheduledTrain() {
+        train();
+    }
+
+    /**
+     * Train, evaluate and save a new model version
+     *
+     * @return The trained model with its agreement report
+     */
+    public FraudModel train() {
+        LocalDateTime trainedAt = LocalDateTime.now();
+        LocalDateTime windowStart = trainedAt.minusDays(trainingDays);
+        log.info("Training fraud model on AI model verdicts since {}", windowStart);
+
+        List<Example> examples = readOnlyTransaction.execute(status -> collectExamples(windowStart));
+        int verdicts = examples == null ? 0 : examples.size();
+        // Hold out the most recent verdicts, as the model will be judged on future transactions
+        int trainingSize = (int) (verdicts * (1.0 - holdoutFraction));
+        if (trainingSize == 0 || verdicts - trainingSize < minHoldoutRows) {
+            throw new IllegalStateException("Not enough AI model verdicts to train a fraud model: " + verdicts
+                    + " found, " + (verdicts - trainingSize) + " held out, at least " + minHoldoutRows + " required");
+        }
+        List<Example> training = examples.subList(0, trainingSize);
+        List<Example> holdout = examples.subList(trainingSize, examples.size());
+
+        int dimensions = vectorizer.size();
+        double[] means = new double[dimensions];
+        double[] scales = new double[dimensions];
+        standardization(training, means, scales);
+
+        double[] weights = new double[dimensions];
+        double bias = fit(training, means, scales, weights);
+
+        FraudModel model = FraudModel.builder()
+                .version(trainedAt.format(VERSION_FORMAT))
+                .trainedAt(trainedAt)
+                .featureNames(FraudFeatureVectorizer.FEATURE_NAMES)
+                .means(means)
+                .scales(scales)
+                .weights(weights)
+                .bias(bias)
+                .trainingRows(training.size())
+                .build();
+        FraudModelReport report = evaluate(holdout, model);
+        model.setReport(report);
+
+        fraudModelService.save(model);
+        log.info("Saved fraud model {}: agreement {}, confident coverage {}, confident agreement {}",
+                model.getVersion(), report.getAgreement(), report.getConfidentCoverage(),
+                report.getConfidentAgreement());
+        if (report.isActivated()) {
+            fraudModelService.publish(model);
+        } else {
+            log.warn("Fraud model {} not put into service: confident agreement {} on {} holdout verdicts, "
+                            + "at least {} on {} required", model.getVersion(), report.getConfidentAgreement(),
+                    Math.round(report.getConfidentCoverage() * report.getHoldoutRows()),
+                    minConfidentAgreement, minConfidentRows);
+        }
+        return model;
+    }
+
+    /**
+     * Replay transactions in time order, extracting the features each one had before it was recorded,
+     * and keep those scored by the AI model in the training window as examples
+     */
+    private List<Example> collectExamples(LocalDateTime windowStart) {
+        TransactionFeatureStore history = TransactionFeatureStore.forReplay();
+        VelocityReplay ipVelocity = new VelocityReplay();
+        VelocityReplay deviceVelocity = new VelocityReplay();
+        VelocityReplay accountVelocity = new VelocityReplay();
+        FraudRingGraph rings = fraudRingService.newGraph();
+        Deque<Example> examples = new ArrayDeque<>();
+        long replayed = 0;
+
+        try (Stream<Transaction> transactions = transactionRepository.streamByTimestampAfterOrderByTimestamp(
+                windowStart.minusDays(WARM_UP_DAYS))) {
+            for (Transaction transaction : (Iterable<Transaction>) transactions::iterator) {
+                LocalDateTime timestamp = transaction.getTimestamp();
+                FraudFeatures features = history.features(transaction, timestamp);
+                features.setIpTransactionsLastHour(ipVelocity.countAndRecord(transaction.getIpAddress(), timestamp));
+                features.setDeviceTransactionsLastHour(deviceVelocity.countAndRecord(transaction.getDeviceId(), timestamp));
+                features.setAccountTransactionsLastHour(accountVelocity.countAndRecord(transaction.getAccountId(), timestamp));
+                FraudRingService.addFeatures(rings, transaction, features);
+
+                if (timestamp.isAfter(windowStart) && isAiVerdict(transaction)) {
+                    double[] vector = new double[vectorizer.size()];
+                    vectorizer.extract(transaction, features, vector);
+                    examples.addLast(new Example(vector, Math.max(0.0, Math.min(transaction.getFraudScore(), 1.0))));
+                    if (examples.size() > maxTrainingRows) {
+                        examples.removeFirst();
+                    }
+                }
+
+                history.record(transaction);
+                FraudRingService.record(rings, transaction);
+                entityManager.detach(transaction);
+                replayed++;
+            }
+        }
+        log.info("Replayed {} transactions into {} training examples", replayed, examples.size());
+        return new ArrayList<>(examples);
+    }
+
+    /**
+     * Rule, fallback and model decisions are not labels: only the AI model's scores are distilled
+     */
+    private static boolean isAiVerdict(Transaction transaction) {
+        String reason = transaction.getFraudReason();
+        return transaction.getFraudScore() != null
+                && reason != null
+                && !reason.startsWith(FraudRuleScorer.EXPLANATION_PREFIX)
+                && !reason.startsWith(FraudModelService.EXPLANATION_PREFIX)
+                && !reason.equals(FraudDetectionService.MANUAL_REVIEW_REASON);
+    }
+
+    private static void standardization(List<Example> examples, double[] means, double[] scales) {
+        for (Example example : examples) {
+            for (int i = 0; i < means.length; i++) {
+                means[i] += example.features[i];
+            }
+        }
+        for (int i = 0; i < means.length; i++) {
+            means[i] /= examples.size();
+        }
+        for (Example example : examples) {
+            for (int i = 0; i < scales.length; i++) {
+                double deviation = example.features[i] - means[i];
+                scales[i] += deviation * deviation;
+            }
+        }
+        for (int i = 0; i < scales.length; i++) {
+            double stdDev = Math.sqrt(scales[i] / examples.size());
+            // Constant features keep a unit scale so they do not divide by zero
+            scales[i] = stdDev > 1e-9 ? stdDev : 1.0;
+        }
+    }
+
+    /**
+     * Stochastic gradient descent on the cross-entropy between the model and the AI model's scores
+     *
+     * @return The fitted bias; the weights are written to the given array
+     */
+    private double fit(List<Example> examples, double[] means, double[] scales, double[] weights) {
+        double meanLabel = 0.0;
+        for (Example example : examples) {
+            meanLabel += example.label;
+        }
+        meanLabel = Math.max(1e-6, Math.min(meanLabel / examples.size(), 1.0 - 1e-6));
+        double bias = Math.log(meanLabel / (1.0 - meanLabel));
+
+        int[] order = new int[examples.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(42);
+        double[] standardized = new double[weights.length];
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            double rate = learningRate / (1.0 + epoch);
+            for (int index : order) {
+                Example example = examples.get(index);
+                double logit = bias;
+                for (int i = 0; i < weights.length; i++) {
+                    standardized[i] = (example.features[i] - means[i]) / scales[i];
+                    logit += weights[i] * standardized[i];
+                }
+                double gradient = 1.0 / (1.0 + Math.exp(-logit)) - example.label;
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] -= rate * (gradient * standardized[i] + l2 * weights[i]);
+                }
+                bias -= rate * gradient;
+            }
+        }
+        return bias;
+    }
+
+    private FraudModelReport evaluate(List<Example> holdout, FraudModel model) {
+        long truePositives = 0;
+        long falsePositives = 0;
+        long trueNegatives = 0;
+        long falseNegatives = 0;
+        long confident = 0;
+        long confidentAgreed = 0;
+        double absoluteError = 0.0;
+
+        for (Example example : holdout) {
+            double logit = model.getBias();
+            for (int i = 0; i < example.features.length; i++) {
+                logit += model.getWeights()[i] * (example.features[i] - model.getMeans()[i]) / model.getScales()[i];
+            }
+            double probability = 1.0 / (1.0 + Math.exp(-logit));
+            absoluteError += Math.abs(probability - example.label);
+
+            boolean modelFlags = probability >= fraudThreshold;
+            boolean aiFlags = example.label >= fraudThreshold;
+            if (modelFlags && aiFlags) {
+                truePositives++;
+            } else if (modelFlags) {
+                falsePositives++;
+            } else if (aiFlags) {
+                falseNegatives++;
+            } else {
+                trueNegatives++;
+            }
+            if (fraudModelService.isConfident(probability)) {
+                confident++;
+                if (modelFlags == aiFlags) {
+                    confidentAgreed++;
+                }
+            }
+        }
+
+        int rows = holdout.size();
+        double confidentAgreement = confident == 0 ? 0.0 : (double) confidentAgreed / confident;
+        return FraudModelReport.builder()
+                .holdoutRows(rows)
+                .agreement(rows == 0 ? 0.0 : (double) (truePositives + trueNegatives) / rows)
+                .meanAbsoluteError(rows == 0 ? 0.0 : absoluteError / rows)
+                .truePositives(truePositives)
+                .falsePositives(falsePositives)
+                .trueNegatives(trueNegatives)
+                .falseNegatives(falseNegatives)
+                .confidentCoverage(rows == 0 ? 0.0 : (double) confident / rows)
+                .confidentAgreement(confidentAgreement)
+                .lowConfidenceBound(fraudModelService.getLowConfidenceBound())
+                .highConfidenceBound(fraudModelService.getHighConfidenceBound())
+                .activated(confident >= minConfidentRows && confidentAgreement >= minConfidentAgreement)
+                .build();
+    }
+
+    /**
+     * Transactions per key in the hour before each replayed transaction, like the live velocity counters
+     */
+    private static final class VelocityReplay {
+        private final Map<String, Deque<LocalDateTime>> timestamps = new HashMap<>();
+
+        private long countAndRecord(String key, LocalDateTime timestamp) {
+            if (key == null) {
+                return 0;
+            }
+            Deque<LocalDateTime> recent = timestamps.computeIfAbsent(key, k -> new ArrayDeque<>());
+            LocalDateTime hourAgo = timestamp.minusHours(1);
+            while (!recent.isEmpty() && !recent.peekFirst().isAfter(hourAgo)) {
+                recent.removeFirst();
+            }
+            long count = recent.size();
+            recent.addLast(timestamp);
+            return count;
+        }
+    }
+
+    private static final class Example {
+        private final double[] features;
+        private final double label;
+
+        private Example(double[] features, double label) {
+            this.features = features;
+            this.label = label;
+        }
+    }
+}
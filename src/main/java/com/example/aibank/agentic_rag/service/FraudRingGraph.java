@@ -0,0 +1,343 @@
+package com.example.aibank.agentic_rag.service;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Connected components of customers linked by the devices, IP addresses and merchants they share,
+ * maintained incrementally with union-find (union by size, path halving), so recording a transaction
+ * costs a few near-constant-time operations. Each component keeps its customer and flagged-customer
+ * counts at the root and its nodes in a circular list, so a ring can be listed without a scan.
+ * An identifier stops linking once it is shared by more customers than its limit, which keeps
+ * popular merchants and carrier-grade NAT addresses from merging unrelated customers.
+ */
+public class FraudRingGraph {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String CUSTOMER_PREFIX = "customer:";
+
+    private final Map<IdentifierType, Integer> customerLimits;
+    private final double sizeScale;
+
+    private final Map<String, Integer> nodeIds = new HashMap<>();
+    private final Map<Integer, Set<Integer>> identifierCustomers = new HashMap<>();
+    private final Set<String> saturated = new HashSet<>();
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int[] nodeCount = new int[INITIAL_CAPACITY];
+    private int[] customerCount = new int[INITIAL_CAPACITY];
+    private int[] flaggedCount = new int[INITIAL_CAPACITY];
+    private boolean[] flagged = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * @param customerLimits Customers an identifier of each type may link before it is ignored; types
+     *                       without a limit are not linked
+     * @param sizeScale Ring size at which size alone contributes about 63% risk
+     */
+    public FraudRingGraph(Map<IdentifierType, Integer> customerLimits, double sizeScale) {
+        this.customerLimits = customerLimits;
+        this.sizeScale = sizeScale;
+    }
+
+    /**
+     * Record the links made by a transaction
+     *
+     * @param customerId The customer
+     * @param deviceId The device used, or null
+     * @param ipAddress The IP address used, or null
+     * @param merchantName The merchant paid, or null
+     * @param flaggedForReview Whether the transaction was flagged as suspicious
+     */
+    public synchronized void record(String customerId, String deviceId, String ipAddress, String merchantName,
+                                    boolean flaggedForReview) {
+        int customer = node(key(null, customerId));
+        if (flaggedForReview && !flagged[customer]) {
+            flagged[customer] = true;
+            flaggedCount[find(customer)]++;
+        }
+        link(customer, IdentifierType.DEVICE, deviceId);
+        link(customer, IdentifierType.IP_ADDRESS, ipAddress);
+        link(customer, IdentifierType.MERCHANT, merchantName);
+    }
+
+    /**
+     * Exclude an identifier from linking, e.g. one a full rebuild found shared by too many customers
+     *
+     * @param type The identifier type
+     * @param value The identifier
+     */
+    public synchronized void markSaturated(IdentifierType type, String value) {
+        saturated.add(key(type, value));
+    }
+
+    /**
+     * The ring a transaction would belong to once recorded, without recording it
+     *
+     * @param customerId The customer
+     * @param deviceId The device used, or null
+     * @param ipAddress The IP address used, or null
+     * @param merchantName The merchant paid, or null
+     * @return Size, flagged customers and risk of the ring
+     */
+    public synchronized RingStats preview(String customerId, String deviceId, String ipAddress, String merchantName) {
+        Integer customer = nodeIds.get(key(null, customerId));
+        int[] roots = new int[4];
+        int rootCount = 0;
+        if (customer != null) {
+            roots[rootCount++] = find(customer);
+        }
+        rootCount = addRoot(roots, rootCount, customer, IdentifierType.DEVICE, deviceId);
+        rootCount = addRoot(roots, rootCount, customer, IdentifierType.IP_ADDRESS, ipAddress);
+        rootCount = addRoot(roots, rootCount, customer, IdentifierType.MERCHANT, merchantName);
+
+        int customers = customer == null ? 1 : 0;
+        int flaggedCustomers = 0;
+        for (int i = 0; i < rootCount; i++) {
+            customers += customerCount[roots[i]];
+            flaggedCustomers += flaggedCount[roots[i]];
+        }
+        return new RingStats(customers, flaggedCustomers, risk(customers, flaggedCustomers));
+    }
+
+    /**
+     * List a customer's ring
+     *
+     * @param customerId The customer
+     * @param limit The maximum number of members to return
+     * @return The ring, or null if the customer is unknown
+     */
+    public synchronized Ring ring(String customerId, int limit) {
+        Integer customer = nodeIds.get(key(null, customerId));
+        return customer == null ? null : ringOf(find(customer), limit);
+    }
+
+    /**
+     * List the largest rings
+     *
+     * @param minCustomers The minimum number of customers in a returned ring
+     * @param count The maximum number of rings to return
+     * @param memberLimit The maximum number of members to return per ring
+     * @return The rings, riskiest first
+     */
+    public synchronized List<Ring> rings(int minCustomers, int count, int memberLimit) {
+        List<Integer> roots = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (parent[i] == i && customerCount[i] >= Math.max(minCustomers, 2)) {
+                roots.add(i);
+            }
+        }
+        roots.sort((a, b) -> Double.compare(risk(customerCount[b], flaggedCount[b]), risk(customerCount[a], flaggedCount[a])));
+        List<Ring> rings = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, roots.size()); i++) {
+            rings.add(ringOf(roots.get(i), memberLimit));
+        }
+        return rings;
+    }
+
+    /**
+     * @return The number of customers and identifiers in the graph
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void link(int customer, IdentifierType type, String value) {
+        Integer limit = customerLimits.get(type);
+        if (value == null || value.isBlank() || limit == null || limit <= 0) {
+            return;
+        }
+        String identifierKey = key(type, value);
+        if (saturated.contains(identifierKey)) {
+            return;
+        }
+        int identifier = node(identifierKey);
+        Set<Integer> customers = identifierCustomers.computeIfAbsent(identifier, id -> new HashSet<>());
+        if (!customers.contains(customer)) {
+            if (customers.size() >= limit) {
+                return;
+            }
+            customers.add(customer);
+        }
+        union(customer, identifier);
+    }
+
+    private int addRoot(int[] roots, int rootCount, Integer customer, IdentifierType type, String value) {
+        Integer limit = customerLimits.get(type);
+        if (value == null || limit == null || limit <= 0) {
+            return rootCount;
+        }
+        String identifierKey = key(type, value);
+        Integer identifier = nodeIds.get(identifierKey);
+        if (identifier == null || saturated.contains(identifierKey)) {
+            return rootCount;
+        }
+        Set<Integer> customers = identifierCustomers.get(identifier);
+        if (customers != null && customers.size() >= limit && (customer == null || !customers.contains(customer))) {
+            return rootCount;
+        }
+        int root = find(identifier);
+        for (int i = 0; i < rootCount; i++) {
+            if (roots[i] == root) {
+                return rootCount;
+            }
+        }
+        roots[rootCount] = root;
+        return rootCount + 1;
+    }
+
+    private int node(String key) {
+        Integer existing = nodeIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        int id = size++;
+        keys[id] = key;
+        parent[id] = id;
+        next[id] = id;
+        nodeCount[id] = 1;
+        customerCount[id] = key.startsWith(CUSTOMER_PREFIX) ? 1 : 0;
+        nodeIds.put(key, id);
+        return id;
+    }
+
+    private int find(int node) {
+        while (parent[node] != node) {
+            // Path halving: point every other node on the path at its grandparent
+            parent[node] = parent[parent[node]];
+            node = parent[node];
+        }
+        return node;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (nodeCount[rootA] < nodeCount[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        nodeCount[rootA] += nodeCount[rootB];
+        customerCount[rootA] += customerCount[rootB];
+        flaggedCount[rootA] += flaggedCount[rootB];
+        // Splice the two circular member lists into one
+        int swap = next[rootA];
+        next[rootA] = next[rootB];
+        next[rootB] = swap;
+    }
+
+    private Ring ringOf(int root, int limit) {
+        List<String> customers = new ArrayList<>();
+        List<String> identifiers = new ArrayList<>();
+        int node = root;
+        do {
+            String key = keys[node];
+            if (key.startsWith(CUSTOMER_PREFIX)) {
+                if (customers.size() < limit) {
+                    customers.add(key.substring(CUSTOMER_PREFIX.length()));
+                }
+            } else if (identifiers.size() < limit) {
+                identifiers.add(key);
+            }
+            node = next[node];
+        } while (node != root && (customers.size() < limit || identifiers.size() < limit));
+        return new Ring(customerCount[root], flaggedCount[root], risk(customerCount[root], flaggedCount[root]),
+                customers, identifiers);
+    }
+
+    /**
+     * Risk grows with the share of flagged customers and with ring size; a lone customer has none
+     */
+    private double risk(int customers, int flaggedCustomers) {
+        if (customers < 2) {
+            return 0.0;
+        }
+        double flaggedShare = (double) flaggedCustomers / customers;
+        double sizeRisk = 1.0 - Math.exp(-(customers - 1) / sizeScale);
+        return 1.0 - (1.0 - flaggedShare) * (1.0 - sizeRisk);
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        next = Arrays.copyOf(next, capacity);
+        nodeCount = Arrays.copyOf(nodeCount, capacity);
+        customerCount = Arrays.copyOf(customerCount, capacity);
+        flaggedCount = Arrays.copyOf(flaggedCount, capacity);
+        flagged = Arrays.copyOf(flagged, capacity);
+    }
+
+    private static String key(IdentifierType type, String value) {
+        return type == null ? CUSTOMER_PREFIX + value : type.prefix + ":" + value;
+    }
+
+    /**
+     * Identifiers that link customers
+     */
+    public enum IdentifierType {
+        DEVICE("device"),
+        IP_ADDRESS("ip"),
+        MERCHANT("merchant");
+
+        private final String prefix;
+
+        IdentifierType(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Size and risk of the ring a transaction belongs to
+     */
+    @Getter
+    public static class RingStats {
+        private final int customers;
+        private final int flaggedCustomers;
+        private final double risk;
+
+        public RingStats(int customers, int flaggedCustomers, double risk) {
+            this.customers = customers;
+            this.flaggedCustomers = flaggedCustomers;
+            this.risk = risk;
+        }
+    }
+
+    /**
+     * A ring with a sample of its members
+     */
+    @Getter
+    public static class Ring {
+        private final int customers;
+        private final int flaggedCustomers;
+        private final double risk;
+        private final List<String> customerIds;
+        // Shared identifiers as type:value
+        private final List<String> identifiers;
+
+        public Ring(int customers, int flaggedCustomers, double risk, List<String> customerIds, List<String> identifiers) {
+            this.customers = customers;
+            this.flaggedCustomers = flaggedCustomers;
+            this.risk = risk;
+            this.customerIds = customerIds;
+            this.identifiers = identifiers;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Streaming link analysis of customers sharing devices, IP addresses and merchants.
+ * Every processed transaction is added to a {@link FraudRingGraph}, whose ring size and risk become
+ * fraud features. Union-find cannot split a ring, so the graph is rebuilt from the transactions table
+ * at startup and nightly: links older than the window drop out, and identifiers that turned out to be
+ * shared by too many customers are excluded up front.
+ */
+@Service
+@Slf4j
+public class FraudRingService {
+
+    private final TransactionRepository transactionRepository;
+    private final EntityManager entityManager;
+    private final Map<FraudRingGraph.IdentifierType, Integer> customerLimits;
+    private final double sizeScale;
+    private final int windowDays;
+    private final boolean rebuildOnStartup;
+
+    private volatile FraudRingGraph graph;
+    // Receives live transactions while a rebuild replaces the graph
+    private volatile FraudRingGraph rebuilding;
+
+    public FraudRingService(TransactionRepository transactionRepository,
+                            EntityManager entityManager,
+                            @Value("${aibank.fraud.rings.device-customer-limit:10}") int deviceCustomerLimit,
+                            @Value("${aibank.fraud.rings.ip-customer-limit:25}") int ipCustomerLimit,
+                            @Value("${aibank.fraud.rings.merchant-customer-limit:5}") int merchantCustomerLimit,
+                            @Value("${aibank.fraud.rings.size-scale:10}") double sizeScale,
+                            @Value("${aibank.fraud.rings.window-days:90}") int windowDays,
+                            @Value("${aibank.fraud.rings.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.transactionRepository = transactionRepository;
+        this.entityManager = entityManager;
+        this.customerLimits = new EnumMap<>(FraudRingGraph.IdentifierType.class);
+        this.customerLimits.put(FraudRingGraph.IdentifierType.DEVICE, deviceCustomerLimit);
+        this.customerLimits.put(FraudRingGraph.IdentifierType.IP_ADDRESS, ipCustomerLimit);
+        this.customerLimits.put(FraudRingGraph.IdentifierType.MERCHANT, merchantCustomerLimit);
+        this.sizeScale = sizeScale;
+        this.windowDays = windowDays;
+        this.rebuildOnStartup = rebuildOnStartup;
+        this.graph = newGraph();
+    }
+
+    /**
+     * Create an empty graph with the configured limits, e.g. for replaying history offline
+     *
+     * @return An empty graph
+     */
+    public FraudRingGraph newGraph() {
+        return new FraudRingGraph(customerLimits, sizeScale);
+    }
+
+    /**
+     * Rebuild at startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuildOnStartup() {
+        if (rebuildOnStartup) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuild nightly so that old links expire
+     */
+    @Scheduled(cron = "${aibank.fraud.rings.rebuild-cron:0 30 2 * * ?}")
+    @Transactional(readOnly = true)
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Rebuild the graph from the transactions in the window, in two passes: the first finds the
+     * identifiers shared by more customers than their limit, the second links customers
+     */
+    private void rebuild() {
+        LocalDateTime since = LocalDateTime.now().minusDays(windowDays);
+        log.info("Rebuilding fraud ring graph from transactions since {}", since);
+        FraudRingGraph rebuilt = newGraph();
+        rebuilding = rebuilt;
+        try {
+            Map<FraudRingGraph.IdentifierType, Map<String, Set<String>>> identifierCustomers =
+                    new EnumMap<>(FraudRingGraph.IdentifierType.class);
+            try (Stream<Transaction> transactions = transactionRepository.streamByTimestampAfter(since)) {
+                for (Transaction transaction : (Iterable<Transaction>) transactions::iterator) {
+                    countCustomer(identifierCustomers, FraudRingGraph.IdentifierType.DEVICE, transaction.getDeviceId(), transaction);
+                    countCustomer(identifierCustomers, FraudRingGraph.IdentifierType.IP_ADDRESS, transaction.getIpAddress(), transaction);
+                    countCustomer(identifierCustomers, FraudRingGraph.IdentifierType.MERCHANT, transaction.getMerchantName(), transaction);
+                    entityManager.detach(transaction);
+                }
+            }
+            int saturated = 0;
+            for (Map.Entry<FraudRingGraph.IdentifierType, Map<String, Set<String>>> byType : identifierCustomers.entrySet()) {
+                int limit = customerLimits.get(byType.getKey());
+                for (Map.Entry<String, Set<String>> identifier : byType.getValue().entrySet()) {
+                    if (identifier.getValue().size() > limit) {
+                        rebuilt.markSaturated(byType.getKey(), identifier.getKey());
+                        saturated++;
+                    }
+                }
+            }
+            identifierCustomers.clear();
+
+            long loaded = 0;
+            try (Stream<Transaction> transactions = transactionRepository.streamByTimestampAfter(since)) {
+                for (Transaction transaction : (Iterable<Transaction>) transactions::iterator) {
+                    record(rebuilt, transaction);
+                    entityManager.detach(transaction);
+                    loaded++;
+                }
+            }
+            graph = rebuilt;
+            log.info("Fraud ring graph rebuilt from {} transactions: {} nodes, {} shared identifiers excluded",
+                    loaded, rebuilt.size(), saturated);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * Add a processed transaction's links
+     *
+     * @param transaction The saved transaction
+     */
+    public void record(Transaction transaction) {
+        FraudRingGraph pending = rebuilding;
+        if (pending != null) {
+            record(pending, transaction);
+        }
+        record(graph, transaction);
+    }
+
+    /**
+     * Set the ring size and risk of the ring a transaction would join
+     *
+     * @param transaction The transaction being scored
+     * @param features Receives the ring features
+     */
+    public void addFeatures(Transaction transaction, FraudFeatures features) {
+        addFeatures(graph, transaction, features);
+    }
+
+    /**
+     * Set the ring size and risk of the ring a transaction would join in a given graph
+     *
+     * @param rings The graph
+     * @param transaction The transaction being scored
+     * @param features Receives the ring features
+     */
+    public static void addFeatures(FraudRingGraph rings, Transaction transaction, FraudFeatures features) {
+        FraudRingGraph.RingStats stats = rings.preview(transaction.getCustomerId(), transaction.getDeviceId(),
+                transaction.getIpAddress(), transaction.getMerchantName());
+        features.setRingSize(stats.getCustomers());
+        features.setRingRisk(stats.getRisk());
+    }
+
+    /**
+     * Add a transaction's links to a given graph
+     *
+     * @param rings The graph
+     * @param transaction The transaction
+     */
+    public static void record(FraudRingGraph rings, Transaction transaction) {
+        rings.record(transaction.getCustomerId(), transaction.getDeviceId(), transaction.getIpAddress(),
+                transaction.getMerchantName(), transaction.isFlaggedForReview());
+    }
+
+    /**
+     * Get a customer's ring
+     *
+     * @param customerId The customer ID
+     * @param memberLimit The maximum number of members to list
+     * @return The ring, or null if the customer has no recent transactions
+     */
+    public FraudRingGraph.Ring getRing(String customerId, int memberLimit) {
+        return graph.ring(customerId, memberLimit);
+    }
+
+    /**
+     * Get the riskiest rings
+     *
+     * @param minCustomers The minimum number of customers in a ring
+     * @param count The maximum number of rings
+     * @param memberLimit The maximum number of members to list per ring
+     * @return The rings, riskiest first
+     */
+    public List<FraudRingGraph.Ring> getRings(int minCustomers, int count, int memberLimit) {
+        return graph.rings(minCustomers, count, memberLimit);
+    }
+
+    private void countCustomer(Map<FraudRingGraph.IdentifierType, Map<String, Set<String>>> identifierCustomers,
+                               FraudRingGraph.IdentifierType type, String identifier, Transaction transaction) {
+        if (identifier == null || identifier.isBlank()) {
+            return;
+        }
+        Set<String> customers = identifierCustomers
+                .computeIfAbsent(type, t -> new HashMap<>())
+                .computeIfAbsent(identifier, id -> new HashSet<>());
+        // One past the limit is enough to know the identifier is excluded
+        if (customers.size() <= customerLimits.get(type)) {
+            customers.add(transaction.getCustomerId());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incrementally parses a fraud verdict streamed as JSON by the AI model, so that the fraud score
+ * can be acted on before the rest of the verdict, such as the explanation, has been generated.
+ * Text before the opening brace, e.g. a markdown code fence, is skipped.
+ */
+public class FraudVerdictStreamParser {
+
+    private static final String SCORE_FIELD = "fraudScore";
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final StringBuilder content = new StringBuilder();
+
+    private boolean started;
+    private boolean parsing = true;
+    private int depth;
+    private boolean scoreValueNext;
+    private Double fraudScore;
+
+    public FraudVerdictStreamParser(ObjectMapper objectMapper) throws IOException {
+        this.objectMapper = objectMapper;
+        this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+    }
+
+    /**
+     * Feed the next chunk of the streamed response
+     *
+     * @param chunk The text received since the previous chunk
+     * @return The fraud score once it has been received, otherwise null
+     * @throws IOException If the response is not valid JSON up to the fraud score
+     */
+    public Double feed(String chunk) throws IOException {
+        if (!started) {
+            int start = chunk.indexOf('{');
+            if (start < 0) {
+                return null;
+            }
+            started = true;
+            chunk = chunk.substring(start);
+        }
+        content.append(chunk);
+        if (!parsing) {
+            return fraudScore;
+        }
+
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        ((ByteArrayFeeder) parser.getNonBlockingInputFeeder()).feedInput(bytes, 0, bytes.length);
+        JsonToken token;
+        while (parsing && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    depth++;
+                    scoreValueNext = false;
+                }
+                case END_OBJECT, END_ARRAY -> depth--;
+                case FIELD_NAME -> scoreValueNext = depth == 1 && SCORE_FIELD.equals(parser.currentName());
+                default -> {
+                    if (scoreValueNext) {
+                        // A number token is only emitted once its end has been received, so it is complete
+                        fraudScore = token == JsonToken.VALUE_STRING
+                                ? Double.valueOf(parser.getText())
+                                : parser.getDoubleValue();
+                    }
+                    scoreValueNext = false;
+                }
+            }
+            // Nothing after the score or the end of the verdict needs incremental parsing
+            parsing = fraudScore == null && depth > 0;
+        }
+        return fraudScore;
+    }
+
+    /**
+     * Parse the complete response once the stream has finished
+     *
+     * @return The complete verdict
+     * @throws JsonProcessingException If the response is not valid JSON
+     */
+    public JsonNode complete() throws JsonProcessingException {
+        return objectMapper.readTree(content.toString());
+    }
+}
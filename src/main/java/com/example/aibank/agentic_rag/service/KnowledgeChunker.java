@@ -0,0 +1,236 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.KnowledgeDocument;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits knowledge documents into chunks for embedding.
+ * HTML and plain text are first converted to Markdown-like paragraphs. Chunks never cross a heading
+ * and are packed from whole paragraphs up to a size limit, so editing a paragraph changes only the
+ * chunks of its own section and every other chunk keeps its content hash. Each chunk starts with the
+ * document title and heading path, so it can be understood on its own when retrieved.
+ */
+public class KnowledgeChunker {
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.+?)\\s*#*\\s*$");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern HORIZONTAL_SPACE = Pattern.compile("[ \\t\\x0B\\u00A0]+");
+
+    private static final Pattern HTML_IGNORED = Pattern.compile(
+            "<(script|style|head)[^>]*>.*?</\\1\\s*>|<!--.*?-->", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern HTML_HEADING = Pattern.compile(
+            "<h([1-6])[^>]*>(.*?)</h\\1\\s*>", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern HTML_LIST_ITEM = Pattern.compile("<li[^>]*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_LINE_BREAK = Pattern.compile("<br\\s*/?>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_CELL = Pattern.compile("</t[dh]\\s*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_BLOCK = Pattern.compile(
+            "</?(p|div|section|article|header|footer|main|ul|ol|table|tr|blockquote|pre|dl|dt|dd)(\\s[^>]*)?>",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern HTML_TAG = Pattern.compile("<[^>]+>");
+    private static final Pattern HTML_NUMERIC_ENTITY = Pattern.compile("&#(?:[xX]([0-9a-fA-F]{1,6})|([0-9]{1,7}));");
+
+    private final int maxChunkChars;
+
+    public KnowledgeChunker(int maxChunkChars) {
+        this.maxChunkChars = maxChunkChars;
+    }
+
+    /**
+     * Split a document into chunks
+     *
+     * @param document The document
+     * @return The chunks in document order; chunk texts are whitespace-normalized
+     */
+    public List<Chunk> chunk(KnowledgeDocument document) {
+        String content = document.getContent() == null ? "" : document.getContent();
+        KnowledgeDocument.Format format = document.getFormat() == null ? KnowledgeDocument.Format.TEXT : document.getFormat();
+        String markdown = switch (format) {
+            case MARKDOWN -> content;
+            case HTML -> htmlToMarkdown(content);
+            case TEXT -> textToMarkdown(content);
+        };
+        String title = document.getTitle() != null && !document.getTitle().isBlank()
+                ? normalize(document.getTitle()) : document.getSourceId();
+
+        List<Chunk> chunks = new ArrayList<>();
+        String[] headings = new String[6];
+        List<String> paragraphs = new ArrayList<>();
+        StringBuilder paragraph = new StringBuilder();
+        boolean inCodeBlock = false;
+        for (String rawLine : markdown.split("\\R", -1)) {
+            String line = rawLine.strip();
+            if (line.startsWith("```") || line.startsWith("~~~")) {
+                inCodeBlock = !inCodeBlock;
+            }
+            // Plain text has no markup: a line starting with # is text
+            Matcher heading = inCodeBlock || format == KnowledgeDocument.Format.TEXT ? null : HEADING.matcher(line);
+            if (heading != null && heading.matches()) {
+                endParagraph(paragraph, paragraphs);
+                addSection(chunks, title, headings, paragraphs);
+                int level = heading.group(1).length();
+                headings[level - 1] = normalize(heading.group(2));
+                for (int i = level; i < headings.length; i++) {
+                    headings[i] = null;
+                }
+            } else if (line.isEmpty() && !inCodeBlock) {
+                endParagraph(paragraph, paragraphs);
+            } else {
+                if (!paragraph.isEmpty()) {
+                    paragraph.append('\n');
+                }
+                // Code keeps its indentation; prose is normalized so reflowing it does not change the hash
+                paragraph.append(inCodeBlock ? rawLine.stripTrailing() : normalize(line));
+            }
+        }
+        endParagraph(paragraph, paragraphs);
+        addSection(chunks, title, headings, paragraphs);
+        return chunks;
+    }
+
+    /**
+     * Pack a section's paragraphs into chunks
+     */
+    private void addSection(List<Chunk> chunks, String title, String[] headings, List<String> paragraphs) {
+        if (paragraphs.isEmpty()) {
+            return;
+        }
+        StringBuilder path = new StringBuilder();
+        for (String heading : headings) {
+            if (heading != null) {
+                path.append(path.isEmpty() ? "" : " > ").append(heading);
+            }
+        }
+        String section = path.toString();
+        String prefix = section.isEmpty() ? title : title + " > " + section;
+
+        StringBuilder body = new StringBuilder();
+        for (String paragraph : paragraphs) {
+            for (String piece : split(paragraph)) {
+                if (!body.isEmpty() && body.length() + 2 + piece.length() > maxChunkChars) {
+                    chunks.add(new Chunk(section, prefix + "\n\n" + body));
+                    body.setLength(0);
+                }
+                body.append(body.isEmpty() ? "" : "\n\n").append(piece);
+            }
+        }
+        if (!body.isEmpty()) {
+            chunks.add(new Chunk(section, prefix + "\n\n" + body));
+        }
+        paragraphs.clear();
+    }
+
+    /**
+     * Split a paragraph longer than a chunk at sentence ends, or at the size limit if a sentence is longer still
+     */
+    private List<String> split(String paragraph) {
+        if (paragraph.length() <= maxChunkChars) {
+            return List.of(paragraph);
+        }
+        List<String> pieces = new ArrayList<>();
+        StringBuilder piece = new StringBuilder();
+        for (String sentence : SENTENCE_END.split(paragraph)) {
+            if (!piece.isEmpty() && piece.length() + 1 + sentence.length() > maxChunkChars) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+            }
+            while (sentence.length() > maxChunkChars) {
+                pieces.add(sentence.substring(0, maxChunkChars));
+                sentence = sentence.substring(maxChunkChars);
+            }
+            piece.append(piece.isEmpty() ? "" : " ").append(sentence);
+        }
+        if (!piece.isEmpty()) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    private static void endParagraph(StringBuilder paragraph, List<String> paragraphs) {
+        if (!paragraph.isEmpty()) {
+            paragraphs.add(paragraph.toString());
+            paragraph.setLength(0);
+        }
+    }
+
+    private static String normalize(String text) {
+        return HORIZONTAL_SPACE.matcher(text).replaceAll(" ").strip();
+    }
+
+    /**
+     * Convert HTML to Markdown headings, list items and paragraphs, dropping all other markup
+     */
+    static String htmlToMarkdown(String html) {
+        String text = HTML_IGNORED.matcher(html).replaceAll(" ");
+
+        Matcher heading = HTML_HEADING.matcher(text);
+        StringBuilder withHeadings = new StringBuilder();
+        while (heading.find()) {
+            String headingText = HTML_TAG.matcher(heading.group(2)).replaceAll("").replaceAll("\\s+", " ").strip();
+            heading.appendReplacement(withHeadings, Matcher.quoteReplacement(
+                    "\n\n" + "#".repeat(Integer.parseInt(heading.group(1))) + " " + headingText + "\n\n"));
+        }
+        heading.appendTail(withHeadings);
+
+        text = HTML_LIST_ITEM.matcher(withHeadings).replaceAll("\n\n- ");
+        text = HTML_LINE_BREAK.matcher(text).replaceAll("\n");
+        text = HTML_CELL.matcher(text).replaceAll(" | ");
+        text = HTML_BLOCK.matcher(text).replaceAll("\n\n");
+        text = HTML_TAG.matcher(text).replaceAll("");
+        return unescapeHtml(text);
+    }
+
+    /**
+     * Convert plain text, e.g. extracted from a PDF, to paragraphs: hard-wrapped lines are joined,
+     * words hyphenated across lines are rejoined and page breaks end paragraphs
+     */
+    static String textToMarkdown(String text) {
+        StringBuilder markdown = new StringBuilder();
+        for (String block : text.replace('\f', '\n').split("\\R\\s*\\R")) {
+            String paragraph = block.strip()
+                    .replaceAll("(\\p{Ll})-\\R\\s*(\\p{Ll})", "$1$2")
+                    .replaceAll("\\s*\\R\\s*", " ");
+            if (!paragraph.isEmpty()) {
+                markdown.append(paragraph).append("\n\n");
+            }
+        }
+        return markdown.toString();
+    }
+
+    private static String unescapeHtml(String text) {
+        Matcher entity = HTML_NUMERIC_ENTITY.matcher(text);
+        StringBuilder unescaped = new StringBuilder();
+        while (entity.find()) {
+            int codePoint = entity.group(1) != null ? Integer.parseInt(entity.group(1), 16) : Integer.parseInt(entity.group(2));
+            entity.appendReplacement(unescaped, Matcher.quoteReplacement(
+                    Character.isValidCodePoint(codePoint) ? Character.toString(codePoint) : ""));
+        }
+        entity.appendTail(unescaped);
+        return unescaped.toString()
+                .replace("&nbsp;", " ")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&apos;", "'")
+                .replace("&amp;", "&");
+    }
+
+    /**
+     * A chunk of a document
+     */
+    @Getter
+    public static class Chunk {
+        // Heading path of the chunk's section, empty before the first heading
+        private final String section;
+        private final String text;
+
+        public Chunk(String section, String text) {
+            this.section = section;
+            this.text = text;
+        }
+    }
+}
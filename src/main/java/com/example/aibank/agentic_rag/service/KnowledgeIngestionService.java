@@ -0,0 +1,317 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.KnowledgeChunk;
+import com.example.aibank.agentic_rag.model.KnowledgeDocument;
+import com.example.aibank.agentic_rag.repository.KnowledgeChunkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads published documents into the financial knowledge base incrementally.
+ * Documents are chunked and each chunk is identified by its source and a hash of its text; the
+ * {@code knowledge_chunks} manifest records the chunks stored per source. Only chunks whose hash is
+ * not in the manifest are embedded, in batches written in parallel, and chunks no longer produced by
+ * their document are deleted, so a refresh costs embeddings for the changed chunks only. Vectors are
+ * written before the manifest and deleted before it, so a failed run is repaired by running it again.
+ * A complete publication that would delete more than {@code max-prune-fraction} of the stored sources,
+ * such as an empty upload or directory, is refused before anything is written.
+ */
+@Service
+@Slf4j
+public class KnowledgeIngestionService {
+
+    private final VectorStore financialKnowledgeVectorStore;
+    private final KnowledgeChunkRepository knowledgeChunkRepository;
+    private final KnowledgeChunker chunker;
+    private final int batchSize;
+    private final int parallelism;
+    private final double maxPruneFraction;
+
+    private final Counter addedCounter;
+    private final Counter unchangedCounter;
+    private final Counter deletedCounter;
+    private final Timer ingestionTimer;
+
+    public KnowledgeIngestionService(VectorStore financialKnowledgeVectorStore,
+                                     KnowledgeChunkRepository knowledgeChunkRepository,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${aibank.knowledge.chunk-max-chars:2000}") int chunkMaxChars,
+                                     @Value("${aibank.knowledge.batch-size:64}") int batchSize,
+                                     @Value("${aibank.knowledge.parallelism:4}") int parallelism,
+                                     @Value("${aibank.knowledge.max-prune-fraction:0.5}") double maxPruneFraction) {
+        this.financialKnowledgeVectorStore = financialKnowledgeVectorStore;
+        this.knowledgeChunkRepository = knowledgeChunkRepository;
+        this.chunker = new KnowledgeChunker(chunkMaxChars);
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.maxPruneFraction = maxPruneFraction;
+
+        this.addedCounter = chunkCounter(meterRegistry, "added");
+        this.unchangedCounter = chunkCounter(meterRegistry, "unchanged");
+        this.deletedCounter = chunkCounter(meterRegistry, "deleted");
+        this.ingestionTimer = Timer.builder("aibank.knowledge.ingestion")
+                .description("Time to ingest a set of knowledge documents")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Ingest published documents, replacing the previous version of each
+     *
+     * @param documents The documents, with distinct source IDs
+     * @param pruneMissingSources True if the documents are the complete publication, so that
+     *                            sources not among them are deleted from the knowledge base
+     * @return Counts of the chunks embedded, kept and deleted
+     * @throws IllegalArgumentException If a document has no source ID, two documents share one, or
+     *                                  there are no documents to prune against
+     * @throws PruneRefusedException If pruning would delete more than {@code max-prune-fraction} of the sources
+     */
+    public synchronized IngestionResult ingest(List<KnowledgeDocument> documents, boolean pruneMissingSources) {
+        if (pruneMissingSources && documents.isEmpty()) {
+            throw new IllegalArgumentException("Refusing to prune the knowledge base against an empty publication");
+        }
+        long startNanos = System.nanoTime();
+        Set<String> sourceIds = new HashSet<>();
+        List<Document> toEmbed = new ArrayList<>();
+        List<KnowledgeChunk> added = new ArrayList<>();
+        List<KnowledgeChunk> stale = new ArrayList<>();
+        int unchanged = 0;
+        int duplicates = 0;
+
+        for (KnowledgeDocument document : documents) {
+            String sourceId = document.getSourceId();
+            if (sourceId == null || sourceId.isBlank()) {
+                throw new IllegalArgumentException("Knowledge document without a source ID");
+            }
+            if (!sourceIds.add(sourceId)) {
+                throw new IllegalArgumentException("Duplicate knowledge document source: " + sourceId);
+            }
+
+            // Identical chunks within a document, e.g. a repeated disclaimer, are stored once
+            Map<String, KnowledgeChunker.Chunk> chunks = new LinkedHashMap<>();
+            for (KnowledgeChunker.Chunk chunk : chunker.chunk(document)) {
+                if (chunks.putIfAbsent(contentHash(chunk.getText()), chunk) != null) {
+                    duplicates++;
+                }
+            }
+
+            Map<String, KnowledgeChunk> existing = knowledgeChunkRepository.findBySourceId(sourceId).stream()
+                    .collect(Collectors.toMap(KnowledgeChunk::getContentHash, Function.identity()));
+            for (Map.Entry<String, KnowledgeChunker.Chunk> chunk : chunks.entrySet()) {
+                String hash = chunk.getKey();
+                if (existing.remove(hash) != null) {
+                    unchanged++;
+                    continue;
+                }
+                String id = UUID.nameUUIDFromBytes((sourceId + "\n" + hash).getBytes(StandardCharsets.UTF_8)).toString();
+                toEmbed.add(toDocument(id, document, chunk.getValue(), hash));
+                added.add(KnowledgeChunk.builder()
+                        .id(id)
+                        .sourceId(sourceId)
+                        .contentHash(hash)
+                        .section(chunk.getValue().getSection())
+                        .build());
+            }
+            // Whatever the new version of the document no longer contains
+            stale.addAll(existing.values());
+        }
+
+        int prunedSources = 0;
+        if (pruneMissingSources) {
+            List<String> storedSources = knowledgeChunkRepository.findSourceIds();
+            List<String> missing = storedSources.stream().filter(sourceId -> !sourceIds.contains(sourceId)).toList();
+            // Most likely an incomplete upload or the wrong directory rather than a withdrawn publication
+            if (missing.size() > storedSources.size() * maxPruneFraction) {
+                throw new PruneRefusedException("Refusing to prune " + missing.size() + " of " + storedSources.size()
+                        + " knowledge sources, more than the configured fraction " + maxPruneFraction);
+            }
+            for (String sourceId : missing) {
+                stale.addAll(knowledgeChunkRepository.findBySourceId(sourceId));
+                prunedSources++;
+            }
+        }
+
+        int batches = embedAndStore(toEmbed);
+        knowledgeChunkRepository.saveAll(added);
+        if (!stale.isEmpty()) {
+            List<String> staleIds = stale.stream().map(KnowledgeChunk::getId).toList();
+            financialKnowledgeVectorStore.delete(staleIds);
+            knowledgeChunkRepository.deleteAllByIdInBatch(staleIds);
+        }
+
+        addedCounter.increment(added.size());
+        unchangedCounter.increment(unchanged);
+        deletedCounter.increment(stale.size());
+        Duration duration = Duration.ofNanos(System.nanoTime() - startNanos);
+        ingestionTimer.record(duration);
+
+        IngestionResult result = new IngestionResult(documents.size(), added.size(), unchanged, stale.size(),
+                duplicates, prunedSources, batches, duration);
+        log.info("Ingested {} knowledge documents in {}: {} chunks embedded in {} batches, {} unchanged, {} deleted, "
+                        + "{} duplicates skipped, {} sources pruned",
+                result.getDocuments(), duration, result.getChunksAdded(), batches, unchanged, stale.size(),
+                duplicates, prunedSources);
+        return result;
+    }
+
+    /**
+     * Ingest every Markdown, HTML and text file under a directory as the complete publication:
+     * documents no longer in the directory are deleted from the knowledge base
+     *
+     * @param directory The directory; file paths relative to it are the source IDs
+     * @return Counts of the chunks embedded, kept and deleted
+     * @throws IOException If the directory cannot be read
+     * @throws IllegalArgumentException If the directory holds no documents
+     * @throws PruneRefusedException If it lacks more than {@code max-prune-fraction} of the stored sources
+     */
+    public IngestionResult ingestDirectory(Path directory) throws IOException {
+        List<KnowledgeDocument> documents = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                KnowledgeDocument.Format format = KnowledgeDocument.Format.fromFileName(file.getFileName().toString());
+                if (format == null) {
+                    log.debug("Skipping unsupported knowledge file {}", file);
+                    continue;
+                }
+                String fileName = file.getFileName().toString();
+                documents.add(KnowledgeDocument.builder()
+                        .sourceId(directory.relativize(file).toString().replace('\\', '/'))
+                        .title(fileName.substring(0, fileName.lastIndexOf('.')))
+                        .format(format)
+                        .content(Files.readString(file))
+                        .build());
+            }
+        }
+        return ingest(documents, true);
+    }
+
+    /**
+     * Embed and store documents in batches, {@code parallelism} at a time
+     *
+     * @return The number of batches
+     */
+    private int embedAndStore(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, (documents.size() + batchSize - 1) / batchSize));
+        List<Future<?>> writes = new ArrayList<>();
+        try {
+            for (int from = 0; from < documents.size(); from += batchSize) {
+                List<Document> batch = documents.subList(from, Math.min(from + batchSize, documents.size()));
+                writes.add(executor.submit(() -> financialKnowledgeVectorStore.add(batch)));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+            return writes.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Knowledge ingestion interrupted", e);
+        } catch (ExecutionException e) {
+            // Batches already written are upserted again by the next run, under the same IDs
+            throw new IllegalStateException("Failed to embed knowledge chunks", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Document toDocument(String id, KnowledgeDocument document, KnowledgeChunker.Chunk chunk, String hash) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", document.getSourceId());
+        metadata.put("section", chunk.getSection());
+        metadata.put("contentHash", hash);
+        if (document.getTitle() != null) {
+            metadata.put("title", document.getTitle());
+        }
+        return new Document(id, chunk.getText(), metadata);
+    }
+
+    private static String contentHash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Counter chunkCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("aibank.knowledge.chunks")
+                .description("Knowledge chunks processed by ingestion, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Thrown instead of pruning when a complete publication lacks too many of the stored sources
+     */
+    public static class PruneRefusedException extends IllegalStateException {
+        public PruneRefusedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Outcome of an ingestion run
+     */
+    @Getter
+    public static class IngestionResult {
+        private final int documents;
+        private final int chunksAdded;
+        private final int chunksUnchanged;
+        private final int chunksDeleted;
+        private final int duplicateChunks;
+        private final int prunedSources;
+        private final int batches;
+        private final Duration duration;
+
+        public IngestionResult(int documents, int chunksAdded, int chunksUnchanged, int chunksDeleted,
+                               int duplicateChunks, int prunedSources, int batches, Duration duration) {
+            this.documents = documents;
+            this.chunksAdded = chunksAdded;
+            this.chunksUnchanged = chunksUnchanged;
+            this.chunksDeleted = chunksDeleted;
+            this.duplicateChunks = duplicateChunks;
+            this.prunedSources = prunedSources;
+            this.batches = batches;
+            this.duration = duration;
+        }
+    }
+}
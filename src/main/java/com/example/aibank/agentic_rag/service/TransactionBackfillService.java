@@ -0,0 +1,599 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.config.HotTierVectorStore;
+import com.example.aibank.agentic_rag.config.TransactionPartitionManager;
+import com.example.aibank.agentic_rag.config.VectorStoreConfig;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingOptionsBuilder;
+import org.springframework.ai.embedding.TokenCountBatchingStrategy;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk loader for historical transactions.
+ * Reads a CSV or NDJSON file through memory-mapped windows, embeds batches in parallel without
+ * calling the chat model for scoring, and writes each batch to {@code transactions} and
+ * {@code transaction_vectors} with Postgres COPY. Batches commit in file order together with a
+ * checkpoint of the file offset, so an interrupted backfill resumes after the last committed batch.
+ */
+@Service
+@Slf4j
+public class TransactionBackfillService {
+
+    private static final long MAP_WINDOW_BYTES = 256L * 1024 * 1024;
+
+    // Length of the VARCHAR columns of the transactions table; one longer value would fail the whole COPY
+    private static final int MAX_COLUMN_LENGTH = 255;
+
+    private static final String TRANSACTION_COLUMNS = "id, accountId, customerId, amount, currency, type, "
+            + "merchantName, merchantCategory, description, location, timestamp, ipAddress, deviceId, "
+            + "flaggedForReview, fraudScore, fraudReason";
+
+    private final DataSource dataSource;
+    private final OpenAiEmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final TransactionFeatureStore transactionFeatureStore;
+    private final TransactionPartitionManager transactionPartitionManager;
+    private final StringRedisTemplate redisTemplate;
+    private final int batchSize;
+    private final int parallelism;
+
+    public TransactionBackfillService(DataSource dataSource,
+                                      OpenAiEmbeddingModel openAiEmbeddingModel,
+                                      ObjectMapper objectMapper,
+                                      TransactionFeatureStore transactionFeatureStore,
+                                      TransactionPartitionManager transactionPartitionManager,
+                                      StringRedisTemplate redisTemplate,
+                                      @Value("${aibank.backfill.batch-size:" + VectorStoreConfig.MAX_DOCUMENT_BATCH_SIZE + "}") int batchSize,
+                                      @Value("${aibank.backfill.parallelism:4}") int parallelism) {
+        this.dataSource = dataSource;
+        // Bypass the embedding cache: backfilled texts are unique and would only evict hot entries
+        this.embeddingModel = openAiEmbeddingModel;
+        this.objectMapper = objectMapper;
+        this.transactionFeatureStore = transactionFeatureStore;
+        this.transactionPartitionManager = transactionPartitionManager;
+        this.redisTemplate = redisTemplate;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Load a file of historical transactions, resuming from its last checkpoint
+     *
+     * @param file A CSV file with a header row of transaction field names, or an NDJSON file
+     * @return Counts of inserted, already present and rejected rows
+     * @throws IOException If the file cannot be read
+     */
+    public BackfillResult backfill(Path file) throws IOException {
+        long startNanos = System.nanoTime();
+        boolean csv = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        String source = file.toAbsolutePath().normalize() + "#" + Files.size(file);
+
+        createCheckpointTable();
+        long startOffset = readCheckpoint(source);
+        log.info("Backfilling {} from offset {} in batches of {} with {} embedding threads",
+                file, startOffset, batchSize, parallelism);
+
+        BatchPipeline pipeline = new BatchPipeline(source);
+        try {
+            List<String> header = csv && startOffset > 0 ? readCsvHeader(file) : null;
+            RowParser parser = new RowParser(csv, header);
+            readLines(file, startOffset, (line, endOffset) -> {
+                Transaction transaction = parser.parse(line);
+                if (transaction != null) {
+                    pipeline.add(transaction, endOffset);
+                } else if (parser.lastRowRejected) {
+                    pipeline.rowsRejected++;
+                }
+                pipeline.advanceOffset(endOffset);
+            });
+            pipeline.finish();
+        } finally {
+            pipeline.shutdown();
+        }
+
+        BackfillResult result = new BackfillResult(pipeline.rowsLoaded, pipeline.rowsDuplicate, pipeline.rowsRejected,
+                pipeline.batches, startOffset, Duration.ofNanos(System.nanoTime() - startNanos));
+        log.info("Backfill of {} finished: {} rows loaded, {} already present, {} rejected, {} batches in {}",
+                file, result.getRowsLoaded(), result.getRowsDuplicate(), result.getRowsRejected(),
+                result.getBatches(), result.getDuration());
+        return result;
+    }
+
+    /**
+     * Read complete lines through memory-mapped windows of the file
+     */
+    private void readLines(Path file, long startOffset, LineConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = startOffset;
+            while (position < size) {
+                int length = (int) Math.min(MAP_WINDOW_BYTES, size - position);
+                boolean lastWindow = position + length == size;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                int lineStart = 0;
+                for (int i = 0; i < length; i++) {
+                    if (buffer.get(i) == '\n') {
+                        consumer.accept(decode(buffer, lineStart, i), position + i + 1);
+                        lineStart = i + 1;
+                    }
+                }
+                if (lastWindow && lineStart < length) {
+                    consumer.accept(decode(buffer, lineStart, length), size);
+                    lineStart = length;
+                }
+                if (lineStart == 0) {
+                    throw new IOException("Line longer than " + MAP_WINDOW_BYTES + " bytes at offset " + position);
+                }
+                // The next window starts at the first incomplete line
+                position += lineStart;
+            }
+        }
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] bytes = new byte[end - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readCsvHeader(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty CSV file " + file);
+            }
+            return parseCsvLine(header);
+        }
+    }
+
+    /**
+     * Split a CSV line into fields, honouring double quotes (quoted fields cannot span lines)
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String toCamelCase(String column) {
+        StringBuilder name = new StringBuilder();
+        boolean upper = false;
+        for (char c : column.trim().toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                name.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return name.toString();
+    }
+
+    private void createCheckpointTable() {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE IF NOT EXISTS transaction_backfill_checkpoints (
+                        source TEXT PRIMARY KEY,
+                        byte_offset BIGINT NOT NULL,
+                        rows_loaded BIGINT NOT NULL,
+                        updated_at TIMESTAMP NOT NULL
+                    )
+                    """);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to create backfill checkpoint table", e);
+        }
+    }
+
+    private long readCheckpoint(String source) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT byte_offset FROM transaction_backfill_checkpoints WHERE source = ?")) {
+            statement.setString(1, source);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read backfill checkpoint", e);
+        }
+    }
+
+    /**
+     * Copy one embedded batch into staging tables, merge it into the target tables and move the
+     * checkpoint, all in one database transaction. Rows already present are skipped, so a batch
+     * replayed after a crash between commit and checkpoint is harmless.
+     *
+     * @return IDs of the transactions actually inserted
+     */
+    private Set<String> writeBatch(String source, List<Transaction> transactions, List<Document> documents,
+                                   List<float[]> embeddings, long endOffset, long rowsLoaded) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE TEMP TABLE IF NOT EXISTS backfill_transactions "
+                            + "(LIKE transactions INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+                    statement.execute("CREATE TEMP TABLE IF NOT EXISTS backfill_transaction_vectors "
+                            + "(LIKE transaction_vectors INCLUDING DEFAULTS) ON COMMIT DELETE ROWS");
+                }
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                StringBuilder row = new StringBuilder(16 * 1024);
+
+                CopyIn transactionCopy = pgConnection.getCopyAPI().copyIn(
+                        "COPY backfill_transactions (" + TRANSACTION_COLUMNS + ") FROM STDIN WITH (FORMAT csv)");
+                for (Transaction transaction : transactions) {
+                    row.setLength(0);
+                    appendField(row, transaction.getId()).append(',');
+                    appendField(row, transaction.getAccountId()).append(',');
+                    appendField(row, transaction.getCustomerId()).append(',');
+                    appendField(row, transaction.getAmount()).append(',');
+                    appendField(row, transaction.getCurrency()).append(',');
+                    appendField(row, transaction.getType()).append(',');
+                    appendField(row, transaction.getMerchantName()).append(',');
+                    appendField(row, transaction.getMerchantCategory()).append(',');
+                    appendField(row, transaction.getDescription()).append(',');
+                    appendField(row, transaction.getLocation()).append(',');
+                    appendField(row, transaction.getTimestamp()).append(',');
+                    appendField(row, transaction.getIpAddress()).append(',');
+                    appendField(row, transaction.getDeviceId()).append(',');
+                    appendField(row, transaction.isFlaggedForReview()).append(',');
+                    appendField(row, transaction.getFraudScore()).append(',');
+                    appendField(row, truncate(transaction.getFraudReason())).append('\n');
+                    writeRow(transactionCopy, row);
+                }
+                transactionCopy.endCopy();
+
+                CopyIn vectorCopy = pgConnection.getCopyAPI().copyIn(
+                        "COPY backfill_transaction_vectors (id, content, metadata, embedding) FROM STDIN WITH (FORMAT csv)");
+                for (int i = 0; i < documents.size(); i++) {
+                    Document document = documents.get(i);
+                    row.setLength(0);
+                    appendField(row, document.getId()).append(',');
+                    appendField(row, document.getText()).append(',');
+                    appendField(row, objectMapper.writeValueAsString(document.getMetadata())).append(',');
+                    row.append('"').append('[');
+                    float[] embedding = embeddings.get(i);
+                    for (int j = 0; j < embedding.length; j++) {
+                        if (j > 0) {
+                            row.append(',');
+                        }
+                        row.append(embedding[j]);
+                    }
+                    row.append(']').append('"').append('\n');
+                    writeRow(vectorCopy, row);
+                }
+                vectorCopy.endCopy();
+
+                Set<String> inserted = new HashSet<>();
+                try (Statement statement = connection.createStatement()) {
+                    // An ID already claimed, even with another timestamp, is a row already present
+                    try (ResultSet resultSet = statement.executeQuery("INSERT INTO transactions (" + TRANSACTION_COLUMNS
+                            + ") SELECT DISTINCT ON (id) " + TRANSACTION_COLUMNS + " FROM backfill_transactions b "
+                            + "WHERE NOT EXISTS (SELECT 1 FROM transaction_ids i WHERE i.id = b.id) "
+                            + "ON CONFLICT (id, timestamp) DO NOTHING RETURNING id")) {
+                        while (resultSet.next()) {
+                            inserted.add(resultSet.getString(1));
+                        }
+                    }
+                    statement.execute("INSERT INTO transaction_vectors (id, content, metadata, embedding) "
+                            + "SELECT id, content, metadata, embedding FROM backfill_transaction_vectors "
+                            + "ON CONFLICT (id) DO NOTHING");
+                }
+                try (PreparedStatement statement = connection.prepareStatement("""
+                        INSERT INTO transaction_backfill_checkpoints (source, byte_offset, rows_loaded, updated_at)
+                        VALUES (?, ?, ?, now())
+                        ON CONFLICT (source) DO UPDATE
+                        SET byte_offset = EXCLUDED.byte_offset, rows_loaded = EXCLUDED.rows_loaded, updated_at = now()
+                        """)) {
+                    statement.setString(1, source);
+                    statement.setLong(2, endOffset);
+                    statement.setLong(3, rowsLoaded + inserted.size());
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                return inserted;
+            } catch (SQLException | JsonProcessingException | RuntimeException e) {
+                connection.rollback();
+                throw e instanceof SQLException sqlException ? sqlException : new SQLException(e);
+            }
+        }
+    }
+
+    /**
+     * Tell running nodes' vector hot tiers to load the rows just written behind their back
+     */
+    private void announce(List<Document> documents) {
+        try {
+            redisTemplate.convertAndSend(HotTierVectorStore.channel("transaction_vectors"),
+                    HotTierVectorStore.message("backfill", documents.stream().map(Document::getId).toList()));
+        } catch (RuntimeException e) {
+            log.warn("Failed to announce backfilled vectors, hot tiers will see them after restart: {}", e.getMessage());
+        }
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= MAX_COLUMN_LENGTH ? value : value.substring(0, MAX_COLUMN_LENGTH);
+    }
+
+    private static StringBuilder appendField(StringBuilder row, Object value) {
+        if (value == null) {
+            // An unquoted empty field is NULL in COPY csv format
+            return row;
+        }
+        String text = value.toString();
+        row.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                row.append('"');
+            }
+            row.append(c);
+        }
+        return row.append('"');
+    }
+
+    private static void writeRow(CopyIn copy, StringBuilder row) throws SQLException {
+        byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+        copy.writeToCopy(bytes, 0, bytes.length);
+    }
+
+    @FunctionalInterface
+    private interface LineConsumer {
+        void accept(String line, long endOffset) throws IOException;
+    }
+
+    /**
+     * Converts CSV or NDJSON lines to transactions, rejecting rows that are malformed or miss a required field
+     */
+    private final class RowParser {
+        private final boolean csv;
+        private List<String> header;
+        private boolean lastRowRejected;
+
+        private RowParser(boolean csv, List<String> header) {
+            this.csv = csv;
+            this.header = header == null ? null : header.stream().map(TransactionBackfillService::toCamelCase).toList();
+        }
+
+        private Transaction parse(String line) {
+            lastRowRejected = false;
+            if (line.isBlank()) {
+                return null;
+            }
+            if (csv && header == null) {
+                header = parseCsvLine(line).stream().map(TransactionBackfillService::toCamelCase).toList();
+                return null;
+            }
+            try {
+                Transaction transaction;
+                if (csv) {
+                    List<String> fields = parseCsvLine(line);
+                    Map<String, String> row = new LinkedHashMap<>();
+                    for (int i = 0; i < Math.min(fields.size(), header.size()); i++) {
+                        if (!fields.get(i).isEmpty()) {
+                            row.put(header.get(i), fields.get(i));
+                        }
+                    }
+                    transaction = objectMapper.convertValue(row, Transaction.class);
+                } else {
+                    transaction = objectMapper.readValue(line, Transaction.class);
+                }
+                if (transaction.getAccountId() == null || transaction.getCustomerId() == null
+                        || transaction.getAmount() == null || transaction.getCurrency() == null
+                        || transaction.getType() == null || transaction.getTimestamp() == null) {
+                    throw new IllegalArgumentException("missing required field");
+                }
+                for (String value : new String[] {transaction.getId(), transaction.getAccountId(),
+                        transaction.getCustomerId(), transaction.getCurrency(), transaction.getType(),
+                        transaction.getMerchantName(), transaction.getMerchantCategory(), transaction.getDescription(),
+                        transaction.getLocation(), transaction.getIpAddress(), transaction.getDeviceId()}) {
+                    if (value != null && value.length() > MAX_COLUMN_LENGTH) {
+                        throw new IllegalArgumentException("field longer than " + MAX_COLUMN_LENGTH + " characters");
+                    }
+                }
+                if (!transactionPartitionManager.isRetained(transaction.getTimestamp())) {
+                    throw new IllegalArgumentException("older than the transactions retention period");
+                }
+                if (transaction.getId() == null) {
+                    transaction.setId(UUID.randomUUID().toString());
+                }
+                return transaction;
+            } catch (JsonProcessingException | IllegalArgumentException e) {
+                lastRowRejected = true;
+                log.warn("Rejected backfill row: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Embeds batches on a thread pool while writing them back in file order, keeping at most
+     * {@code parallelism} batches in memory
+     */
+    private final class BatchPipeline {
+        private final String source;
+        private final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        private final Deque<PendingBatch> pending = new ArrayDeque<>();
+        private List<Transaction> current = new ArrayList<>(batchSize);
+        private long currentEndOffset;
+        private long rowsLoaded;
+        private long rowsDuplicate;
+        private long rowsRejected;
+        private long batches;
+
+        private BatchPipeline(String source) {
+            this.source = source;
+        }
+
+        private void add(Transaction transaction, long endOffset) throws IOException {
+            current.add(transaction);
+            currentEndOffset = endOffset;
+            if (current.size() >= batchSize) {
+                submit();
+            }
+        }
+
+        private void advanceOffset(long endOffset) {
+            // Skipped lines still move the checkpoint of the batch that follows them
+            currentEndOffset = endOffset;
+        }
+
+        private void submit() throws IOException {
+            List<Transaction> transactions = current;
+            List<Document> documents = transactions.stream().map(TransactionDocument::toDocument).toList();
+            Future<List<float[]>> embeddings = executor.submit(() -> embeddingModel.embed(
+                    documents, EmbeddingOptionsBuilder.builder().build(), new TokenCountBatchingStrategy()));
+            pending.addLast(new PendingBatch(transactions, documents, embeddings, currentEndOffset));
+            current = new ArrayList<>(batchSize);
+            while (pending.size() >= parallelism) {
+                writeNext();
+            }
+        }
+
+        private void finish() throws IOException {
+            if (!current.isEmpty()) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        }
+
+        private void writeNext() throws IOException {
+            PendingBatch batch = pending.removeFirst();
+            Set<String> inserted;
+            try {
+                List<float[]> embeddings = batch.embeddings.get();
+                transactionPartitionManager.ensurePartitions(
+                        batch.transactions.stream().map(Transaction::getTimestamp).min(LocalDateTime::compareTo).orElseThrow(),
+                        batch.transactions.stream().map(Transaction::getTimestamp).max(LocalDateTime::compareTo).orElseThrow());
+                inserted = writeBatch(source, batch.transactions, batch.documents, embeddings, batch.endOffset, rowsLoaded);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Backfill interrupted", e);
+            } catch (ExecutionException | SQLException e) {
+                throw new IOException("Backfill batch ending at offset " + batch.endOffset + " failed", e);
+            }
+            // Rows already present were recorded when they were first loaded
+            batch.transactions.stream()
+                    .filter(transaction -> inserted.contains(transaction.getId()))
+                    .forEach(transactionFeatureStore::record);
+            announce(batch.documents);
+            rowsLoaded += inserted.size();
+            rowsDuplicate += batch.transactions.size() - inserted.size();
+            batches++;
+            log.info("Backfilled {} rows, checkpoint at offset {}", rowsLoaded, batch.endOffset);
+        }
+
+        private void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class PendingBatch {
+        private final List<Transaction> transactions;
+        private final List<Document> documents;
+        private final Future<List<float[]>> embeddings;
+        private final long endOffset;
+
+        private PendingBatch(List<Transaction> transactions, List<Document> documents,
+                             Future<List<float[]>> embeddings, long endOffset) {
+            this.transactions = transactions;
+            this.documents = documents;
+            this.embeddings = embeddings;
+            this.endOffset = endOffset;
+        }
+    }
+
+    /**
+     * Outcome of a backfill run
+     */
+    @Getter
+    public static class BackfillResult {
+        private final long rowsLoaded;
+        private final long rowsDuplicate;
+        private final long rowsRejected;
+        private final long batches;
+        private final long resumedFromOffset;
+        private final Duration duration;
+
+        public BackfillResult(long rowsLoaded, long rowsDuplicate, long rowsRejected, long batches,
+                              long resumedFromOffset, Duration duration) {
+            this.rowsLoaded = rowsLoaded;
+            this.rowsDuplicate = rowsDuplicate;
+            this.rowsRejected = rowsRejected;
+            this.batches = batches;
+            this.resumedFromOffset = resumedFromOffset;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.FraudFeatures;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * In-memory per-customer rolling transaction features.
+ * Updated on every processed transaction and rebuilt from the transactions table at startup,
+ * so fraud features are read without querying the database. Merchants, devices and IP addresses
+ * count as known for 30 days after a customer last used them; beyond the per-customer limit the
+ * least recently used one is forgotten first. Customers without a transaction in the last 30 days
+ * are dropped.
+ */
+@Component
+@Slf4j
+public class TransactionFeatureStore {
+
+    private static final int STRIPES = 64;
+    private static final int MAX_DISTINCT_VALUES = 256;
+
+    private static final long KNOWN_VALUE_SECONDS = Window.DAYS_30.size * Window.DAYS_30.bucketSeconds;
+
+    private final TransactionRepository transactionRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean rebuildOnStartup;
+
+    private final ConcurrentHashMap<String, CustomerFeatures> customers = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[STRIPES];
+
+    public TransactionFeatureStore(TransactionRepository transactionRepository,
+                                   EntityManager entityManager,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${aibank.fraud.features.rebuild-on-startup:true}") boolean rebuildOnStartup) {
+        this.transactionRepository = transactionRepository;
+        this.entityManager = entityManager;
+        if (transactionManager != null) {
+            this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+            this.readOnlyTransaction.setReadOnly(true);
+        } else {
+            this.readOnlyTransaction = null;
+        }
+        this.rebuildOnStartup = rebuildOnStartup;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Create a store that is not backed by the transactions table, for replaying history offline
+     *
+     * @return An empty store
+     */
+    public static TransactionFeatureStore forReplay() {
+        return new TransactionFeatureStore(null, null, null, false);
+    }
+
+    /**
+     * Rebuild the store from the last 30 days of the transactions table.
+     * Runs while the application context starts, before the web server and the fraud consumers
+     * that depend on this store accept transactions, so no live transaction is missed or counted twice.
+     */
+    @PostConstruct
+    public void rebuild() {
+        if (!rebuildOnStartup) {
+            return;
+        }
+        log.info("Rebuilding transaction feature store");
+        customers.clear();
+
+        long loaded = readOnlyTransaction.execute(status -> {
+            long count = 0;
+            try (Stream<Transaction> transactions = transactionRepository.streamByTimestampAfter(
+                    LocalDateTime.now().minusDays(Window.DAYS_30.size))) {
+                for (Transaction transaction : (Iterable<Transaction>) transactions::iterator) {
+                    record(transaction);
+                    entityManager.detach(transaction);
+                    count++;
+                }
+            }
+            return count;
+        });
+        log.info("Transaction feature store rebuilt from {} transactions for {} customers", loaded, customers.size());
+    }
+
+    /**
+     * Record a transaction in its customer's rolling windows
+     *
+     * @param transaction The transaction to record
+     */
+    public void record(Transaction transaction) {
+        LocalDateTime timestamp = transaction.getTimestamp() != null ? transaction.getTimestamp() : LocalDateTime.now();
+        long epochSecond = timestamp.toEpochSecond(ZoneOffset.UTC);
+        double amount = transaction.getAmount().doubleValue();
+
+        synchronized (lockFor(transaction.getCustomerId())) {
+            // Looked up under the lock, so the eviction cannot drop the features while they are updated
+            CustomerFeatures features = customers.computeIfAbsent(transaction.getCustomerId(), id -> new CustomerFeatures());
+            for (Window window : Window.values()) {
+                features.windows[window.ordinal()].add(epochSecond / window.bucketSeconds, amount);
+            }
+            markUsed(features.merchants, transaction.getMerchantName(), epochSecond);
+            markUsed(features.devices, transaction.getDeviceId(), epochSecond);
+            markUsed(features.ipAddresses, transaction.getIpAddress(), epochSecond);
+        }
+    }
+
+    /**
+     * Read the fraud features for a transaction's customer
+     *
+     * @param transaction The transaction being scored
+     * @return Features built from the customer's rolling windows
+     */
+    public FraudFeatures features(Transaction transaction) {
+        return features(transaction, LocalDateTime.now());
+    }
+
+    /**
+     * Read the fraud features for a transaction's customer as they were at a point in time,
+     * e.g. when replaying history to train a model
+     *
+     * @param transaction The transaction being scored
+     * @param asOf The end of the rolling windows
+     * @return Features built from the customer's rolling windows
+     */
+    public FraudFeatures features(Transaction transaction, LocalDateTime asOf) {
+        CustomerFeatures features = customers.get(transaction.getCustomerId());
+        if (features == null) {
+            return FraudFeatures.builder().build();
+        }
+
+        long nowSecond = asOf.toEpochSecond(ZoneOffset.UTC);
+        synchronized (lockFor(transaction.getCustomerId())) {
+            WindowStats month = features.windows[Window.DAYS_30.ordinal()].stats(nowSecond / Window.DAYS_30.bucketSeconds);
+            WindowStats hour = features.windows[Window.HOUR_1.ordinal()].stats(nowSecond / Window.HOUR_1.bucketSeconds);
+            return FraudFeatures.builder()
+                    .historyCount(month.getCount())
+                    .meanAmount(month.getMean())
+                    .stdDevAmount(Math.sqrt(month.getVariance()))
+                    .transactionsLastHour(hour.getCount())
+                    .knownDevice(isKnown(features.devices, transaction.getDeviceId(), nowSecond))
+                    .knownIpAddress(isKnown(features.ipAddresses, transaction.getIpAddress(), nowSecond))
+                    .knownMerchant(isKnown(features.merchants, transaction.getMerchantName(), nowSecond))
+                    .distinctDevices(countKnown(features.devices, nowSecond))
+                    .distinctMerchants(countKnown(features.merchants, nowSecond))
+                    .build();
+        }
+    }
+
+    /**
+     * Read the rolling statistics of one window for a customer
+     *
+     * @param customerId The customer ID
+     * @param window The window to read
+     * @return Count, sum, mean and variance of the customer's amounts in the window
+     */
+    public WindowStats windowStats(String customerId, Window window) {
+        CustomerFeatures features = customers.get(customerId);
+        if (features == null) {
+            return new WindowStats(0, 0.0, 0.0);
+        }
+        long nowSecond = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC);
+        synchronized (lockFor(customerId)) {
+            return features.windows[window.ordinal()].stats(nowSecond / window.bucketSeconds);
+        }
+    }
+
+    /**
+     * Drop customers with no transaction inside the 30-day window
+     */
+    @Scheduled(fixedRate = 3600000) // Run every hour
+    public void evictIdleCustomers() {
+        long currentBucketId = LocalDateTime.now().toEpochSecond(ZoneOffset.UTC) / Window.DAYS_30.bucketSeconds;
+        for (String customerId : customers.keySet()) {
+            synchronized (lockFor(customerId)) {
+                customers.computeIfPresent(customerId, (id, features) ->
+                        features.windows[Window.DAYS_30.ordinal()].isIdle(currentBucketId) ? null : features);
+            }
+        }
+    }
+
+    private Object lockFor(String customerId) {
+        return locks[(customerId.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    /**
+     * Record when a customer last used a value, forgetting values unused for longer than they count as known
+     */
+    private static void markUsed(LinkedHashMap<String, Long> lastUsed, String value, long epochSecond) {
+        if (value == null) {
+            return;
+        }
+        // Re-inserted to move it to the tail, so the map stays ordered by last use
+        Long previous = lastUsed.remove(value);
+        lastUsed.put(value, previous != null ? Math.max(previous, epochSecond) : epochSecond);
+
+        // Least recently used first, so expired values are at the head
+        Iterator<Long> oldest = lastUsed.values().iterator();
+        while (oldest.hasNext() && oldest.next() <= epochSecond - KNOWN_VALUE_SECONDS) {
+            oldest.remove();
+        }
+    }
+
+    private static boolean isKnown(Map<String, Long> lastUsed, String value, long nowSecond) {
+        Long usedAt = value != null ? lastUsed.get(value) : null;
+        return usedAt != null && usedAt > nowSecond - KNOWN_VALUE_SECONDS && usedAt <= nowSecond;
+    }
+
+    private static int countKnown(Map<String, Long> lastUsed, long nowSecond) {
+        int known = 0;
+        for (long usedAt : lastUsed.values()) {
+            if (usedAt > nowSecond - KNOWN_VALUE_SECONDS && usedAt <= nowSecond) {
+                known++;
+            }
+        }
+        return known;
+    }
+
+    /**
+     * Rolling windows kept per customer, as a number of buckets of a fixed width
+     */
+    public enum Window {
+        HOUR_1(60, 60),
+        HOURS_24(24, 3600),
+        DAYS_30(30, 86400);
+
+        private final int size;
+        private final long bucketSeconds;
+
+        Window(int size, long bucketSeconds) {
+            this.size = size;
+            this.bucketSeconds = bucketSeconds;
+        }
+    }
+
+    /**
+     * Count, sum and sum of squares of a window
+     */
+    @Getter
+    public static class WindowStats {
+        private final long count;
+        private final double sum;
+        private final double sumOfSquares;
+
+        public WindowStats(long count, double sum, double sumOfSquares) {
+            this.count = count;
+            this.sum = sum;
+            this.sumOfSquares = sumOfSquares;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0.0 : sum / count;
+        }
+
+        public double getVariance() {
+            if (count == 0) {
+                return 0.0;
+            }
+            double mean = getMean();
+            return Math.max(sumOfSquares / count - mean * mean, 0.0);
+        }
+    }
+
+    private static final class CustomerFeatures {
+        private final RollingWindow[] windows = new RollingWindow[Window.values().length];
+        private final LinkedHashMap<String, Long> merchants = lastUsedMap();
+        private final LinkedHashMap<String, Long> devices = lastUsedMap();
+        private final LinkedHashMap<String, Long> ipAddresses = lastUsedMap();
+
+        private CustomerFeatures() {
+            for (Window window : Window.values()) {
+                windows[window.ordinal()] = new RollingWindow(window.size);
+            }
+        }
+
+        /**
+         * Last use of each value, least recently used first, evicting the head beyond the limit
+         */
+        private static LinkedHashMap<String, Long> lastUsedMap() {
+            return new LinkedHashMap<>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_DISTINCT_VALUES;
+                }
+            };
+        }
+    }
+
+    /**
+     * Ring buffer of time buckets backed by primitive arrays
+     */
+    private static final class RollingWindow {
+        private final long[] bucketIds;
+        private final long[] counts;
+        private final double[] sums;
+        private final double[] sumsOfSquares;
+
+        private RollingWindow(int size) {
+            bucketIds = new long[size];
+            counts = new long[size];
+            sums = new double[size];
+            sumsOfSquares = new double[size];
+            Arrays.fill(bucketIds, Long.MIN_VALUE);
+        }
+
+        private void add(long bucketId, double amount) {
+            int index = (int) Math.floorMod(bucketId, (long) bucketIds.length);
+            if (bucketIds[index] != bucketId) {
+                if (bucketIds[index] > bucketId) {
+                    // Older than the window already covers
+                    return;
+                }
+                bucketIds[index] = bucketId;
+                counts[index] = 0;
+                sums[index] = 0.0;
+                sumsOfSquares[index] = 0.0;
+            }
+            counts[index]++;
+            sums[index] += amount;
+            sumsOfSquares[index] += amount * amount;
+        }
+
+        /**
+         * Whether every bucket is older than the window, so nothing recorded counts any more
+         */
+        private boolean isIdle(long currentBucketId) {
+            long oldest = currentBucketId - bucketIds.length;
+            for (long bucketId : bucketIds) {
+                if (bucketId > oldest) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private WindowStats stats(long currentBucketId) {
+            long oldest = currentBucketId - bucketIds.length;
+            long count = 0;
+            double sum = 0.0;
+            double sumOfSquares = 0.0;
+            for (int i = 0; i < bucketIds.length; i++) {
+                if (bucketIds[i] > oldest && bucketIds[i] <= currentBucketId) {
+                    count += counts[i];
+                    sum += sums[i];
+                    sumOfSquares += sumsOfSquares[i];
+                }
+            }
+            return new WindowStats(count, sum, sumOfSquares);
+        }
+    }
+}
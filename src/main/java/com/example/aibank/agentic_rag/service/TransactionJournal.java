@@ -0,0 +1,436 @@
+package com.example.aibank.agentic_rag.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of records in memory-mapped segment files.
+ * A record's offset is its byte position in the journal: segments are named after the offset of
+ * their first byte and a new one is rolled when a record does not fit. Each record is a length,
+ * a CRC32C and the payload; the length is written last, so a record is visible only once complete,
+ * and recovery cuts every segment at its first torn record. Appends are acknowledged once forced to disk, with
+ * forces shared by the records appended within an interval or up to a count (group commit).
+ * Consumers read from their own committed offsets, so they resume after a crash where they left off.
+ */
+@Slf4j
+public class TransactionJournal implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".segment";
+    private static final String OFFSET_SUFFIX = ".offset";
+    // An append is failed rather than left waiting when its record is not forced to disk in time
+    private static final long SYNC_TIMEOUT_MILLIS = 30_000;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int syncEveryRecords;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Object syncMonitor = new Object();
+    private final ScheduledExecutorService flusher;
+
+    // Guarded by appendLock
+    private Segment active;
+    private int unsyncedRecords;
+
+    // Offset after the last complete record, published after the record is written
+    private volatile long endOffset;
+    // Offset up to which records are forced to disk, guarded by syncMonitor
+    private long syncedOffset;
+
+    private TransactionJournal(Path directory, int segmentBytes, int syncEveryRecords, long syncIntervalMillis) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncEveryRecords = syncIntervalMillis > 0 ? Math.max(syncEveryRecords, 1) : 1;
+        if (syncIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                    .name("transaction-journal-sync")
+                    .daemon(true)
+                    .factory());
+            this.flusher.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    /**
+     * Open a journal, creating it if the directory holds none, and recover its end after a crash
+     *
+     * @param directory The directory of the segment and offset files
+     * @param segmentBytes The size of a new segment file
+     * @param syncEveryRecords Force to disk as soon as this many records are waiting
+     * @param syncIntervalMillis Force waiting records at least this often; 0 forces every append
+     * @return The open journal
+     * @throws IOException If the segments cannot be read or created
+     */
+    public static TransactionJournal open(Path directory, int segmentBytes, int syncEveryRecords,
+                                          long syncIntervalMillis) throws IOException {
+        Files.createDirectories(directory);
+        TransactionJournal journal = new TransactionJournal(directory, segmentBytes, syncEveryRecords, syncIntervalMillis);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                journal.segments.put(baseOffset, Segment.map(file, baseOffset, 0));
+            }
+        }
+        if (journal.segments.isEmpty()) {
+            journal.active = journal.createSegment(0);
+            journal.endOffset = 0;
+        } else {
+            // A crash can tear the unsynced tail of a segment that was already rolled, not only of the
+            // last one, and reads stop at the zeroed tail recovery leaves instead of failing its checksum
+            int recovered = 0;
+            for (Segment segment : journal.segments.values()) {
+                recovered = segment.recover();
+            }
+            journal.active = journal.segments.lastEntry().getValue();
+            journal.endOffset = journal.active.baseOffset + recovered;
+        }
+        journal.syncedOffset = journal.endOffset;
+        log.info("Opened transaction journal in {} with {} segments, end offset {}",
+                directory, journal.segments.size(), journal.endOffset);
+        return journal;
+    }
+
+    /**
+     * Append a record and wait until it is forced to disk
+     *
+     * @param payload The record
+     * @return The record's offset
+     * @throws IllegalArgumentException If the record is larger than a segment
+     */
+    public long append(byte[] payload) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Journal record of " + payload.length + " bytes exceeds the segment size");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        long offset;
+        boolean syncNow;
+        appendLock.lock();
+        try {
+            int position = (int) (endOffset - active.baseOffset);
+            if (position + recordBytes > active.capacity) {
+                // The rest of the segment stays zero, which readers take as its end
+                active = createSegment(active.baseOffset + active.capacity);
+                position = 0;
+            }
+            MappedByteBuffer buffer = active.buffer;
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.put(position + HEADER_BYTES, payload);
+            buffer.putInt(position, payload.length);
+            offset = active.baseOffset + position;
+            endOffset = offset + recordBytes;
+            syncNow = ++unsyncedRecords >= syncEveryRecords;
+            if (syncNow) {
+                unsyncedRecords = 0;
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        if (syncNow) {
+            sync();
+        } else {
+            awaitSync(offset + recordBytes);
+        }
+        return offset;
+    }
+
+    /**
+     * Read the records forced to disk from an offset on
+     *
+     * @param offset The offset to read from, normally a consumer's committed offset
+     * @param maxRecords The maximum number of records to read
+     * @return The records in offset order, empty if there are none yet
+     * @throws IllegalStateException If a record fails its checksum
+     */
+    public List<JournalRecord> read(long offset, int maxRecords) {
+        long limit = syncedOffset();
+        List<JournalRecord> records = new ArrayList<>();
+        long position = offset;
+        while (records.size() < maxRecords && position < limit) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(position);
+            if (entry == null) {
+                // Before the oldest segment, which can only follow deleted segments
+                position = segments.firstKey();
+                continue;
+            }
+            Segment segment = entry.getValue();
+            int segmentPosition = (int) (position - segment.baseOffset);
+            int length = segmentPosition + HEADER_BYTES > segment.capacity ? 0 : segment.buffer.getInt(segmentPosition);
+            if (length == 0) {
+                // Rest of a rolled segment
+                position = segment.baseOffset + segment.capacity;
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer.get(segmentPosition + HEADER_BYTES, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.buffer.getInt(segmentPosition + 4)) {
+                throw new IllegalStateException("Corrupt journal record at offset " + position);
+            }
+            long next = position + HEADER_BYTES + length;
+            records.add(new JournalRecord(position, next, payload));
+            position = next;
+        }
+        return records;
+    }
+
+    /**
+     * Wait until records are available after an offset
+     *
+     * @param offset The offset the consumer reads from next
+     * @param timeoutMillis The maximum time to wait
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void awaitRecords(long offset, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (syncMonitor) {
+            long remaining;
+            while (syncedOffset <= offset && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                syncMonitor.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * @param consumer The consumer name
+     * @return The offset the consumer committed last, or the start of the journal
+     * @throws IOException If the offset file cannot be read
+     */
+    public long committedOffset(String consumer) throws IOException {
+        Path file = directory.resolve(consumer + OFFSET_SUFFIX);
+        if (!Files.exists(file)) {
+            return segments.firstKey();
+        }
+        return Long.parseLong(Files.readString(file, StandardCharsets.UTF_8).trim());
+    }
+
+    /**
+     * Durably record that a consumer has processed every record before an offset
+     *
+     * @param consumer The consumer name
+     * @param offset The offset the consumer reads from next
+     * @throws IOException If the offset file cannot be written
+     */
+    public void commitOffset(String consumer, long offset) throws IOException {
+        Path file = directory.resolve(consumer + OFFSET_SUFFIX);
+        Path temporary = directory.resolve(consumer + OFFSET_SUFFIX + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(offset).getBytes(StandardCharsets.UTF_8)));
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the segments that hold only records before an offset, e.g. the lowest committed offset
+     *
+     * @param offset The offset before which records are no longer needed
+     * @return The number of segments deleted
+     * @throws IOException If a segment cannot be deleted
+     */
+    public int deleteBefore(long offset) throws IOException {
+        int deleted = 0;
+        for (Segment segment : segments.headMap(offset).values()) {
+            if (segment == active || segment.baseOffset + segment.capacity > Math.min(offset, syncedOffset())) {
+                break;
+            }
+            segments.remove(segment.baseOffset);
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * @return The offset after the last record forced to disk
+     */
+    public long syncedOffset() {
+        synchronized (syncMonitor) {
+            return syncedOffset;
+        }
+    }
+
+    /**
+     * @return The number of segment files
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        sync();
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Force every record appended so far to disk and wake the appenders and consumers waiting on it
+     */
+    private void sync() {
+        synchronized (syncMonitor) {
+            long target = endOffset;
+            if (target <= syncedOffset) {
+                return;
+            }
+            Long from = segments.floorKey(syncedOffset);
+            for (Segment segment : (from != null ? segments.tailMap(from) : segments).values()) {
+                segment.buffer.force();
+            }
+            syncedOffset = target;
+            syncMonitor.notifyAll();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            log.error("Failed to sync transaction journal in {}", directory, e);
+        }
+    }
+
+    private void awaitSync(long offset) {
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT_MILLIS;
+        synchronized (syncMonitor) {
+            long remaining;
+            while (syncedOffset < offset) {
+                if ((remaining = deadline - System.currentTimeMillis()) <= 0) {
+                    throw new IllegalStateException("Timed out waiting for the transaction journal to sync offset " + offset);
+                }
+                try {
+                    syncMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the transaction journal to sync", e);
+                }
+            }
+        }
+    }
+
+    private Segment createSegment(long baseOffset) {
+        Path file = directory.resolve(String.format(Locale.ROOT, "%020d%s", baseOffset, SEGMENT_SUFFIX));
+        try {
+            Segment segment = Segment.map(file, baseOffset, segmentBytes);
+            segments.put(baseOffset, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment " + file, e);
+        }
+    }
+
+    /**
+     * A segment file mapped into memory
+     */
+    private static final class Segment {
+        private final Path file;
+        private final long baseOffset;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+
+        private Segment(Path file, long baseOffset, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        /**
+         * @param size The size of a new file, or 0 to map an existing file at its size
+         */
+        private static Segment map(Path file, long baseOffset, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long mappedSize = size > 0 ? size : channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+            return new Segment(file, baseOffset, channel, buffer);
+        }
+
+        /**
+         * Find the end of the last complete record and clear anything after it
+         *
+         * @return The position after the last complete record
+         */
+        private int recover() {
+            int position = 0;
+            while (position + HEADER_BYTES <= capacity) {
+                int length = buffer.getInt(position);
+                if (length <= 0 || position + HEADER_BYTES + length > capacity) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(position + HEADER_BYTES, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    break;
+                }
+                position += HEADER_BYTES + length;
+            }
+            if (position + HEADER_BYTES <= capacity && buffer.getInt(position) != 0) {
+                log.warn("Discarding torn journal record at offset {}", baseOffset + position);
+                for (int i = position; i < capacity; i++) {
+                    buffer.put(i, (byte) 0);
+                }
+                buffer.force();
+            }
+            return position;
+        }
+    }
+
+    /**
+     * A record read from the journal
+     */
+    @Getter
+    public static class JournalRecord {
+        private final long offset;
+        // Offset to commit once this record is processed
+        private final long nextOffset;
+        private final byte[] payload;
+
+        public JournalRecord(long offset, long nextOffset, byte[] payload) {
+            this.offset = offset;
+            this.nextOffset = nextOffset;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers incoming transactions in a {@link TransactionJournal} and scores them at the pipeline's own pace.
+ * Appending only waits for the disk, so ingestion keeps accepting transactions while the AI model or
+ * the database is slow. A single consumer reads batches from its committed offset, scores each batch
+ * concurrently through the idempotent pipeline and commits the batch's end; after a crash it replays
+ * from the last commit and the idempotency keys drop the duplicates. While the fraud circuit breaker
+ * is open the consumer stops reading, and journaled transactions are never given the fallback score:
+ * a failed transaction is retried with its batch. One that fails {@code max-attempts} times is parked
+ * in a dead-letter journal, so it does not hold back the transactions behind it.
+ */
+@Service
+@Slf4j
+public class TransactionJournalService {
+
+    private static final String CONSUMER = "fraud-scoring";
+    private static final String CIRCUIT_BREAKER = "fraudDetection";
+    private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+    private final FraudIdempotencyService fraudIdempotencyService;
+    private final ObjectMapper objectMapper;
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    @Getter
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentBytes;
+    private final int syncEveryRecords;
+    private final Duration syncInterval;
+    private final int batchSize;
+    private final Duration retryDelay;
+    private final int maxAttempts;
+
+    private final AtomicLong committedOffset = new AtomicLong();
+    private final Counter appendedCounter;
+    private final Counter scoredCounter;
+    private final Counter skippedCounter;
+    private final Counter parkedCounter;
+    private final Timer appendTimer;
+    private final ExecutorService scoringExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // Failed scoring attempts of uncommitted records, by offset; reset on restart
+    private final Map<Long, Integer> attempts = new ConcurrentHashMap<>();
+
+    private volatile TransactionJournal journal;
+    private TransactionJournal deadLetters;
+    private volatile boolean running;
+    private Thread consumer;
+
+    public TransactionJournalService(FraudIdempotencyService fraudIdempotencyService,
+                                     ObjectMapper objectMapper,
+                                     CircuitBreakerRegistry circuitBreakerRegistry,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${aibank.fraud.journal.enabled:false}") boolean enabled,
+                                     @Value("${aibank.fraud.journal.directory:journal}") Path directory,
+                                     @Value("${aibank.fraud.journal.segment-bytes:67108864}") int segmentBytes,
+                                     @Value("${aibank.fraud.journal.fsync-every-records:64}") int syncEveryRecords,
+                                     @Value("${aibank.fraud.journal.fsync-interval:10ms}") Duration syncInterval,
+                                     @Value("${aibank.fraud.journal.batch-size:50}") int batchSize,
+                                     @Value("${aibank.fraud.journal.retry-delay:5s}") Duration retryDelay,
+                                     @Value("${aibank.fraud.journal.max-attempts:5}") int maxAttempts) {
+        this.fraudIdempotencyService = fraudIdempotencyService;
+        this.objectMapper = objectMapper;
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncEveryRecords = syncEveryRecords;
+        this.syncInterval = syncInterval;
+        this.batchSize = batchSize;
+        this.retryDelay = retryDelay;
+        this.maxAttempts = maxAttempts;
+
+        this.appendedCounter = recordCounter(meterRegistry, "appended");
+        this.scoredCounter = recordCounter(meterRegistry, "scored");
+        this.skippedCounter = recordCounter(meterRegistry, "skipped");
+        this.parkedCounter = recordCounter(meterRegistry, "parked");
+        this.appendTimer = Timer.builder("aibank.fraud.journal.append")
+                .description("Time to append a transaction to the journal, including the wait for it to reach disk")
+                .register(meterRegistry);
+        Gauge.builder("aibank.fraud.journal.lag", this, TransactionJournalService::lagBytes)
+                .description("Bytes of journaled transactions not yet scored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open the journal and start the consumer from its committed offset
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            journal = TransactionJournal.open(directory, segmentBytes, syncEveryRecords, syncInterval.toMillis());
+            committedOffset.set(journal.committedOffset(CONSUMER));
+            deadLetters = TransactionJournal.open(directory.resolve(DEAD_LETTER_DIRECTORY), segmentBytes, 1, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open transaction journal in " + directory, e);
+        }
+        running = true;
+        consumer = Thread.ofVirtual().name("transaction-journal-consumer").start(this::consume);
+        log.info("Transaction journal consumer started at offset {}", committedOffset.get());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException, InterruptedException {
+        if (journal == null) {
+            return;
+        }
+        running = false;
+        consumer.interrupt();
+        consumer.join(TimeUnit.SECONDS.toMillis(30));
+        scoringExecutor.shutdown();
+        journal.close();
+        deadLetters.close();
+    }
+
+    /**
+     * Durably append a transaction for scoring by the consumer
+     *
+     * @param transaction The transaction; one without an ID is given one, so that replays are deduplicated
+     * @param idempotencyKey The client's idempotency key, or null to use the transaction ID
+     * @return The journal offset of the transaction
+     * @throws IllegalStateException If the journal is not enabled
+     */
+    public long append(Transaction transaction, String idempotencyKey) {
+        if (journal == null) {
+            throw new IllegalStateException("Transaction journal is not enabled");
+        }
+        if (transaction.getId() == null) {
+            transaction.setId(UUID.randomUUID().toString());
+        }
+        try {
+            byte[] payload = objectMapper.writeValueAsBytes(new JournalEntry(idempotencyKey, transaction));
+            long started = System.nanoTime();
+            long offset = journal.append(payload);
+            appendTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            appendedCounter.increment();
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize transaction " + transaction.getId(), e);
+        }
+    }
+
+    /**
+     * @return Bytes of journaled transactions the consumer has not committed
+     */
+    public long lagBytes() {
+        TransactionJournal current = journal;
+        return current == null ? 0 : Math.max(current.syncedOffset() - committedOffset.get(), 0);
+    }
+
+    /**
+     * @return The journal's state and the consumer's position
+     */
+    public JournalStatus getStatus() {
+        TransactionJournal current = journal;
+        if (current == null) {
+            return new JournalStatus(false, 0, 0, 0, 0);
+        }
+        return new JournalStatus(true, current.syncedOffset(), committedOffset.get(), lagBytes(), current.segmentCount());
+    }
+
+    private void consume() {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER);
+        while (running) {
+            try {
+                if (!circuitBreaker.tryAcquirePermission()) {
+                    // Downstream is failing: leave the transactions in the journal rather than score them with the fallback
+                    Thread.sleep(retryDelay.toMillis());
+                    continue;
+                }
+                // Only a probe; the scoring calls acquire their own permissions
+                circuitBreaker.releasePermission();
+
+                long offset = committedOffset.get();
+                List<TransactionJournal.JournalRecord> records = journal.read(offset, batchSize);
+                if (records.isEmpty()) {
+                    journal.awaitRecords(offset, 1000);
+                    continue;
+                }
+                if (scoreBatch(records)) {
+                    long next = records.get(records.size() - 1).getNextOffset();
+                    journal.commitOffset(CONSUMER, next);
+                    committedOffset.set(next);
+                    journal.deleteBefore(next);
+                    attempts.keySet().removeIf(recordOffset -> recordOffset < next);
+                } else {
+                    Thread.sleep(retryDelay.toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                log.error("Transaction journal consumer failed at offset {}, retrying", committedOffset.get(), e);
+                try {
+                    Thread.sleep(retryDelay.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Score a batch concurrently
+     *
+     * @return True if every record was scored, can never be or was parked, false to retry the batch
+     */
+    private boolean scoreBatch(List<TransactionJournal.JournalRecord> records) throws InterruptedException {
+        List<TransactionJournal.JournalRecord> submitted = new ArrayList<>(records.size());
+        List<Future<?>> scoring = new ArrayList<>(records.size());
+        for (TransactionJournal.JournalRecord record : records) {
+            JournalEntry entry;
+            try {
+                entry = objectMapper.readValue(record.getPayload(), JournalEntry.class);
+            } catch (IOException e) {
+                log.error("Skipping unreadable journal record at offset {}", record.getOffset(), e);
+                skippedCounter.increment();
+                continue;
+            }
+            submitted.add(record);
+            scoring.add(scoringExecutor.submit(() -> score(record, entry)));
+        }
+
+        boolean complete = true;
+        for (int i = 0; i < scoring.size(); i++) {
+            try {
+                scoring.get(i).get();
+            } catch (ExecutionException e) {
+                // Rejected by the open circuit breaker: not the transaction's fault, so not an attempt
+                if (e.getCause() instanceof CallNotPermittedException
+                        || attempts.merge(submitted.get(i).getOffset(), 1, Integer::sum) < maxAttempts) {
+                    complete = false;
+                } else {
+                    park(submitted.get(i));
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Move a record that keeps failing to the dead-letter journal, for inspection and replay
+     */
+    private void park(TransactionJournal.JournalRecord record) {
+        deadLetters.append(record.getPayload());
+        attempts.remove(record.getOffset());
+        parkedCounter.increment();
+        log.error("Parked journaled transaction at offset {} in {} after {} failed attempts",
+                record.getOffset(), directory.resolve(DEAD_LETTER_DIRECTORY), maxAttempts);
+    }
+
+    private void score(TransactionJournal.JournalRecord record, JournalEntry entry) {
+        try {
+            // Without the fallback a failure is retried here instead of being stored as a manual review
+            fraudIdempotencyService.process(entry.getIdempotencyKey(), entry.getTransaction(), false);
+            scoredCounter.increment();
+        } catch (FraudIdempotencyService.IdempotencyConflictException e) {
+            // Retrying will not change the outcome
+            log.warn("Skipping journaled transaction {} at offset {}: {}",
+                    entry.getTransaction().getId(), record.getOffset(), e.getMessage());
+            skippedCounter.increment();
+        } catch (CallNotPermittedException e) {
+            log.debug("Circuit breaker open, journaled transaction {} at offset {} waits",
+                    entry.getTransaction().getId(), record.getOffset());
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("Failed to score journaled transaction {} at offset {}",
+                    entry.getTransaction().getId(), record.getOffset(), e);
+            throw e;
+        }
+    }
+
+    private static Counter recordCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("aibank.fraud.journal.records")
+                .description("Journaled transactions, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A journaled transaction with the idempotency key it was submitted with
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class JournalEntry {
+        private String idempotencyKey;
+        private Transaction transaction;
+    }
+
+    /**
+     * State of the journal and its consumer
+     */
+    @Getter
+    public static class JournalStatus {
+        private final boolean enabled;
+        // Offset after the last transaction on disk
+        private final long endOffset;
+        private final long committedOffset;
+        private final long lagBytes;
+        private final int segments;
+
+        public JournalStatus(boolean enabled, long endOffset, long committedOffset, long lagBytes, int segments) {
+            this.enabled = enabled;
+            this.endOffset = endOffset;
+            this.committedOffset = committedOffset;
+            this.lagBytes = lagBytes;
+            this.segments = segments;
+        }
+    }
+}
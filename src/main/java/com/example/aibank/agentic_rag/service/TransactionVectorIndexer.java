@@ -0,0 +1,243 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
+import com.example.aibank.agentic_rag.model.VectorIndexOutbox;
+import com.example.aibank.agentic_rag.repository.TransactionRepository;
+import com.example.aibank.agentic_rag.repository.VectorIndexOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind indexer draining the vector index outbox into the transaction vector store.
+ * A scheduled poller claims ready outbox entries into a bounded queue and stops claiming while the
+ * queue is full. Claims lock rows with SKIP LOCKED and lease them for {@code aibank.vector-index.claim-lease},
+ * so each entry is indexed by one node; entries of a node that stops are claimed again when their lease expires. a writer thread embeds and stores them in batches, retrying failed entries with
+ * backoff and dead-lettering them after the configured number of attempts.
+ */
+@Component
+@Slf4j
+public class TransactionVectorIndexer {
+
+    private final VectorIndexOutboxRepository outboxRepository;
+    private final TransactionRepository transactionRepository;
+    private final VectorStore transactionVectorStore;
+
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration claimLease;
+
+    private final BlockingQueue<VectorIndexOutbox> queue;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLong pendingCount = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+
+    private final Timer batchTimer;
+    private final Counter indexedCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetteredCounter;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public TransactionVectorIndexer(VectorIndexOutboxRepository outboxRepository,
+                                    TransactionRepository transactionRepository,
+                                    VectorStore transactionVectorStore,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${aibank.vector-index.queue-capacity:1000}") int queueCapacity,
+                                    @Value("${aibank.vector-index.batch-size:100}") int batchSize,
+                                    @Value("${aibank.vector-index.max-attempts:5}") int maxAttempts,
+                                    @Value("${aibank.vector-index.retry-backoff:30s}") Duration retryBackoff,
+                                    @Value("${aibank.vector-index.claim-lease:5m}") Duration claimLease) {
+        this.outboxRepository = outboxRepository;
+        this.transactionRepository = transactionRepository;
+        this.transactionVectorStore = transactionVectorStore;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.claimLease = claimLease;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("aibank.vector_index.queue.size", queue, BlockingQueue::size)
+                .description("Outbox entries claimed and waiting for the writer")
+                .register(meterRegistry);
+        Gauge.builder("aibank.vector_index.outbox.pending", pendingCount, AtomicLong::get)
+                .description("Outbox entries not yet indexed")
+                .register(meterRegistry);
+        Gauge.builder("aibank.vector_index.lag.seconds", lagSeconds, AtomicLong::get)
+                .description("Age of the oldest outbox entry not yet indexed")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("aibank.vector_index.batch")
+                .description("Time spent embedding and writing one batch to the vector store")
+                .register(meterRegistry);
+        this.indexedCounter = outcomeCounter(meterRegistry, "indexed");
+        this.retriedCounter = outcomeCounter(meterRegistry, "retried");
+        this.deadLetteredCounter = outcomeCounter(meterRegistry, "dead_lettered");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("vector-indexer").daemon(true).start(this::drain);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Claim ready outbox entries into the queue, as many as it has room for
+     */
+    @Scheduled(fixedDelayString = "${aibank.vector-index.poll-interval-ms:1000}")
+    public void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        pendingCount.set(outboxRepository.countByStatus(VectorIndexOutbox.Status.PENDING));
+        LocalDateTime oldest = outboxRepository.findOldestCreatedAt(VectorIndexOutbox.Status.PENDING);
+        lagSeconds.set(oldest == null ? 0 : Duration.between(oldest, now).toSeconds());
+
+        int capacity = queue.remainingCapacity();
+        if (capacity == 0) {
+            // Backpressure: leave entries in the outbox until the writer catches up
+            log.debug("Vector index queue full, skipping poll");
+            return;
+        }
+
+        List<VectorIndexOutbox> claimed = outboxRepository.claimReady(now, now.plus(claimLease), capacity);
+        for (VectorIndexOutbox entry : claimed) {
+            // An entry whose lease expired while still queued here is already on its way
+            if (inFlight.add(entry.getId()) && !queue.offer(entry)) {
+                inFlight.remove(entry.getId());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Move all dead-lettered outbox entries back to pending
+     *
+     * @return The number of entries requeued
+     */
+    public int requeueDeadLetters() {
+        int requeued = outboxRepository.updateStatus(
+                VectorIndexOutbox.Status.DEAD_LETTER, VectorIndexOutbox.Status.PENDING, LocalDateTime.now());
+        log.info("Requeued {} dead-lettered vector index entries", requeued);
+        return requeued;
+    }
+
+    /**
+     * Count the outbox entries that exhausted their retries
+     *
+     * @return The number of dead-lettered entries
+     */
+    public long countDeadLetters() {
+        return outboxRepository.countByStatus(VectorIndexOutbox.Status.DEAD_LETTER);
+    }
+
+    private void drain() {
+        List<VectorIndexOutbox> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                VectorIndexOutbox first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                batchTimer.record(() -> indexBatch(batch));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error in vector indexer", e);
+            } finally {
+                batch.forEach(entry -> inFlight.remove(entry.getId()));
+                batch.clear();
+            }
+        }
+    }
+
+    private void indexBatch(List<VectorIndexOutbox> batch) {
+        List<String> transactionIds = batch.stream().map(VectorIndexOutbox::getTransactionId).toList();
+        Map<String, Transaction> transactions = transactionRepository.findAllById(transactionIds).stream()
+                .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+
+        List<Document> documents = transactionIds.stream()
+                .distinct()
+                .map(transactions::get)
+                .filter(transaction -> transaction != null)
+                .map(TransactionDocument::toDocument)
+                .toList();
+
+        try {
+            if (!documents.isEmpty()) {
+                transactionVectorStore.add(documents);
+            }
+            outboxRepository.deleteAllByIdInBatch(batch.stream().map(VectorIndexOutbox::getId).toList());
+            indexedCounter.increment(documents.size());
+        } catch (RuntimeException e) {
+            log.warn("Failed to index batch of {} transactions: {}", batch.size(), e.getMessage());
+            recordFailure(batch, e);
+        }
+    }
+
+    private void recordFailure(List<VectorIndexOutbox> batch, RuntimeException exception) {
+        LocalDateTime now = LocalDateTime.now();
+        for (VectorIndexOutbox entry : batch) {
+            entry.setAttempts(entry.getAttempts() + 1);
+            entry.setLastError(truncate(exception.getMessage()));
+            if (entry.getAttempts() >= maxAttempts) {
+                entry.setStatus(VectorIndexOutbox.Status.DEAD_LETTER);
+                deadLetteredCounter.increment();
+                log.error("Dead-lettering vector index entry for transaction {} after {} attempts",
+                        entry.getTransactionId(), entry.getAttempts());
+            } else {
+                // Exponential backoff between attempts
+                entry.setNextAttemptAt(now.plus(retryBackoff.multipliedBy(1L << (entry.getAttempts() - 1))));
+                retriedCounter.increment();
+            }
+        }
+        outboxRepository.saveAll(batch);
+    }
+
+    private static String truncate(String message) {
+        if (message == null || message.length() <= 2000) {
+            return message;
+        }
+        return message.substring(0, 2000);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("aibank.vector_index.entries")
+                .description("Vector index outbox entries processed, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
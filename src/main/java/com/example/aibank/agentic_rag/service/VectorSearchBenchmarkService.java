@@ -0,0 +1,190 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.config.QuantizedVectorSearch;
+import com.example.aibank.agentic_rag.config.VectorStoreConfig;
+import com.example.aibank.agentic_rag.model.Transaction;
+import com.example.aibank.agentic_rag.model.TransactionDocument;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recall and latency of the similarity search modes on {@code transaction_vectors}.
+ * Queries are the embedded query texts of sampled transactions, as fraud analysis issues them, and
+ * the transaction's own document is left out of every result, so no query is answered by its own
+ * stored vector. The exact sequential-scan result is the ground truth. Each mode is timed through
+ * its own HNSW index, which must already exist: building one on the live table takes minutes, so a
+ * mode without a valid index is reported as skipped.
+ */
+@Service
+@Slf4j
+public class VectorSearchBenchmarkService {
+
+    private static final String TABLE_NAME = "transaction_vectors";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final QuantizedVectorSearch search;
+
+    public VectorSearchBenchmarkService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, EmbeddingModel embeddingModel) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingModel = embeddingModel;
+        this.search = new QuantizedVectorSearch(jdbcTemplate, objectMapper, TABLE_NAME, VectorStoreConfig.DIMENSIONS);
+    }
+
+    /**
+     * Run the benchmark
+     *
+     * @param queries The number of sampled transactions to use as queries
+     * @param topK The number of neighbours retrieved per query
+     * @param oversample Candidates fetched per returned document in the quantized modes
+     * @return Recall at topK and latency percentiles per mode, and the size of each index
+     */
+    public BenchmarkReport run(int queries, int topK, int oversample) {
+        List<Transaction> transactions = jdbcTemplate.query("SELECT * FROM transactions ORDER BY random() LIMIT ?",
+                new BeanPropertyRowMapper<>(Transaction.class), queries);
+        List<float[]> samples = transactions.isEmpty()
+                ? List.of()
+                : embeddingModel.embed(transactions.stream().map(TransactionDocument::toQueryText).toList());
+        log.info("Benchmarking vector search with {} queries, top {}, oversample {}", samples.size(), topK, oversample);
+
+        List<Set<String>> groundTruth = new ArrayList<>(samples.size());
+        for (int i = 0; i < samples.size(); i++) {
+            groundTruth.add(neighbours(transactions.get(i), samples.get(i), topK, QuantizedVectorSearch.Mode.EXACT, 1));
+        }
+
+        List<ModeResult> results = new ArrayList<>();
+        for (QuantizedVectorSearch.Mode mode : QuantizedVectorSearch.Mode.values()) {
+            if (mode == QuantizedVectorSearch.Mode.EXACT) {
+                continue;
+            }
+            // Without its index the mode would be a sequential scan and its latency meaningless
+            if (!search.hasIndex(mode)) {
+                log.info("Skipping {} in the benchmark: {} has no valid index for it", mode, TABLE_NAME);
+                results.add(new ModeResult(mode, true, 0.0, 0.0, 0.0, 0.0));
+                continue;
+            }
+
+            long[] latencies = new long[samples.size()];
+            double recallSum = 0.0;
+            for (int i = 0; i < samples.size(); i++) {
+                long start = System.nanoTime();
+                Set<String> found = neighbours(transactions.get(i), samples.get(i), topK, mode, oversample);
+                latencies[i] = System.nanoTime() - start;
+                recallSum += recall(groundTruth.get(i), found);
+            }
+            Arrays.sort(latencies);
+            results.add(new ModeResult(mode, false,
+                    samples.isEmpty() ? 0.0 : recallSum / samples.size(),
+                    percentileMillis(latencies, 0.5),
+                    percentileMillis(latencies, 0.95),
+                    percentileMillis(latencies, 0.99)));
+        }
+
+        return new BenchmarkReport(samples.size(), topK, oversample, results, indexSizes());
+    }
+
+    /**
+     * IDs of a transaction's nearest documents other than its own, which a live fraud check would not find yet
+     */
+    private Set<String> neighbours(Transaction transaction, float[] query, int topK,
+                                   QuantizedVectorSearch.Mode mode, int oversample) {
+        Set<String> ids = new HashSet<>();
+        for (Document document : search.search(query, topK + 1, -1.0, null, mode, oversample)) {
+            if (!document.getId().equals(transaction.getId()) && ids.size() < topK) {
+                ids.add(document.getId());
+            }
+        }
+        return ids;
+    }
+
+    private Map<String, Long> indexSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT indexname, pg_relation_size(quote_ident(indexname)::regclass) FROM pg_indexes "
+                        + "WHERE tablename = ? ORDER BY indexname",
+                resultSet -> {
+                    sizes.put(resultSet.getString(1), resultSet.getLong(2));
+                }, TABLE_NAME);
+        return sizes;
+    }
+
+    private static double recall(Set<String> expected, Set<String> found) {
+        if (expected.isEmpty()) {
+            return 1.0;
+        }
+        int hits = 0;
+        for (String id : found) {
+            if (expected.contains(id)) {
+                hits++;
+            }
+        }
+        return (double) hits / expected.size();
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(index, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Benchmark results for all modes
+     */
+    @Getter
+    public static class BenchmarkReport {
+        private final int queries;
+        private final int topK;
+        private final int oversample;
+        private final List<ModeResult> modes;
+        private final Map<String, Long> indexSizeBytes;
+
+        public BenchmarkReport(int queries, int topK, int oversample, List<ModeResult> modes,
+                               Map<String, Long> indexSizeBytes) {
+            this.queries = queries;
+            this.topK = topK;
+            this.oversample = oversample;
+            this.modes = modes;
+            this.indexSizeBytes = indexSizeBytes;
+        }
+    }
+
+    /**
+     * Recall and latency of one search mode
+     */
+    @Getter
+    public static class ModeResult {
+        private final QuantizedVectorSearch.Mode mode;
+        // The mode's index does not exist, so it was not measured
+        private final boolean skipped;
+        private final double recall;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+
+        public ModeResult(QuantizedVectorSearch.Mode mode, boolean skipped, double recall,
+                          double p50Millis, double p95Millis, double p99Millis) {
+            this.mode = mode;
+            this.skipped = skipped;
+            this.recall = recall;
+            this.p50Millis = p50Millis;
+            this.p95Millis = p95Millis;
+            this.p99Millis = p99Millis;
+        }
+    }
+}
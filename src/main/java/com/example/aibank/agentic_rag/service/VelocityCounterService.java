@@ -0,0 +1,230 @@
+package com.example.aibank.agentic_rag.service;
+
+import com.example.aibank.agentic_rag.model.Transaction;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sliding-window transaction counters keyed by IP address, device and account.
+ * Counts are kept in per-key ring buffers of one-minute buckets and read locally; every increment is
+ * also applied in Redis through a Lua script whose returned buckets are merged back, so each node
+ * sees transactions ingested by the others. A key this node has not counted yet is read from Redis
+ * and its local counter seeded from the cluster's buckets.
+ */
+@Service
+@Slf4j
+public class VelocityCounterService {
+
+    private static final int WINDOW_MINUTES = 60;
+    private static final String KEY_PREFIX = "velocity:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisScript<List<String>> incrementScript;
+    private final boolean redisSyncEnabled;
+    private final ThreadPoolExecutor redisExecutor;
+
+    private final ConcurrentHashMap<String, SlidingWindowCounter> counters = new ConcurrentHashMap<>();
+
+    public VelocityCounterService(StringRedisTemplate redisTemplate,
+                                  @Value("${aibank.fraud.velocity.redis-sync:true}") boolean redisSyncEnabled) {
+        this.redisTemplate = redisTemplate;
+        this.incrementScript = listScript(new ClassPathResource("scripts/velocity_increment.lua"));
+        this.redisSyncEnabled = redisSyncEnabled;
+        // Redis sync is best effort: drop the oldest pending update rather than slow down ingestion
+        this.redisExecutor = new ThreadPoolExecutor(2, 2, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(10000), new ThreadPoolExecutor.DiscardOldestPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        redisExecutor.shutdown();
+    }
+
+    /**
+     * Record a transaction against its IP address, device and account counters
+     *
+     * @param transaction The ingested transaction
+     */
+    public void record(Transaction transaction) {
+        long minute = currentMinute();
+        increment(Dimension.IP, transaction.getIpAddress(), minute);
+        increment(Dimension.DEVICE, transaction.getDeviceId(), minute);
+        increment(Dimension.ACCOUNT, transaction.getAccountId(), minute);
+    }
+
+    /**
+     * Count transactions seen for a key within a window
+     *
+     * @param dimension The kind of key
+     * @param value The IP address, device ID or account ID
+     * @param window The window to count over, at most one hour
+     * @return The number of transactions in the window, 0 for a null key or one unknown to the cluster
+     */
+    public long count(Dimension dimension, String value, Duration window) {
+        if (value == null) {
+            return 0;
+        }
+        String key = key(dimension, value);
+        SlidingWindowCounter counter = counters.get(key);
+        if (counter == null) {
+            counter = loadFromRedis(key);
+            if (counter == null) {
+                return 0;
+            }
+        }
+        int minutes = (int) Math.min(Math.max(window.toMinutes(), 1), WINDOW_MINUTES);
+        return counter.count(currentMinute(), minutes);
+    }
+
+    /**
+     * Drop counters with no transaction inside the window
+     */
+    @Scheduled(fixedRate = 300000) // Run every 5 minutes
+    public void evictIdleCounters() {
+        long oldest = currentMinute() - WINDOW_MINUTES;
+        counters.entrySet().removeIf(entry -> entry.getValue().lastBucket() <= oldest);
+    }
+
+    private void increment(Dimension dimension, String value, long minute) {
+        if (value == null) {
+            return;
+        }
+        String key = key(dimension, value);
+        SlidingWindowCounter counter = counters.computeIfAbsent(key, k -> new SlidingWindowCounter(WINDOW_MINUTES));
+        counter.increment(minute);
+
+        if (redisSyncEnabled) {
+            redisExecutor.execute(() -> syncWithRedis(key, counter, minute));
+        }
+    }
+
+    private void syncWithRedis(String key, SlidingWindowCounter counter, long minute) {
+        try {
+            List<String> buckets = redisTemplate.execute(incrementScript, List.of(KEY_PREFIX + key),
+                    Long.toString(minute), Integer.toString(WINDOW_MINUTES),
+                    Long.toString(TimeUnit.MINUTES.toSeconds(WINDOW_MINUTES + 1)));
+            if (buckets == null) {
+                return;
+            }
+            for (int i = 0; i + 1 < buckets.size(); i += 2) {
+                counter.mergeBucket(Long.parseLong(buckets.get(i)), Long.parseLong(buckets.get(i + 1)));
+            }
+        } catch (RuntimeException e) {
+            log.debug("Velocity counter sync failed for {}: {}", key, e.getMessage());
+        }
+    }
+
+    private SlidingWindowCounter loadFromRedis(String key) {
+        if (!redisSyncEnabled) {
+            return null;
+        }
+        Map<String, String> buckets;
+        try {
+            buckets = redisTemplate.<String, String>opsForHash().entries(KEY_PREFIX + key);
+        } catch (RuntimeException e) {
+            log.debug("Velocity counter read failed for {}: {}", key, e.getMessage());
+            return null;
+        }
+        if (buckets == null || buckets.isEmpty()) {
+            return null;
+        }
+        SlidingWindowCounter counter = counters.computeIfAbsent(key, k -> new SlidingWindowCounter(WINDOW_MINUTES));
+        buckets.forEach((bucketId, count) -> counter.mergeBucket(Long.parseLong(bucketId), Long.parseLong(count)));
+        return counter;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<List<String>> listScript(ClassPathResource script) {
+        // The script returns a flat list of bucket ids and counts, deserialized as strings by the template
+        return (RedisScript<List<String>>) (RedisScript<?>) RedisScript.of(script, List.class);
+    }
+
+    private static String key(Dimension dimension, String value) {
+        return dimension.name().toLowerCase(Locale.ROOT) + ":" + value;
+    }
+
+    private static long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+    }
+
+    /**
+     * Kinds of key a velocity counter can be kept for
+     */
+    public enum Dimension {
+        IP,
+        DEVICE,
+        ACCOUNT
+    }
+
+    /**
+     * Ring buffer of per-minute counts
+     */
+    private static final class SlidingWindowCounter {
+        private final long[] bucketIds;
+        private final long[] counts;
+
+        private SlidingWindowCounter(int size) {
+            bucketIds = new long[size];
+            counts = new long[size];
+            Arrays.fill(bucketIds, Long.MIN_VALUE);
+        }
+
+        private synchronized void increment(long bucketId) {
+            int index = slot(bucketId);
+            if (bucketIds[index] != bucketId) {
+                bucketIds[index] = bucketId;
+                counts[index] = 0;
+            }
+            counts[index]++;
+        }
+
+        private synchronized void mergeBucket(long bucketId, long clusterCount) {
+            int index = slot(bucketId);
+            if (bucketIds[index] == bucketId) {
+                counts[index] = Math.max(counts[index], clusterCount);
+            } else if (bucketIds[index] < bucketId) {
+                bucketIds[index] = bucketId;
+                counts[index] = clusterCount;
+            }
+        }
+
+        private synchronized long count(long currentBucketId, int buckets) {
+            long oldest = currentBucketId - buckets;
+            long total = 0;
+            for (int i = 0; i < bucketIds.length; i++) {
+                if (bucketIds[i] > oldest && bucketIds[i] <= currentBucketId) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+
+        private synchronized long lastBucket() {
+            long last = Long.MIN_VALUE;
+            for (long bucketId : bucketIds) {
+                last = Math.max(last, bucketId);
+            }
+            return last;
+        }
+
+        private int slot(long bucketId) {
+            return (int) Math.floorMod(bucketId, (long) bucketIds.length);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.aibank.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.document.MetadataMode;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
@@ -8,10 +9,16 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.ai.openai.api.OpenAiApi;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
 
 @Configuration
 public class AiConfig {
 
+    private static final String EMBEDDING_MODEL = "text-embedding-ada-002";
+
     @Value("${spring.ai.openai.api-key}")
     private String openAiApiKey;
 
@@ -21,15 +28,31 @@ public class AiConfig {
     }
 
     @Bean
-    public OpenAiEmbeddingModel embeddingModel(){
+    public OpenAiEmbeddingModel openAiEmbeddingModel(){
         var openAiApi = new OpenAiApi(openAiApiKey);
         return new OpenAiEmbeddingModel(
                 openAiApi,
                 MetadataMode.EMBED,
                 OpenAiEmbeddingOptions.builder()
-                        .model("text-embedding-ada-002")
+                        .model(EMBEDDING_MODEL)
                         .user("user-6")
                         .build(),
                 RetryUtils.DEFAULT_RETRY_TEMPLATE);
     }
+
+    @Bean
+    @Primary
+    public CachingEmbeddingModel embeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                RedisTemplate<String, byte[]> embeddingRedisTemplate,
+                                                MeterRegistry meterRegistry,
+                                                @Value("${aibank.embedding-cache.max-entries:10000}") int maxEntries,
+                                                @Value("${aibank.embedding-cache.redis-ttl:7d}") Duration redisTtl) {
+        return new CachingEmbeddingModel(
+                openAiEmbeddingModel,
+                EMBEDDING_MODEL,
+                embeddingRedisTemplate,
+                redisTtl,
+                maxEntries,
+                meterRegistry);
+    }
 }
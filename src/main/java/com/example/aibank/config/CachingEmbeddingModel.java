@@ -0,0 +1,213 @@
+package com.example.aibank.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedding model decorator with a two-tier cache keyed by model name and a hash of the text.
+ * The first tier is an in-process LRU of embeddings, the second is Redis; only texts missing
+ * from both are sent to the delegate model, in a single request. Callers receive copies of the
+ * cached arrays, so modifying a returned embedding cannot corrupt the cache.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private static final String KEY_PREFIX = "embedding:";
+
+    private final EmbeddingModel delegate;
+    private final String defaultModelName;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+    private final Duration redisTtl;
+    private final Map<String, float[]> localCache;
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate,
+                                 String defaultModelName,
+                                 RedisTemplate<String, byte[]> redisTemplate,
+                                 Duration redisTtl,
+                                 int maxLocalEntries,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.defaultModelName = defaultModelName;
+        this.redisTemplate = redisTemplate;
+        this.redisTtl = redisTtl;
+        this.localCache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxLocalEntries;
+            }
+        };
+
+        this.localHits = lookupCounter(meterRegistry, "local_hit");
+        this.redisHits = lookupCounter(meterRegistry, "redis_hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        Gauge.builder("aibank.embedding.cache.size", this, model -> model.localSize())
+                .description("Embeddings held in the in-process cache")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String modelName = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel()
+                : defaultModelName;
+
+        float[][] embeddings = new float[texts.size()][];
+        List<String> keys = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            keys.add(cacheKey(modelName, text));
+        }
+
+        // First tier: in-process LRU
+        List<Integer> localMisses = new ArrayList<>();
+        synchronized (localCache) {
+            for (int i = 0; i < texts.size(); i++) {
+                embeddings[i] = localCache.get(keys.get(i));
+                if (embeddings[i] == null) {
+                    localMisses.add(i);
+                }
+            }
+        }
+        localHits.increment(texts.size() - localMisses.size());
+
+        // Second tier: Redis
+        List<Integer> redisMisses = localMisses.isEmpty() ? localMisses : lookupRedis(keys, localMisses, embeddings);
+        redisHits.increment(localMisses.size() - redisMisses.size());
+        misses.increment(redisMisses.size());
+
+        // Embed the remaining texts in one request
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!redisMisses.isEmpty()) {
+            List<String> missingTexts = redisMisses.stream().map(texts::get).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, request.getOptions()));
+            metadata = response.getMetadata();
+
+            Map<String, byte[]> redisEntries = new LinkedHashMap<>();
+            for (int i = 0; i < redisMisses.size(); i++) {
+                int index = redisMisses.get(i);
+                embeddings[index] = response.getResults().get(i).getOutput();
+                redisEntries.put(keys.get(index), toBytes(embeddings[index]));
+            }
+            storeRedis(redisEntries);
+        }
+
+        List<Embedding> results = new ArrayList<>(texts.size());
+        synchronized (localCache) {
+            for (int i = 0; i < texts.size(); i++) {
+                // The cache keeps its own array; the caller gets a copy it is free to modify
+                localCache.put(keys.get(i), embeddings[i]);
+                results.add(new Embedding(embeddings[i].clone(), i));
+            }
+        }
+        return new EmbeddingResponse(results, metadata);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    private List<Integer> lookupRedis(List<String> keys, List<Integer> indexes, float[][] embeddings) {
+        try {
+            List<byte[]> values = redisTemplate.opsForValue().multiGet(indexes.stream().map(keys::get).toList());
+            if (values == null) {
+                return indexes;
+            }
+            List<Integer> remaining = new ArrayList<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                byte[] value = values.get(i);
+                if (value == null) {
+                    remaining.add(indexes.get(i));
+                } else {
+                    embeddings[indexes.get(i)] = toFloats(value);
+                }
+            }
+            return remaining;
+        } catch (RuntimeException e) {
+            // A cache outage must not fail the embedding call
+            log.warn("Embedding cache lookup failed: {}", e.getMessage());
+            return indexes;
+        }
+    }
+
+    private void storeRedis(Map<String, byte[]> entries) {
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                entries.forEach((key, value) -> connection.stringCommands().set(
+                        key.getBytes(StandardCharsets.UTF_8), value,
+                        Expiration.from(redisTtl), RedisStringCommands.SetOption.upsert()));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Embedding cache store failed: {}", e.getMessage());
+        }
+    }
+
+    private int localSize() {
+        synchronized (localCache) {
+            return localCache.size();
+        }
+    }
+
+    private static String cacheKey(String modelName, String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return KEY_PREFIX + modelName + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] toBytes(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return buffer.array();
+    }
+
+    private static float[] toFloats(byte[] bytes) {
+        float[] embedding = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("aibank.embedding.cache.lookups")
+                .description("Embedding cache lookups, by the tier that answered them")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -40,6 +40,8 @@ public class DatabaseConfig {
         properties.setProperty("hibernate.hbm2ddl.auto", "update");
         properties.setProperty("hibernate.show_sql", "true");
         properties.setProperty("hibernate.format_sql", "true");
+        // Lets the schema update recognize the partitioned transactions table instead of trying to create it
+        properties.setProperty("hibernate.hbm2ddl.extra_physical_table_types", "PARTITIONED TABLE");
         em.setJpaProperties(properties);
         
         return em;
@@ -6,7 +6,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,7 +22,7 @@ import java.util.Optional;
 public class CustomerProfileService {
 
     private final CustomerProfileRepository customerProfileRepository;
-    private final OpenAiEmbeddingModel embeddingModel;
+    private final EmbeddingModel embeddingModel;
     private final ObjectMapper objectMapper;
 
     /**
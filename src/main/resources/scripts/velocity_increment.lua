@@ -0,0 +1,24 @@
+-- Increment a sliding-window velocity counter and return its live buckets.
+-- KEYS[1]: counter hash, one field per bucket
+-- ARGV[1]: current bucket id
+-- ARGV[2]: number of buckets in the window
+-- ARGV[3]: key expiry in seconds
+-- Returns a flat list of bucket id, count pairs inside the window.
+local current = tonumber(ARGV[1])
+local oldest = current - tonumber(ARGV[2])
+
+redis.call('HINCRBY', KEYS[1], ARGV[1], 1)
+
+local fields = redis.call('HGETALL', KEYS[1])
+local live = {}
+for i = 1, #fields, 2 do
+    if tonumber(fields[i]) <= oldest then
+        redis.call('HDEL', KEYS[1], fields[i])
+    else
+        live[#live + 1] = fields[i]
+        live[#live + 1] = fields[i + 1]
+    end
+end
+
+redis.call('EXPIRE', KEYS[1], ARGV[3])
+return live